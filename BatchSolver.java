@@ -0,0 +1,358 @@
+package com.mysterymaster.puzzle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The Batch Solver class validates and solves many puzzles at once, each on its own (virtual if available) thread.<br>
+ * Each puzzle has a wall-clock budget and a mark budget, and the results are streamed as each puzzle finishes.<br>
+ * Note: The puzzles must be different instances, since a puzzle holds the state of its solve.<br>
+ * @version 2026-10-16
+ */
+public final class BatchSolver extends Base {
+	/** Validates and solves one puzzle. This is implemented by a Solver. */
+	@FunctionalInterface
+	public interface Engine {
+		/** Status of a solve that found a solution that is not the answer of the puzzle. */
+		int WRONG_ANSWER = 2;
+
+		/**
+		 * Validates the puzzle with the engine's ISolver, then solves it within the budget.
+		 * @param puzzle Puzzle.
+		 * @param budget Budget that must be told about each mark.
+		 * @return Zero if the puzzle was solved, WRONG_ANSWER if the solution is not the answer, otherwise nonzero.
+		 */
+		int solve(Puzzle puzzle, Budget budget);
+
+		/**
+		 * Returns the solution of the last solve of the puzzle in the same layout as Puzzle.answer, with -1 for an unknown noun.
+		 * By default this is read from the pairs of the nouns.
+		 * @param puzzle Puzzle.
+		 * @return Solution.
+		 */
+		default int[][] getSolution(Puzzle puzzle) {
+			return puzzle.getSolution();
+		}
+	}
+
+	/** Budget of one puzzle. The engine should stop when addMark or isExpired returns false or true, respectively. */
+	public static final class Budget {
+		/** System.nanoTime when the budget started. */
+		private final long start;
+
+		/** System.nanoTime when the budget expires. */
+		private final long deadline;
+
+		/** Number of marks between checks of the time, which is a power of two. */
+		private static final int CHECK_MARKS = 64;
+
+		/** Maximum number of marks, or zero for no maximum. */
+		private final int maxMarks;
+
+		/** Number of marks entered. */
+		private int marks = 0;
+
+		/** True if the budget ran out of time. */
+		private boolean timedOut = false;
+
+		/**
+		 * Constructor.
+		 * @param timeout Wall-clock time in milliseconds, or zero for no limit.
+		 * @param maxMarks Maximum number of marks, or zero for no maximum.
+		 */
+		public Budget(final long timeout, final int maxMarks) {
+			this.start = System.nanoTime();
+			this.deadline = timeout > 0 ? start + TimeUnit.MILLISECONDS.toNanos(timeout) : Long.MAX_VALUE;
+			this.maxMarks = maxMarks;
+		}
+
+		/**
+		 * Counts one mark. The time is only checked every CHECK_MARKS marks, since the engine may enter millions of marks.
+		 * @return True if the mark is within the budget, otherwise false.
+		 */
+		public boolean addMark() {
+			return (++marks <= maxMarks || maxMarks == 0) && !timedOut && ((marks & (CHECK_MARKS - 1)) != 0 || !isExpired());
+		}
+
+		/**
+		 * Returns true if the time is up or the thread was interrupted, otherwise false.
+		 * @return boolean.
+		 */
+		public boolean isExpired() {
+			if (!timedOut && (System.nanoTime() - deadline > 0 || Thread.currentThread().isInterrupted())) timedOut = true;
+			return timedOut;
+		}
+
+		/**
+		 * Returns the number of marks counted so far.
+		 * @return Number of marks.
+		 */
+		public int getMarks() { return marks; }
+
+		/**
+		 * Returns true if more than the maximum number of marks were entered, otherwise false.
+		 * @return boolean.
+		 */
+		public boolean isOverMarks() { return maxMarks > 0 && marks > maxMarks; }
+	}
+
+	/** Status of the result of one puzzle. */
+	public enum Status {
+		Solved("Solved"),
+		Wrong("Wrong"),
+		Unsolved("Unsolved"),
+		Timeout("Timeout"),
+		MarkLimit("MarkLimit"),
+		Error("Error");
+
+		public final String name;
+
+		Status(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() { return name; }
+	}
+
+	/** Result of one puzzle. */
+	public static final class Result extends Base {
+		/** Puzzle. */
+		public final Puzzle puzzle;
+
+		/** Status. */
+		public final Status status;
+
+		/** Solution in the same layout as Puzzle.answer, with -1 for an unknown noun, or null if there was an error. */
+		public final int[][] solution;
+
+		/** Wall-clock time in nanoseconds. */
+		public final long nanos;
+
+		/** Number of marks used. */
+		public final int marks;
+
+		/** Exception thrown by the engine, or null. */
+		public final Throwable error;
+
+		@Override
+		public String toString() { return puzzle + " " + status; }
+
+		@Override
+		public String asString() {
+			return "puzzle=" + Q + puzzle + Q + " status=" + Q + status + Q + " nanos=" + Q + nanos + Q + " marks=" + Q + marks + Q + " error=" + Q + error + Q;
+		}
+
+		/**
+		 * Constructor.
+		 * @param puzzle Puzzle.
+		 * @param status Status.
+		 * @param solution Solution, or null.
+		 * @param nanos Wall-clock time in nanoseconds.
+		 * @param marks Number of marks used.
+		 * @param error Exception thrown by the engine, or null.
+		 */
+		Result(final Puzzle puzzle, final Status status, final int[][] solution, final long nanos, final int marks, final Throwable error) {
+			this.puzzle = puzzle;
+			this.status = status;
+			this.solution = solution;
+			this.nanos = nanos;
+			this.marks = marks;
+			this.error = error;
+		}
+	}
+
+	/** Supplier of an engine for each puzzle. */
+	private final Supplier<? extends Engine> engines;
+
+	/** Wall-clock time in milliseconds for each puzzle, or zero for no limit. */
+	private final long timeout;
+
+	/** Maximum number of marks for each puzzle, or zero for no maximum. */
+	private final int maxMarks;
+
+	@Override
+	public String toString() { return "BatchSolver"; }
+
+	@Override
+	public String asString() {
+		return "timeout=" + Q + timeout + Q + " maxMarks=" + Q + maxMarks + Q;
+	}
+
+	/**
+	 * Constructor.
+	 * @param engines Supplier of a new engine for each puzzle.
+	 * @param timeout Wall-clock time in milliseconds for each puzzle, or zero for no limit.
+	 * @param maxMarks Maximum number of marks for each puzzle, or zero for no maximum.
+	 */
+	public BatchSolver(final Supplier<? extends Engine> engines, final long timeout, final int maxMarks) {
+		this.engines = engines;
+		this.timeout = timeout;
+		this.maxMarks = maxMarks;
+	}
+
+	/**
+	 * Returns an executor with one virtual thread per task if the JVM has them, otherwise a pool with one thread per processor.
+	 * @return Executor service.
+	 */
+	static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+				Thread thread = new Thread(r, "BatchSolver");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Validates and solves the puzzle within its budget.
+	 * @param puzzle Puzzle.
+	 * @param watchdog Executor that interrupts the thread when the time is up.
+	 * @return Result.
+	 */
+	private Result solve(final Puzzle puzzle, final ScheduledExecutorService watchdog) {
+		Budget budget = new Budget(timeout, maxMarks);
+		Thread thread = Thread.currentThread();
+		ScheduledFuture<?> alarm = timeout > 0 ? watchdog.schedule(thread::interrupt, timeout, TimeUnit.MILLISECONDS) : null;
+		Engine engine = engines.get();
+		int rs;
+		Throwable error = null;
+		try {
+			rs = engine.solve(puzzle, budget);
+		}
+		catch (RuntimeException | Error e) {
+			rs = -1;
+			error = e;
+		}
+		finally {
+			if (alarm != null && !alarm.cancel(false)) waitFor(alarm);
+			Thread.interrupted();
+		}
+		long nanos = System.nanoTime() - budget.start;
+
+		int[][] solution = puzzle.isValid ? engine.getSolution(puzzle) : null;
+		Status status;
+		if (error != null)
+			status = budget.isExpired() ? Status.Timeout : Status.Error;
+		else if (rs == 0 || rs == Engine.WRONG_ANSWER)
+			status = puzzle.isAnswer(solution) ? Status.Solved : Status.Wrong;
+		else if (budget.isOverMarks())
+			status = Status.MarkLimit;
+		else if (budget.isExpired())
+			status = Status.Timeout;
+		else
+			status = Status.Unsolved;
+
+		return new Result(puzzle, status, solution, nanos, budget.getMarks(), error);
+	}
+
+	/**
+	 * Solves the puzzles, and returns the results in the order they finish.<br>
+	 * The puzzles are solved while the stream is consumed: at most one puzzle per processor is in flight,
+	 * and the next puzzle is submitted each time a result is taken. The threads end after the last result.<br>
+	 * Note: The stream must be consumed by one thread, so it must not be made parallel.
+	 * @param puzzles Puzzles. Each puzzle must be a different instance.
+	 * @return Stream of results.
+	 */
+	public Stream<Result> solve(final Collection<? extends Puzzle> puzzles) {
+		List<Puzzle> list = new ArrayList<>(puzzles);
+		int n = list.size();
+		if (n == 0) return Stream.empty();
+
+		ExecutorService executor = newExecutor();
+		ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "BatchSolver watchdog");
+			thread.setDaemon(true);
+			return thread;
+		});
+		CompletionService<Result> service = new ExecutorCompletionService<>(executor);
+		AtomicInteger remaining = new AtomicInteger(n);
+		Iterator<Puzzle> pending = list.iterator();
+		int window = Math.min(n, Runtime.getRuntime().availableProcessors());
+		for (int i = 0; i < window; i++) submitNext(pending, service, executor, watchdog, remaining);
+
+		return IntStream.range(0, n).mapToObj(i -> {
+			Result result = take(service);
+			submitNext(pending, service, executor, watchdog, remaining);
+			return result;
+		}).onClose(() -> {
+			executor.shutdownNow();
+			watchdog.shutdownNow();
+		});
+	}
+
+	/**
+	 * Submits the next pending puzzle, if any. The executor is shut down after the last puzzle is submitted,
+	 * and the watchdog after the last puzzle is solved.
+	 * @param pending Puzzles that are not submitted yet.
+	 * @param service Completion service.
+	 * @param executor Executor of the completion service.
+	 * @param watchdog Executor that interrupts a thread when its time is up.
+	 * @param remaining Number of puzzles that are not solved yet.
+	 */
+	private void submitNext(final Iterator<Puzzle> pending, final CompletionService<Result> service, final ExecutorService executor,
+			final ScheduledExecutorService watchdog, final AtomicInteger remaining) {
+		if (!pending.hasNext()) return;
+		Puzzle puzzle = pending.next();
+		service.submit(() -> {
+			try {
+				return solve(puzzle, watchdog);
+			}
+			finally {
+				if (remaining.decrementAndGet() == 0) watchdog.shutdown();
+			}
+		});
+		if (!pending.hasNext()) executor.shutdown();
+	}
+
+	/**
+	 * Waits for the alarm that already started, so it cannot interrupt the thread after it is cleared.
+	 * @param alarm Alarm.
+	 */
+	private static void waitFor(final ScheduledFuture<?> alarm) {
+		try {
+			alarm.get();
+		}
+		catch (InterruptedException | ExecutionException e) {
+			// The alarm only interrupts this thread, which is cleared next.
+		}
+	}
+
+	/**
+	 * Waits for the next result.
+	 * @param service Completion service.
+	 * @return Result.
+	 */
+	private static Result take(final CompletionService<Result> service) {
+		try {
+			Future<Result> future = service.take();
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new Error("The batch was interrupted!", e);
+		}
+		catch (ExecutionException e) {
+			throw new Error("The batch failed!", e.getCause());
+		}
+	}
+}
@@ -0,0 +1,319 @@
+package com.mysterymaster.puzzle;
+
+import java.util.List;
+
+/**
+ * The Compiled Puzzle class is an immutable copy of the definition of a validated puzzle using integer ids and flat arrays.<br>
+ * A noun id is the zero-based number of the noun across all noun types, so noun type t has the ids from t * maxNouns.<br>
+ * Many SolveState objects may share one compiled puzzle, even on different threads.<br>
+ * Note: Rules are still functions of the puzzle's nouns, so a solver that shares the compiled puzzle binds itself to its thread
+ * before it invokes them (SmartRule.bind), and the rules read the pairs of its state through ISolver.getPairNoun.<br>
+ * @version 2026-10-16
+ */
+public final class CompiledPuzzle extends Base {
+	/** Puzzle that was compiled. */
+	public final Puzzle puzzle;
+
+	/** Number of noun types. */
+	public final int maxNounTypes;
+
+	/** Number of nouns per noun type. */
+	public final int maxNouns;
+
+	/** Number of nouns across all noun types. */
+	public final int maxIds;
+
+	/** Number of facts. */
+	public final int maxFacts;
+
+	/** Number of rules. */
+	public final int maxRules;
+
+	/** Number of links. */
+	public final int maxLinks;
+
+	/** Verbs of the puzzle indexed by the number of the verb. */
+	final Verb[] verbs;
+
+	/** Nouns indexed by id. */
+	private final Noun[] nouns;
+
+	/** Noun id of noun 1 of each fact (zero-based). */
+	private final int[] factNoun1;
+
+	/** Noun id of noun 2 of each fact. */
+	private final int[] factNoun2;
+
+	/** VerbGrid code of the verb of each fact. */
+	private final int[] factCode;
+
+	/** Zero-based number of the link of each fact. */
+	private final int[] factLink;
+
+	/** Type (1 to 4) of each fact. */
+	private final int[] factType;
+
+	/** Initial value of the enabled field of each fact. */
+	private final boolean[] factEnabled;
+
+	/** Fact numbers (zero-based) of the facts of type 3 and 4 that reference each noun id. */
+	private final int[][] watches;
+
+	/** Initial value of the enabled field of each rule. */
+	private final boolean[] ruleEnabled;
+
+	/** Zero-based number of the noun type of each link. */
+	private final int[] linkType;
+
+	/** True for each link that is one-to-one. */
+	private final boolean[] linkOneToOne;
+
+	/** Relation table of each link where bit j of linkTables[k][i] is set if slot i is related to slot j. */
+	private final long[][][] linkTables;
+
+	@Override
+	public String toString() { return puzzle.toString(); }
+
+	@Override
+	public String asString() {
+		return "puzzle=" + Q + puzzle + Q + " maxNounTypes=" + Q + maxNounTypes + Q + " maxNouns=" + Q + maxNouns + Q + " maxFacts=" + Q + maxFacts + Q + " maxRules=" + Q + maxRules + Q + " maxLinks=" + Q + maxLinks + Q;
+	}
+
+	/**
+	 * Constructor. Only the Puzzle class should compile puzzles.
+	 * @param puzzle Validated puzzle.
+	 */
+	CompiledPuzzle(final Puzzle puzzle) {
+		if (!puzzle.isValid) throw new Error("The puzzle must be validated before it is compiled!");
+		this.puzzle = puzzle;
+		this.maxNounTypes = puzzle.maxNounTypes;
+		this.maxNouns = puzzle.maxNouns;
+		this.maxIds = maxNounTypes * maxNouns;
+		this.verbs = puzzle.verbs.clone();
+
+		nouns = new Noun[maxIds];
+		for (NounType nounType : puzzle.nounTypes) {
+			for (Noun noun : nounType.nouns) nouns[getId(noun)] = noun;
+		}
+
+		List<Fact> facts = puzzle.facts;
+		maxFacts = facts.size();
+		factNoun1 = new int[maxFacts];
+		factNoun2 = new int[maxFacts];
+		factCode = new int[maxFacts];
+		factLink = new int[maxFacts];
+		factType = new int[maxFacts];
+		factEnabled = new boolean[maxFacts];
+		for (int i = 0; i < maxFacts; i++) {
+			Fact fact = facts.get(i);
+			factNoun1[i] = getId(fact.noun1);
+			factNoun2[i] = getId(fact.noun2);
+			factCode[i] = VerbGrid.getCode(fact.verb);
+			factLink[i] = fact.link.num;
+			factType[i] = fact.type;
+			factEnabled[i] = fact.isInitEnabled();
+		}
+
+		watches = new int[maxIds][];
+		for (int id = 0; id < maxIds; id++) {
+			List<Fact> list = nouns[id].facts;
+			watches[id] = new int[list.size()];
+			for (int i = 0; i < list.size(); i++) watches[id][i] = list.get(i).num - 1;
+		}
+
+		List<Rule> rules = puzzle.rules;
+		maxRules = rules.size();
+		ruleEnabled = new boolean[maxRules];
+		for (int i = 0; i < maxRules; i++) ruleEnabled[i] = rules.get(i).isInitEnabled();
+
+		List<Link> links = puzzle.links;
+		maxLinks = links.size();
+		linkType = new int[maxLinks];
+		linkOneToOne = new boolean[maxLinks];
+		linkTables = new long[maxLinks][][];
+		for (int k = 0; k < maxLinks; k++) {
+			Link link = links.get(k);
+			linkType[k] = link.nounType.num - 1;
+			linkOneToOne[k] = link.oneToOne;
+			long[][] table = new long[maxNouns][];
+			for (Noun slot : link.nounType.nouns) table[slot.num - 1] = link.getRelatedMask(slot).clone();
+			linkTables[k] = table;
+		}
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="Nouns">
+
+	/**
+	 * Returns the id of the noun.
+	 * @param noun Noun.
+	 * @return Zero-based id.
+	 */
+	public int getId(final Noun noun) {
+		return (noun.type.num - 1) * maxNouns + noun.num - 1;
+	}
+
+	/**
+	 * Returns the noun with the given id.
+	 * @param id Zero-based id.
+	 * @return Noun.
+	 */
+	public Noun getNoun(final int id) {
+		return nouns[id];
+	}
+
+	/**
+	 * Returns the zero-based number of the noun type of the noun with the given id.
+	 * @param id Zero-based id.
+	 * @return Zero-based number of the noun type.
+	 */
+	public int getType(final int id) {
+		return id / maxNouns;
+	}
+
+	/**
+	 * Returns the zero-based number of the noun within its noun type.
+	 * @param id Zero-based id.
+	 * @return Zero-based number of the noun.
+	 */
+	public int getIndex(final int id) {
+		return id % maxNouns;
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Facts">
+
+	/**
+	 * Returns the id of noun 1 of the fact.
+	 * @param f Zero-based number of the fact.
+	 * @return Zero-based id.
+	 */
+	public int getFactNoun1(final int f) { return factNoun1[f]; }
+
+	/**
+	 * Returns the id of noun 2 of the fact.
+	 * @param f Zero-based number of the fact.
+	 * @return Zero-based id.
+	 */
+	public int getFactNoun2(final int f) { return factNoun2[f]; }
+
+	/**
+	 * Returns the VerbGrid code of the verb of the fact.
+	 * @param f Zero-based number of the fact.
+	 * @return Code.
+	 */
+	public int getFactCode(final int f) { return factCode[f]; }
+
+	/**
+	 * Returns the zero-based number of the link of the fact.
+	 * @param f Zero-based number of the fact.
+	 * @return Zero-based number of the link.
+	 */
+	public int getFactLink(final int f) { return factLink[f]; }
+
+	/**
+	 * Returns the type (1 to 4) of the fact.
+	 * @param f Zero-based number of the fact.
+	 * @return Type.
+	 */
+	public int getFactType(final int f) { return factType[f]; }
+
+	/**
+	 * Returns the initial value of the enabled field of the fact.
+	 * @param f Zero-based number of the fact.
+	 * @return boolean.
+	 */
+	public boolean isFactEnabled(final int f) { return factEnabled[f]; }
+
+	/**
+	 * Returns the zero-based numbers of the facts of type 3 and 4 that reference the noun. The caller must not modify the array.
+	 * @param id Zero-based id.
+	 * @return Array of fact numbers.
+	 */
+	public int[] getWatches(final int id) { return watches[id]; }
+
+	/**
+	 * Returns the initial value of the enabled field of the rule.
+	 * @param r Zero-based number of the rule.
+	 * @return boolean.
+	 */
+	public boolean isRuleEnabled(final int r) { return ruleEnabled[r]; }
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Links">
+
+	/**
+	 * Returns the zero-based number of the noun type of the link.
+	 * @param k Zero-based number of the link.
+	 * @return Zero-based number of the noun type.
+	 */
+	public int getLinkType(final int k) { return linkType[k]; }
+
+	/**
+	 * Returns true if the link is one-to-one, otherwise false.
+	 * @param k Zero-based number of the link.
+	 * @return boolean.
+	 */
+	public boolean isLinkOneToOne(final int k) { return linkOneToOne[k]; }
+
+	/**
+	 * Returns true if slot i is related to slot j by the link, otherwise false.
+	 * @param k Zero-based number of the link.
+	 * @param i Zero-based number of slot 1.
+	 * @param j Zero-based number of slot 2.
+	 * @return boolean.
+	 */
+	public boolean isRelated(final int k, final int i, final int j) {
+		return (linkTables[k][i][j >>> 6] & (1L << j)) != 0;
+	}
+
+	/**
+	 * Returns the slots related to slot i by the link as a bit mask. The caller must not modify the array.
+	 * @param k Zero-based number of the link.
+	 * @param i Zero-based number of the slot.
+	 * @return Array of words.
+	 */
+	public long[] getRelatedMask(final int k, final int i) {
+		return linkTables[k][i];
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Solution">
+
+	/**
+	 * Returns the solution of the state in the same layout as Puzzle.answer, with -1 for an unknown noun.
+	 * @param state Solve state.
+	 * @return Array where [t2 - 2][n1 - 1] is the zero-based number of the noun of type t2 with noun n1 of the first type.
+	 */
+	public int[][] getSolution(final SolveState state) {
+		int[][] solution = new int[maxNounTypes - 1][maxNouns];
+		for (int n1 = 0; n1 < maxNouns; n1++) {
+			for (int t2 = 1; t2 < maxNounTypes; t2++) {
+				int id2 = state.getPair(n1, t2);
+				solution[t2 - 1][n1] = id2 < 0 ? -1 : getIndex(id2);
+			}
+		}
+		return solution;
+	}
+
+	/**
+	 * Returns true if the state matches the puzzle's answer (or the answer is null), otherwise false.
+	 * @param state Solve state.
+	 * @return boolean.
+	 */
+	public boolean isAnswer(final SolveState state) {
+		int[][] answer = puzzle.answer;
+		if (answer == null) return true;
+		int[][] solution = getSolution(state);
+		for (int i = 0; i < solution.length; i++) {
+			for (int j = 0; j < maxNouns; j++) {
+				if (solution[i][j] != answer[i][j]) return false;
+			}
+		}
+		return true;
+	}
+
+	// </editor-fold>
+}
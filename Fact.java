@@ -75,6 +75,12 @@ public final class Fact extends Base {
 		this.type = 4;
 	}
 	
+	/**
+	 * Returns the initial/reset value of the enabled field.
+	 * @return boolean.
+	 */
+	boolean isInitEnabled() { return initEnabled; }
+	
 	/** Resets the fact. */
 	public void reset() {
 		enabled = initEnabled;
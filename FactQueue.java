@@ -0,0 +1,137 @@
+package com.mysterymaster.puzzle;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The Fact Queue class is the propagation queue of facts for the Solver.<br>
+ * A fact is queued when the puzzle is reset, and a polled fact is parked until a mark changes one of its nouns.<br>
+ * Only facts of type 3 and 4 are woken, using the watch lists in Noun.facts. Facts of type 1 and 2 are examined once.<br>
+ * @version 2026-10-16
+ */
+public final class FactQueue extends Base {
+	/** Puzzle object. Set in the constructor. */
+	private final Puzzle puzzle;
+
+	/** Solver whose pairs are read. Set in the constructor. */
+	private final ISolver solver;
+
+	/** Ring buffer of queued facts. A fact is in the buffer at most once. */
+	private final Fact[] buffer;
+
+	/** Flag for each fact (zero-based) that is true if the fact is in the buffer. */
+	private final boolean[] queued;
+
+	/** Index of the next fact to poll. */
+	private int head = 0;
+
+	/** Number of facts in the buffer. */
+	private int size = 0;
+
+	/** Number of facts woken by marks. */
+	public int wakes = 0;
+
+	/** Number of facts that were not woken because they were already queued or are disabled. */
+	public int skips = 0;
+
+	@Override
+	public String toString() { return "FactQueue"; }
+
+	@Override
+	public String asString() {
+		return "size=" + Q + size + Q + " wakes=" + Q + wakes + Q + " skips=" + Q + skips + Q;
+	}
+
+	/**
+	 * Constructor. The puzzle must be validated so the watch lists in Noun.facts are set.
+	 * @param puzzle Puzzle.
+	 * @param solver Solver whose pairs are read.
+	 */
+	public FactQueue(final Puzzle puzzle, final ISolver solver) {
+		this.puzzle = puzzle;
+		this.solver = solver;
+		this.buffer = new Fact[puzzle.facts.size()];
+		this.queued = new boolean[buffer.length];
+	}
+
+	/** Clears the queue, then queues every enabled fact in order. Called by solver.reset. */
+	public void reset() {
+		Arrays.fill(buffer, null);
+		Arrays.fill(queued, false);
+		head = 0;
+		size = 0;
+		wakes = 0;
+		skips = 0;
+		for (Fact fact : puzzle.facts) add(fact);
+	}
+
+	/**
+	 * Returns true if there are no queued facts, otherwise false.
+	 * @return boolean.
+	 */
+	public boolean isEmpty() { return size == 0; }
+
+	/**
+	 * Returns the number of queued facts.
+	 * @return Number of facts.
+	 */
+	public int size() { return size; }
+
+	/**
+	 * Queues the fact if it is enabled and not already queued.
+	 * @param fact Fact.
+	 * @return True if the fact was queued, otherwise false.
+	 */
+	public boolean add(final Fact fact) {
+		int i = fact.num - 1;
+		if (!fact.enabled || queued[i]) return false;
+		queued[i] = true;
+		buffer[(head + size++) % buffer.length] = fact;
+		return true;
+	}
+
+	/**
+	 * Returns the next enabled fact and parks it, or null if the queue is empty.
+	 * @return Fact, or null.
+	 */
+	public Fact poll() {
+		while (size > 0) {
+			Fact fact = buffer[head];
+			buffer[head] = null;
+			head = (head + 1) % buffer.length;
+			--size;
+			queued[fact.num - 1] = false;
+			if (fact.enabled) return fact;
+		}
+		return null;
+	}
+
+	/**
+	 * Queues the parked facts that reference the given noun.
+	 * @param noun Noun.
+	 */
+	private void wake(final Noun noun) {
+		List<Fact> facts = noun.facts;
+		for (int i = 0; i < facts.size(); i++) {
+			if (add(facts.get(i))) ++wakes; else ++skips;
+		}
+	}
+
+	/**
+	 * Queues the parked facts that reference either noun of the mark, or a noun that is with either noun of the mark.<br>
+	 * Called by the Solver after the mark is entered. A fact that is re-enabled must be added separately.
+	 * @param mark Mark.
+	 */
+	public void onMark(final Mark mark) {
+		Noun noun1 = mark.noun1;
+		Noun noun2 = mark.noun2;
+		wake(noun1);
+		wake(noun2);
+		for (NounType nounType : puzzle.nounTypes) {
+			Noun noun = (noun1.type == nounType) ? null : solver.getPairNoun(noun1, nounType);
+			if (noun != null && noun != noun2) wake(noun);
+			noun = (noun2.type == nounType) ? null : solver.getPairNoun(noun2, nounType);
+			if (noun != null && noun != noun1) wake(noun);
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package com.mysterymaster.puzzle;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -323,16 +324,18 @@ public final class Helper {
 	 */
 	public static List<Noun> getListExcept(final List<Noun> nouns1, final List<Noun> nouns2) {
 		List<Noun> nouns = new ArrayList<>();
+		if (nouns2.isEmpty()) {
+			nouns.addAll(nouns1);
+			return nouns;
+		}
 
+		// Look up the nouns in a noun set, unless nouns2 has nouns of more than one puzzle.
+		Puzzle puzzle = nouns2.get(0).type.puzzle;
+		boolean onePuzzle = true;
+		for (Noun noun2 : nouns2) onePuzzle &= noun2.type.puzzle == puzzle;
+		List<Noun> set = onePuzzle ? NounSet.of(puzzle, nouns2).asList() : nouns2;
 		for (Noun noun1 : nouns1) {
-			boolean found = false;
-			for (Noun noun2 : nouns2) {
-				if (noun1 == noun2) {
-					found = true;
-					break;
-				}
-			}
-			if (!found) nouns.add(noun1);
+			if (!set.contains(noun1)) nouns.add(noun1);
 		}
 
 		return nouns;
@@ -345,19 +348,7 @@ public final class Helper {
 	 * @return Array of nouns.
 	 */
 	public static Noun[] getArrayExcept(final Noun[] nouns1, final Noun[] nouns2) {
-		ArrayList<Noun> nouns = new ArrayList<>();
-
-		for (Noun noun1 : nouns1) {
-			boolean found = false;
-			for (Noun noun2 : nouns2) {
-				if (noun1 == noun2) {
-					found = true;
-					break;
-				}
-			}
-			if (!found) nouns.add(noun1);
-		}
-
+		List<Noun> nouns = getListExcept(Arrays.asList(nouns1), Arrays.asList(nouns2));
 		return nouns.toArray(new Noun[nouns.size()]);
 	}
 	
@@ -379,11 +370,6 @@ public final class Helper {
 			msg.append(verb.asString()).append(NL);
 		}
 		
-		msg.append(NL).append("Static Puzzle Verbs").append(NL);
-		msg.append(Puzzle.IsNot.asString()).append(NL);
-		msg.append(Puzzle.Maybe.asString()).append(NL);
-		msg.append(Puzzle.Is.asString()).append(NL);
-		
 		msg.append(NL).append("Links").append(NL);
 		for (Link link : puzzle.links) {
 			msg.append(link.asString()).append(NL);
@@ -1,6 +1,7 @@
 package com.mysterymaster.puzzle;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * The Solver interface is implemented by the Solver class in the Solver package.<br>
@@ -65,13 +66,33 @@ public interface ISolver {
 
 	/**
 	 * Returns the verb of the mark given by the two nouns, or the possible verb if the mark is null.
-	 * Called by SmartRule.
+	 * Called by SmartRule. The solver may answer this and canBeWith from a VerbGrid.
 	 * @param noun1 Noun 1.
 	 * @param noun2 Noun 2.
 	 * @return Verb.
 	 */
 	Verb getGridVerb(Noun noun1, Noun noun2);
 
+	/**
+	 * Returns noun 2 if noun 1 is with a noun of noun type 2, or null. Rules read the pairs through this method, so a tracing solver can record it.
+	 * @param noun1 Noun 1.
+	 * @param nounType2 Noun type of noun 2.
+	 * @return Noun 2, or null.
+	 */
+	default Noun getPairNoun(Noun noun1, NounType nounType2) {
+		return Mark.getPairNoun(noun1, nounType2);
+	}
+
+	/**
+	 * Returns the one-based number of noun 2 if noun 1 is with a noun of noun type 2, or 0.
+	 * @param noun1 Noun 1.
+	 * @param nounType2 Noun type of noun 2.
+	 * @return One-based number of noun 2, or 0.
+	 */
+	default int getPairNounNum(Noun noun1, NounType nounType2) {
+		return Mark.getPairNounNum(noun1, nounType2);
+	}
+
 	/**
 	 * Enters the mark triggered by the given rule. Called by SmartRule or the rule function.
 	 * @param mark Mark.
@@ -84,4 +105,21 @@ public interface ISolver {
 	 * @return Status.
 	 */
 	int addMarkByRule(Mark mark, Rule rule, char refSub, Noun noun1, Verb verb, Noun noun2, String msg);
+
+	/**
+	 * Enters the mark triggered by the given rule, where the message is only built if it is needed.
+	 * A solver should override this to call msg.get() only when the mark is recorded or displayed,
+	 * since most triggered marks already exist. By default, the message is built and the mark is entered as above.
+	 * @param mark Mark.
+	 * @param rule Rule.
+	 * @param refSub Reference character.
+	 * @param noun1 Noun1.
+	 * @param verb Verb.
+	 * @param noun2 Noun2.
+	 * @param msg Supplier of the message.
+	 * @return Status.
+	 */
+	default int addMarkByRule(Mark mark, Rule rule, char refSub, Noun noun1, Verb verb, Noun noun2, Supplier<String> msg) {
+		return addMarkByRule(mark, rule, refSub, noun1, verb, noun2, msg.get());
+	}
 }
@@ -1,5 +1,7 @@
 package com.mysterymaster.puzzle;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.BiFunction;
 
@@ -10,6 +12,9 @@ import java.util.function.BiFunction;
  * @author Michael Benson <michael.benson@mysterymaster.com>
  */
 public final class Link extends Base {
+	/** Puzzle that owns the link. */
+	public final Puzzle puzzle;
+	
 	/** Zero-based number of the link. */
 	public final int num;
 	
@@ -22,12 +27,24 @@ public final class Link extends Base {
 	/** True if function is one-to-one (at most one positive verb per row). Set in the validate method. */
 	public boolean oneToOne;
 	
-	/** Function that returns either negative or positive verb given two nouns of the link's noun type. */
+	/**
+	 * Function that returns either negative or positive verb given two nouns of the link's noun type.<br>
+	 * Note: The function is evaluated for every pair of slots in the update method, so it must only depend on the slots.
+	 */
 	public BiFunction<Noun, Noun, Verb> f;
 	
+	/** Facts that use this link. Set in the validate method. */
+	public final List<Fact> facts = new ArrayList<>();
+	
 	private boolean ssNeg;
 	private boolean ssPos;
 
+	/** Relation table where bit j of table[i] is set if slot i is related to slot j (zero-based). Set in the update method. */
+	private long[][] table;
+
+	/** Slots related to each slot (zero-based). Set in the update method. */
+	private List<List<Noun>> related;
+
 	@Override
 	public String toString() { return this.name; }
 	
@@ -38,11 +55,13 @@ public final class Link extends Base {
 	
 	/**
 	 * Constructor. Only the Puzzle class should create links.
+	 * @param puzzle Puzzle that owns the link.
 	 * @param num Current number of links.
 	 * @param name Name of the link.
 	 * @param nounType Noun Type of the link.
 	 */
-	Link(final int num, final String name, final NounType nounType) {
+	Link(final Puzzle puzzle, final int num, final String name, final NounType nounType) {
+		this.puzzle = puzzle;
 		this.num = num;
 		this.name = name;
 		this.nounType = nounType;
@@ -59,7 +78,46 @@ public final class Link extends Base {
 	 * @return Verb.
 	 */
 	public Verb getVerb(final Noun noun1, final Noun noun2) {
-		return f.apply(noun1, noun2);
+		if (table == null || noun1.type != nounType || noun2.type != nounType) return f.apply(noun1, noun2);
+		return isRelated(noun1, noun2) ? puzzle.Is : puzzle.IsNot;
+	}
+	
+	/**
+	 * Returns the descriptor of the link function if it was built by SmartLink, otherwise null for a custom function.
+	 * @return Descriptor, or null.
+	 */
+	public SmartLink.Descriptor getDescriptor() {
+		return (f instanceof SmartLink.Descriptor) ? (SmartLink.Descriptor) f : null;
+	}
+	
+	/**
+	 * Returns true if slot 1 is related to slot 2, otherwise false. The link must be updated.
+	 * @param slot1 Slot 1.
+	 * @param slot2 Slot 2.
+	 * @return True if the link's verb for the two slots is positive, otherwise false.
+	 */
+	public boolean isRelated(final Noun slot1, final Noun slot2) {
+		int j = slot2.num - 1;
+		return (table[slot1.num - 1][j >>> 6] & (1L << j)) != 0;
+	}
+	
+	/**
+	 * Returns the slots related to the given slot, in order. The link must be updated.
+	 * @param slot Slot.
+	 * @return Unmodifiable list of slots.
+	 */
+	public List<Noun> getRelatedSlots(final Noun slot) {
+		return related.get(slot.num - 1);
+	}
+	
+	/**
+	 * Returns the slots related to the given slot as a bit mask where bit j is for the slot with zero-based number j.
+	 * The caller must not modify the array. The link must be updated.
+	 * @param slot Slot.
+	 * @return Array of words.
+	 */
+	long[] getRelatedMask(final Noun slot) {
+		return table[slot.num - 1];
 	}
 	
 	/**
@@ -68,13 +126,8 @@ public final class Link extends Base {
 	 * @return True if the link is one-to-one, otherwise false.
 	 */
 	private static boolean isOneToOne(final Link link) {
-		List<Noun> slots = link.nounType.nouns;
-		for (Noun slot1 : slots) {
-			int cnt = 0;
-			for (Noun slot2 : slots) {
-				Verb verb = link.f.apply(slot1, slot2);
-				if (verb == Puzzle.Is && ++cnt > 1) return false;
-			}
+		for (List<Noun> slots : link.related) {
+			if (slots.size() > 1) return false;
 		}
 		return true;
 	}
@@ -89,16 +142,32 @@ public final class Link extends Base {
 	private static boolean inSameSlot(final Link link, final Verb verb) {
 		List<Noun> slots = link.nounType.nouns;
 		for (Noun slot : slots) {
-			if (link.f.apply(slot, slot) == verb) return true;
+			if (link.isRelated(slot, slot) == (verb == link.puzzle.Is)) return true;
 		}
 		return false;
 	}
 	
-	// TODO Test this.
-	void update() {
-		this.oneToOne = isOneToOne(this);
-		ssNeg = inSameSlot(this, Puzzle.IsNot);
-		ssPos = inSameSlot(this, Puzzle.Is);
+	/**
+	 * Builds the relation table from the function f, where each pair of slots is evaluated once.<br>
+	 * Called by puzzle.validate, or after the function f is changed.
+	 */
+	public void update() {
+		List<Noun> slots = nounType.nouns;
+		int n = slots.size();
+		SmartLink.Descriptor descriptor = getDescriptor();
+		table = SmartLink.getTable(f, slots);
+		related = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			List<Noun> list = new ArrayList<>();
+			for (int j = 0; j < n; j++) {
+				if ((table[i][j >>> 6] & (1L << j)) != 0) list.add(slots.get(j));
+			}
+			related.add(Collections.unmodifiableList(list));
+		}
+		
+		this.oneToOne = descriptor != null ? descriptor.isOneToOne(n) : isOneToOne(this);
+		ssNeg = inSameSlot(this, puzzle.IsNot);
+		ssPos = inSameSlot(this, puzzle.Is);
 	}
 	
 	/**
@@ -107,6 +176,6 @@ public final class Link extends Base {
 	 * @return True if two nouns can be in the same slot, otherwise false.
 	 */
 	public boolean canBeWith(final Verb verb) {
-		return verb.num < 0 ? ssNeg : ssPos;
+		return verb == puzzle.IsNot ? ssNeg : ssPos;
 	}
 }
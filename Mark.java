@@ -168,7 +168,7 @@ public final class Mark extends Base {
 		this.valid = false;
 		this.levelNum = levelNum;
 		this.levelSub = levelSub;
-		this.levelAsString = String.format("%d%c", levelNum, levelSub);
+		this.levelAsString = levelNum + String.valueOf(levelSub);
 		this.refNum = refNum;
 		this.refSub = refSub;
 		this.noun1 = noun1;
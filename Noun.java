@@ -74,6 +74,12 @@ public final class Noun extends Base {
 		this(num, type, name, null);
 	}
 	
+	/**
+	 * Returns the original name of the noun, which differs from the name if the noun is a placer.
+	 * @return Name.
+	 */
+	public String getOriginalName() { return originalName; }
+	
 	/** Resets the name and title, along with the pairs. */
 	public void reset() {
 		resetPlacer();
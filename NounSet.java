@@ -0,0 +1,367 @@
+package com.mysterymaster.puzzle;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * The Noun Set class is an immutable set of nouns of one puzzle stored as a bit mask with one or more long words per noun type.<br>
+ * Bit (n - 1) % 64 of word (n - 1) / 64 of noun type t is set if noun n of noun type t is in the set, so a noun type may have any number of nouns.<br>
+ * The set operations are word-level bit operations, and iteration is in the order of the noun types and nouns.<br>
+ * @version 2026-10-16
+ */
+public final class NounSet extends Base implements Iterable<Noun> {
+	/** Words of a noun type without nouns. */
+	private static final long[] NO_WORDS = new long[0];
+
+	/** Puzzle of the nouns. */
+	public final Puzzle puzzle;
+
+	/** Bit mask of the nouns of each noun type, where a missing noun type or word has no nouns. Never modified after the constructor. */
+	private final long[][] words;
+
+	@Override
+	public String toString() { return asList().toString(); }
+
+	@Override
+	public String asString() {
+		return "puzzle=" + Q + puzzle + Q + " size=" + Q + size() + Q + " nouns=" + Q + this + Q;
+	}
+
+	/**
+	 * Constructor. The words are owned by the set.
+	 * @param puzzle Puzzle.
+	 * @param words Bit mask of the nouns of each noun type.
+	 */
+	private NounSet(final Puzzle puzzle, final long[][] words) {
+		this.puzzle = puzzle;
+		this.words = words;
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="Factory Methods">
+
+	/**
+	 * Returns the empty set of the puzzle.
+	 * @param puzzle Puzzle.
+	 * @return Noun set.
+	 */
+	public static NounSet empty(final Puzzle puzzle) {
+		return new NounSet(puzzle, new long[0][]);
+	}
+
+	/**
+	 * Returns the set of the given nouns.
+	 * @param puzzle Puzzle of the nouns.
+	 * @param nouns Variable number of nouns.
+	 * @return Noun set.
+	 */
+	public static NounSet of(final Puzzle puzzle, final Noun... nouns) {
+		return of(puzzle, Arrays.asList(nouns));
+	}
+
+	/**
+	 * Returns the set of the given nouns. Duplicate nouns are ignored.
+	 * @param puzzle Puzzle of the nouns.
+	 * @param nouns Collection of nouns.
+	 * @return Noun set.
+	 */
+	public static NounSet of(final Puzzle puzzle, final Collection<Noun> nouns) {
+		if (nouns instanceof NounSet.View) {
+			NounSet set = ((NounSet.View) nouns).set;
+			if (set.puzzle == puzzle) return set;
+		}
+		long[][] words = new long[puzzle.nounTypes.size()][];
+		for (Noun noun : nouns) {
+			NounType nounType = noun.type;
+			if (nounType.puzzle != puzzle) throw new Error("Noun " + noun.name + " must belong to this puzzle!");
+			if (nounType.num > words.length) words = Arrays.copyOf(words, nounType.num);
+			int t = nounType.num - 1, w = (noun.num - 1) >>> 6;
+			if (words[t] == null) words[t] = new long[(nounType.nouns.size() + 63) >>> 6];
+			if (w >= words[t].length) words[t] = Arrays.copyOf(words[t], w + 1);
+			words[t][w] |= 1L << (noun.num - 1);
+		}
+		return new NounSet(puzzle, words);
+	}
+
+	/**
+	 * Returns the set of all nouns of the noun type.
+	 * @param nounType Noun type.
+	 * @return Noun set.
+	 */
+	public static NounSet of(final NounType nounType) {
+		return of(nounType.puzzle, nounType.nouns);
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Queries">
+
+	/**
+	 * Returns true if the noun is in the set, otherwise false.
+	 * @param noun Noun.
+	 * @return boolean.
+	 */
+	public boolean contains(final Noun noun) {
+		if (noun.type.puzzle != puzzle) return false;
+		long[] a = getWords(noun.type.num - 1);
+		int w = (noun.num - 1) >>> 6;
+		return w < a.length && (a[w] & (1L << (noun.num - 1))) != 0;
+	}
+
+	/**
+	 * Returns the number of nouns in the set.
+	 * @return Number of nouns.
+	 */
+	public int size() {
+		int n = 0;
+		for (long[] a : words) {
+			if (a != null) for (long word : a) n += Long.bitCount(word);
+		}
+		return n;
+	}
+
+	/**
+	 * Returns true if the set has no nouns, otherwise false.
+	 * @return boolean.
+	 */
+	public boolean isEmpty() {
+		for (long[] a : words) {
+			if (a != null) for (long word : a) if (word != 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the bit mask of the first 64 nouns of the noun type, where bit (n - 1) is for noun n.
+	 * @param nounType Noun type.
+	 * @return Bit mask.
+	 */
+	public long getMask(final NounType nounType) {
+		return getMask(nounType, 0);
+	}
+
+	/**
+	 * Returns one word of the bit mask of the nouns of the noun type, where bit (n - 1) % 64 of word (n - 1) / 64 is for noun n.
+	 * @param nounType Noun type.
+	 * @param w Zero-based number of the word.
+	 * @return Bit mask.
+	 */
+	public long getMask(final NounType nounType, final int w) {
+		long[] a = getWords(nounType.num - 1);
+		return w < a.length ? a[w] : 0;
+	}
+
+	/**
+	 * Returns the first noun of the set, otherwise null.
+	 * @return Noun, or null.
+	 */
+	public Noun first() {
+		for (int t = 0; t < words.length; t++) {
+			long[] a = getWords(t);
+			for (int w = 0; w < a.length; w++) {
+				if (a[w] != 0) return getNoun(t, 64 * w + Long.numberOfTrailingZeros(a[w]));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the words of the noun type, which are empty if the set has no nouns of the noun type.
+	 * @param t Zero-based number of the noun type.
+	 * @return Words.
+	 */
+	private long[] getWords(final int t) {
+		return t < words.length && words[t] != null ? words[t] : NO_WORDS;
+	}
+
+	/**
+	 * Returns the noun for the given bit.
+	 * @param t Zero-based number of the noun type.
+	 * @param bit Zero-based number of the noun.
+	 * @return Noun.
+	 */
+	private Noun getNoun(final int t, final int bit) {
+		return puzzle.nounTypes.get(t).nouns.get(bit);
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Set Operations">
+
+	/**
+	 * Returns the nouns in this set or the other set.
+	 * @param other Other set.
+	 * @return Noun set.
+	 */
+	public NounSet union(final NounSet other) {
+		check(other);
+		long[][] a = new long[Math.max(words.length, other.words.length)][];
+		for (int t = 0; t < a.length; t++) {
+			long[] x = getWords(t), y = other.getWords(t);
+			long[] b = Arrays.copyOf(x, Math.max(x.length, y.length));
+			for (int w = 0; w < y.length; w++) b[w] |= y[w];
+			a[t] = b;
+		}
+		return new NounSet(puzzle, a);
+	}
+
+	/**
+	 * Returns the nouns in both this set and the other set.
+	 * @param other Other set.
+	 * @return Noun set.
+	 */
+	public NounSet intersect(final NounSet other) {
+		check(other);
+		long[][] a = new long[Math.min(words.length, other.words.length)][];
+		for (int t = 0; t < a.length; t++) {
+			long[] x = getWords(t), y = other.getWords(t);
+			long[] b = Arrays.copyOf(x, Math.min(x.length, y.length));
+			for (int w = 0; w < b.length; w++) b[w] &= y[w];
+			a[t] = b;
+		}
+		return new NounSet(puzzle, a);
+	}
+
+	/**
+	 * Returns the nouns in this set that are not in the other set.
+	 * @param other Other set.
+	 * @return Noun set.
+	 */
+	public NounSet difference(final NounSet other) {
+		check(other);
+		long[][] a = new long[words.length][];
+		for (int t = 0; t < a.length; t++) {
+			long[] x = getWords(t), y = other.getWords(t);
+			long[] b = x.clone();
+			for (int w = 0; w < Math.min(b.length, y.length); w++) b[w] &= ~y[w];
+			a[t] = b;
+		}
+		return new NounSet(puzzle, a);
+	}
+
+	/**
+	 * Returns true if this set and the other set have a noun in common, otherwise false.
+	 * @param other Other set.
+	 * @return boolean.
+	 */
+	public boolean intersects(final NounSet other) {
+		check(other);
+		for (int t = 0; t < Math.min(words.length, other.words.length); t++) {
+			long[] x = getWords(t), y = other.getWords(t);
+			for (int w = 0; w < Math.min(x.length, y.length); w++) {
+				if ((x[w] & y[w]) != 0) return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Throws an error if the other set belongs to another puzzle.
+	 * @param other Other set.
+	 */
+	private void check(final NounSet other) {
+		if (other.puzzle != puzzle) throw new Error("The noun sets must belong to the same puzzle!");
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Iteration">
+
+	@Override
+	public Iterator<Noun> iterator() {
+		return new Iterator<Noun>() {
+			private int t = 0;
+			private int w = -1;
+			private long word = 0;
+
+			@Override
+			public boolean hasNext() {
+				while (word == 0) {
+					if (++w >= getWords(t).length) {
+						if (t >= words.length - 1) return false;
+						++t;
+						w = -1;
+						continue;
+					}
+					word = getWords(t)[w];
+				}
+				return true;
+			}
+
+			@Override
+			public Noun next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				int bit = Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+				return getNoun(t, 64 * w + bit);
+			}
+		};
+	}
+
+	/**
+	 * Returns the nouns of the set as an unmodifiable list, so the set can be passed where a list of nouns is expected.
+	 * @return List of nouns.
+	 */
+	public List<Noun> asList() {
+		List<Noun> nouns = new ArrayList<>(size());
+		for (Noun noun : this) nouns.add(noun);
+		return new View(this, nouns);
+	}
+
+	/** Unmodifiable list of the nouns of a set, which remembers the set so it is not rebuilt by the of method. */
+	private static final class View extends AbstractList<Noun> implements RandomAccess {
+		private final NounSet set;
+		private final List<Noun> nouns;
+
+		View(final NounSet set, final List<Noun> nouns) {
+			this.set = set;
+			this.nouns = Collections.unmodifiableList(nouns);
+		}
+
+		@Override
+		public Noun get(final int index) { return nouns.get(index); }
+
+		@Override
+		public int size() { return nouns.size(); }
+
+		@Override
+		public boolean contains(final Object obj) { return obj instanceof Noun && set.contains((Noun) obj); }
+	}
+
+	// </editor-fold>
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (!(obj instanceof NounSet)) return false;
+		NounSet other = (NounSet) obj;
+		if (other.puzzle != puzzle) return false;
+		int n = Math.max(words.length, other.words.length);
+		for (int t = 0; t < n; t++) {
+			long[] x = getWords(t), y = other.getWords(t);
+			for (int w = 0; w < Math.max(x.length, y.length); w++) {
+				long a = w < x.length ? x[w] : 0;
+				long b = w < y.length ? y[w] : 0;
+				if (a != b) return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = System.identityHashCode(puzzle);
+		for (int t = 0; t < words.length; t++) {
+			long[] a = getWords(t);
+			for (int w = 0; w < a.length; w++) {
+				if (a[w] != 0) h = 31 * (31 * (31 * h + t) + w) + Long.hashCode(a[w]);
+			}
+		}
+		return h;
+	}
+}
@@ -10,6 +10,9 @@ import java.util.List;
  * @author Michael Benson <michael.benson@mysterymaster.com>
  */
 public final class NounType extends Base {
+	/** Puzzle that owns the noun type. */
+	public final Puzzle puzzle;
+	
 	/** One-based number of the noun type. */
 	public final int num;
 	
@@ -29,10 +32,12 @@ public final class NounType extends Base {
 	
 	/**
 	 * Constructor. Only the Puzzle class should create noun types.
+	 * @param puzzle Puzzle that owns the noun type.
 	 * @param num Current number of noun types.
 	 * @param name Name of the noun type.
 	 */
-	NounType(final int num, final String name) {
+	NounType(final Puzzle puzzle, final int num, final String name) {
+		this.puzzle = puzzle;
 		this.num = num;
 		this.name = name;
 		this.nouns = new ArrayList<>();
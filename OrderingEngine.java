@@ -0,0 +1,254 @@
+package com.mysterymaster.puzzle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Ordering Engine class propagates the slot bounds of every noun through the ordering facts of one noun type of slots.<br>
+ * Each fact whose link only depends on the difference between the two slots, such as isLessThan, isMoreThan, isLessBy, and isMoreBy,
+ * becomes a difference constraint lo &lt;= slot(noun1) - slot(noun2) &lt;= hi. Nouns that are with each other have the same slot.
+ * A constraint is only relaxed while its fact is enabled, so a fact may be enabled or disabled after the engine is built.<br>
+ * The bounds of each noun start from the slots it can still be with, and the constraints are relaxed until nothing changes,
+ * so every slot outside a noun's interval can be marked with the negative verb in one pass.<br>
+ * @version 2026-10-16
+ */
+public final class OrderingEngine extends Base {
+	/** Puzzle. */
+	private final Puzzle puzzle;
+
+	/** Noun type of the slots. */
+	public final NounType slots;
+
+	/** Number of slots. */
+	private final int n;
+
+	/** Nouns indexed by id, where the id is (type.num - 1) * maxNouns + num - 1. */
+	private final Noun[] nouns;
+
+	/** Fact of each constraint. */
+	private final Fact[] consFacts;
+
+	/** Noun 1 of each constraint. */
+	private final int[] cons1;
+
+	/** Noun 2 of each constraint. */
+	private final int[] cons2;
+
+	/** Lower bound of slot(noun1) - slot(noun2) of each constraint. */
+	private final int[] consLo;
+
+	/** Upper bound of slot(noun1) - slot(noun2) of each constraint. */
+	private final int[] consHi;
+
+	/** Lowest one-based slot of each noun. Scratch data of propagate. */
+	private final int[] lo;
+
+	/** Highest one-based slot of each noun. Scratch data of propagate. */
+	private final int[] hi;
+
+	/** Lowest one-based slot each noun could be with before the bounds were propagated. Scratch data of propagate. */
+	private final int[] lo0;
+
+	/** Highest one-based slot each noun could be with before the bounds were propagated. Scratch data of propagate. */
+	private final int[] hi0;
+
+	@Override
+	public String toString() { return "OrderingEngine"; }
+
+	@Override
+	public String asString() {
+		return "slots=" + Q + slots + Q + " constraints=" + Q + cons1.length + Q;
+	}
+
+	/**
+	 * Constructor. Builds the difference constraints from the facts. The puzzle must be validated.
+	 * @param puzzle Puzzle.
+	 * @param slots Noun type of the slots.
+	 */
+	public OrderingEngine(final Puzzle puzzle, final NounType slots) {
+		if (!puzzle.isValid) throw new Error("The puzzle must be validated before its ordering engine is built!");
+		this.puzzle = puzzle;
+		this.slots = slots;
+		this.n = puzzle.maxNouns;
+		this.nouns = new Noun[puzzle.maxNounTypes * n];
+		for (NounType nounType : puzzle.nounTypes) {
+			for (Noun noun : nounType.nouns) nouns[getId(noun)] = noun;
+		}
+
+		List<Fact> facts = new ArrayList<>();
+		List<int[]> list = new ArrayList<>();
+		for (Fact fact : puzzle.facts) {
+			int[] bounds = null;
+			if (fact.link == puzzle.With) {
+				if (fact.verb == puzzle.Is) bounds = new int[] { 0, 0 };
+			}
+			else if (fact.link.nounType == slots) {
+				bounds = getBounds(fact.link, fact.verb == puzzle.Is);
+			}
+			if (bounds == null) continue;
+			facts.add(fact);
+			list.add(new int[] { getId(fact.noun1), getId(fact.noun2), bounds[0], bounds[1] });
+		}
+
+		int m = list.size();
+		consFacts = facts.toArray(new Fact[0]);
+		cons1 = new int[m];
+		cons2 = new int[m];
+		consLo = new int[m];
+		consHi = new int[m];
+		for (int i = 0; i < m; i++) {
+			int[] c = list.get(i);
+			cons1[i] = c[0];
+			cons2[i] = c[1];
+			consLo[i] = c[2];
+			consHi[i] = c[3];
+		}
+		lo = new int[nouns.length];
+		hi = new int[nouns.length];
+		lo0 = new int[nouns.length];
+		hi0 = new int[nouns.length];
+	}
+
+	/**
+	 * Returns the id of the noun.
+	 * @param noun Noun.
+	 * @return Zero-based id.
+	 */
+	private int getId(final Noun noun) {
+		return (noun.type.num - 1) * n + noun.num - 1;
+	}
+
+	/**
+	 * Returns the bounds {lo, hi} of slot1 - slot2 for two slots that are (or are not) related by the link,
+	 * or null if the link does not only depend on the difference of the slots, or the bounds do not restrict anything.
+	 * @param link Link.
+	 * @param related True for the slots that are related, or false for the slots that are not related.
+	 * @return Array of two bounds, or null.
+	 */
+	private int[] getBounds(final Link link, final boolean related) {
+		List<Noun> list = link.nounType.nouns;
+		int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+		for (int d = 1 - n; d <= n - 1; d++) {
+			int state = -1;
+			for (int i = Math.max(0, d); i < n && i - d < n; i++) {
+				int s = link.isRelated(list.get(i), list.get(i - d)) == related ? 1 : 0;
+				if (state >= 0 && s != state) return null;
+				state = s;
+			}
+			if (state == 1) {
+				min = Math.min(min, d);
+				max = Math.max(max, d);
+			}
+		}
+		if (min > max) return new int[] { 1, 0 };
+		if (min == 1 - n && max == n - 1) return null;
+		return new int[] { min, max };
+	}
+
+	/**
+	 * Propagates the bounds, then marks the slots outside the bounds of each noun as not with the noun.
+	 * @param solver Solver.
+	 * @param mark Mark.
+	 * @param rule Rule used as the reference of the marks.
+	 * @return Zero for success, nonzero for failure.
+	 */
+	public int propagate(final ISolver solver, final Mark mark, final Rule rule) {
+		int rs = 0;
+
+		// Initialize the bounds from the slots each noun can still be with.
+		for (int id = 0; id < nouns.length; id++) {
+			Noun noun = nouns[id];
+			if (noun.type == slots) {
+				lo[id] = hi[id] = noun.num;
+				continue;
+			}
+			// Only the slots up to the first and from the last possible slot are read.
+			int min = 1, max = n;
+			while (min <= n && solver.getGridVerb(noun, slots.nouns.get(min - 1)) == puzzle.IsNot) ++min;
+			if (min > n) return -1;
+			while (solver.getGridVerb(noun, slots.nouns.get(max - 1)) == puzzle.IsNot) --max;
+			lo[id] = min;
+			hi[id] = max;
+			lo0[id] = lo[id];
+			hi0[id] = hi[id];
+		}
+
+		// Relax the constraints of the enabled facts and the pairs until the bounds do not change.
+		// Each pass tightens a bound by at least one, so there are at most 2 * n * nouns passes.
+		boolean changed = true;
+		for (int pass = 0; changed; pass++) {
+			if (pass > 2 * n * nouns.length) return -1;
+			changed = false;
+			for (int c = 0; c < cons1.length; c++) {
+				if (!consFacts[c].enabled) continue;
+				int a = cons1[c], b = cons2[c];
+				changed |= tighten(a, lo[b] + consLo[c], hi[b] + consHi[c]);
+				changed |= tighten(b, lo[a] - consHi[c], hi[a] - consLo[c]);
+				if (lo[a] > hi[a] || lo[b] > hi[b]) return -1;
+			}
+			for (int id = 0; id < nouns.length; id++) {
+				Noun noun1 = nouns[id];
+				if (noun1.type == slots) continue;
+				for (NounType nounType : puzzle.nounTypes) {
+					if (nounType == noun1.type || nounType == slots) continue;
+					Noun noun2 = solver.getPairNoun(noun1, nounType);
+					if (noun2 == null) continue;
+					int j = getId(noun2);
+					changed |= tighten(id, lo[j], hi[j]);
+					if (lo[id] > hi[id]) return -1;
+				}
+			}
+		}
+
+		// Trigger: Every slot outside the bounds of a noun is not with the noun.
+		// The slots outside the initial bounds of the noun are already not with the noun.
+		for (int id = 0; id < nouns.length; id++) {
+			Noun noun = nouns[id];
+			if (noun.type == slots) continue;
+			for (int num = lo0[id]; num <= hi0[id]; num++) {
+				if (num >= lo[id] && num <= hi[id]) continue;
+				Noun slot = slots.nouns.get(num - 1);
+				if (solver.getGridVerb(noun, slot) == puzzle.IsNot) continue;
+				final int min = lo[id], max = hi[id];
+				rs = solver.addMarkByRule(mark, rule, 'a', noun, puzzle.IsNot, slot, () -> noun.name + " must be in " + slots.name + " " + min + " to " + max + ".");
+				if (rs != 0) return rs;
+			}
+		}
+
+		return rs;
+	}
+
+	/**
+	 * Intersects the bounds of the noun with the given bounds.
+	 * @param id Zero-based id of the noun.
+	 * @param min Lower bound.
+	 * @param max Upper bound.
+	 * @return True if a bound changed, otherwise false.
+	 */
+	private boolean tighten(final int id, final int min, final int max) {
+		boolean changed = false;
+		if (min > lo[id]) { lo[id] = min; changed = true; }
+		if (max < hi[id]) { hi[id] = max; changed = true; }
+		return changed;
+	}
+
+	/**
+	 * Returns the lowest slot of the noun found by the last call to propagate.
+	 * @param noun Noun.
+	 * @return One-based number of the slot.
+	 */
+	public int getLow(final Noun noun) { return lo[getId(noun)]; }
+
+	/**
+	 * Returns the highest slot of the noun found by the last call to propagate.
+	 * @param noun Noun.
+	 * @return One-based number of the slot.
+	 */
+	public int getHigh(final Noun noun) { return hi[getId(noun)]; }
+
+	/**
+	 * Returns the number of difference constraints.
+	 * @return Number of constraints.
+	 */
+	public int getConstraintCount() { return cons1.length; }
+}
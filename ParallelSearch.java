@@ -0,0 +1,248 @@
+package com.mysterymaster.puzzle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Parallel Search class explores the assumptions of level 4 on a fork/join pool, where idle workers steal branches.<br>
+ * Each branch is a private copy of the solve state with one more assumption. A branch that reaches a contradiction is dropped,
+ * and every other branch is cancelled as soon as enough solutions are found.<br>
+ * @version 2026-10-16
+ */
+public final class ParallelSearch extends Base {
+	/** Status of a branch that has no contradiction and is not solved. */
+	public static final int OPEN = 0;
+
+	/** Status of a branch that is solved. */
+	public static final int SOLVED = 1;
+
+	/** Status of a branch that has a contradiction. */
+	public static final int CONTRADICTION = -1;
+
+	/** A private copy of the solve state after the assumptions of the branch, and everything they imply, were entered. */
+	public interface Branch {
+		/**
+		 * Returns the status of the branch.
+		 * @return OPEN, SOLVED, or CONTRADICTION.
+		 */
+		int getStatus();
+
+		/**
+		 * Returns the assumptions to explore when the branch is open, where exactly one of them must be true.<br>
+		 * This is usually the noun with the fewest candidates for one noun type.
+		 * @return Array where [0] is the id of noun 1, and the rest are the ids of the nouns that noun 1 may be with.
+		 */
+		int[] getGuesses();
+
+		/**
+		 * Returns a private copy of this branch with the assumption that noun 1 is with noun 2.
+		 * This branch is not modified, and may be forked by several threads at once.
+		 * @param id1 Id of noun 1.
+		 * @param id2 Id of noun 2.
+		 * @return Branch.
+		 */
+		Branch fork(int id1, int id2);
+
+		/**
+		 * Returns the solution of a solved branch in the same layout as Puzzle.answer.
+		 * @return Solution.
+		 */
+		int[][] getSolution();
+	}
+
+	/** Fork/join pool. */
+	private final ForkJoinPool pool;
+
+	/** Result of one search. */
+	public static final class Result extends Base {
+		/** Solutions found, which are at most the limit of the search. */
+		public final List<int[][]> solutions;
+
+		/** Number of branches explored. */
+		public final long branches;
+
+		/** Number of branches that reached a contradiction. */
+		public final long contradictions;
+
+		@Override
+		public String toString() { return "ParallelSearch.Result"; }
+
+		@Override
+		public String asString() {
+			return "solutions=" + Q + solutions.size() + Q + " branches=" + Q + branches + Q + " contradictions=" + Q + contradictions + Q;
+		}
+
+		/**
+		 * Constructor.
+		 * @param solutions Solutions.
+		 * @param branches Number of branches explored.
+		 * @param contradictions Number of branches that reached a contradiction.
+		 */
+		Result(final List<int[][]> solutions, final long branches, final long contradictions) {
+			this.solutions = solutions;
+			this.branches = branches;
+			this.contradictions = contradictions;
+		}
+	}
+
+	@Override
+	public String toString() { return "ParallelSearch"; }
+
+	@Override
+	public String asString() {
+		return "parallelism=" + Q + pool.getParallelism() + Q;
+	}
+
+	/** Constructor that uses every processor. */
+	public ParallelSearch() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor.
+	 * @param parallelism Number of workers.
+	 */
+	public ParallelSearch(final int parallelism) {
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/** Shuts down the workers. */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Returns the first solution found from the root branch, or null if there is none.
+	 * @param root Root branch.
+	 * @return Solution, or null.
+	 */
+	public int[][] solve(final Branch root) {
+		List<int[][]> solutions = search(root, 1);
+		return solutions.isEmpty() ? null : solutions.get(0);
+	}
+
+	/**
+	 * Returns at most the given number of solutions found from the root branch.
+	 * @param root Root branch.
+	 * @param limit Maximum number of solutions.
+	 * @return List of solutions.
+	 */
+	public List<int[][]> search(final Branch root, final int limit) {
+		return run(root, limit).solutions;
+	}
+
+	/**
+	 * Searches for at most the given number of solutions from the root branch. The counts are kept per search,
+	 * so several threads may search with the same instance at once.
+	 * @param root Root branch.
+	 * @param limit Maximum number of solutions.
+	 * @return Result.
+	 */
+	public Result run(final Branch root, final int limit) {
+		Search search = new Search(limit);
+		pool.invoke(new Task(search, root));
+		return new Result(new ArrayList<>(search.solutions), search.branches.sum(), search.contradictions.sum());
+	}
+
+	/** Shared data of one search. */
+	private static final class Search {
+		/** Maximum number of solutions. */
+		final int limit;
+
+		/** Number of solutions found. */
+		final AtomicInteger found = new AtomicInteger();
+
+		/** True when every branch should stop. */
+		final AtomicBoolean stop = new AtomicBoolean();
+
+		/** Solutions found. */
+		final ConcurrentLinkedQueue<int[][]> solutions = new ConcurrentLinkedQueue<>();
+
+		/** Number of branches explored. */
+		final LongAdder branches = new LongAdder();
+
+		/** Number of branches that reached a contradiction. */
+		final LongAdder contradictions = new LongAdder();
+
+		Search(final int limit) {
+			this.limit = limit;
+		}
+	}
+
+	/** Task that explores one branch. */
+	private static final class Task extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Search search;
+		private final Branch parent;
+		private final int id1;
+		private final int id2;
+
+		/**
+		 * Constructor for a branch that is already entered.
+		 * @param search Search.
+		 * @param branch Branch.
+		 */
+		Task(final Search search, final Branch branch) {
+			this(search, branch, -1, -1);
+		}
+
+		/**
+		 * Constructor for the branch of the parent with one more assumption, which is forked by the worker.
+		 * @param search Search.
+		 * @param parent Parent branch.
+		 * @param id1 Id of noun 1, or -1 if the parent is the branch.
+		 * @param id2 Id of noun 2.
+		 */
+		Task(final Search search, final Branch parent, final int id1, final int id2) {
+			this.search = search;
+			this.parent = parent;
+			this.id1 = id1;
+			this.id2 = id2;
+		}
+
+		@Override
+		protected void compute() {
+			if (search.stop.get()) return;
+			Branch branch = id1 < 0 ? parent : parent.fork(id1, id2);
+			if (search.stop.get()) return;
+			search.branches.increment();
+
+			switch (branch.getStatus()) {
+				case CONTRADICTION:
+					search.contradictions.increment();
+					return;
+				case SOLVED:
+					int n = search.found.incrementAndGet();
+					if (n <= search.limit) search.solutions.add(branch.getSolution());
+					if (n >= search.limit) search.stop.set(true);
+					return;
+			}
+
+			int[] guesses = branch.getGuesses();
+			if (guesses == null || guesses.length < 2) {
+				search.contradictions.increment();
+				return;
+			}
+
+			// Fork the other assumptions, then explore the first one here. The search may stop while they wait.
+			List<Task> tasks = new ArrayList<>(guesses.length - 2);
+			for (int i = guesses.length - 1; i > 1 && !search.stop.get(); i--) {
+				Task task = new Task(search, branch, guesses[0], guesses[i]);
+				task.fork();
+				tasks.add(task);
+			}
+			if (!search.stop.get()) new Task(search, branch, guesses[0], guesses[1]).compute();
+			for (int i = tasks.size() - 1; i >= 0; i--) {
+				Task task = tasks.get(i);
+				if (search.stop.get() && task.tryUnfork()) continue;
+				task.join();
+			}
+		}
+	}
+}
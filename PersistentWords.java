@@ -0,0 +1,175 @@
+package com.mysterymaster.puzzle;
+
+import java.util.Arrays;
+
+/**
+ * The Persistent Words class is an array of long words whose snapshots share structure with the array.<br>
+ * The words are kept in chunks. Taking or restoring a snapshot only swaps the array of chunks, and a chunk is copied
+ * the first time it is written after a snapshot, so both are O(1).<br>
+ * @version 2026-10-16
+ */
+public final class PersistentWords extends Base {
+	/** Number of bits for the index within a chunk. */
+	private static final int SHIFT = 6;
+
+	/** Number of words per chunk. */
+	private static final int SIZE = 1 << SHIFT;
+
+	/** Mask for the index within a chunk. */
+	private static final int MASK = SIZE - 1;
+
+	/** Immutable snapshot of the words. */
+	public static final class Snapshot {
+		/** Chunks of the snapshot, which are never written again. */
+		private final long[][] chunks;
+
+		Snapshot(final long[][] chunks) {
+			this.chunks = chunks;
+		}
+	}
+
+	/** Number of words. */
+	public final int length;
+
+	/** Chunks of words. */
+	private long[][] chunks;
+
+	/** True if the array of chunks is shared with a snapshot, so it must be copied before it is written. */
+	private boolean shared;
+
+	/** Edit number when each chunk was copied. A chunk is owned by this array if its edit number is the current one. */
+	private int[] owners;
+
+	/** Current edit number. Incremented by each snapshot, so no chunk is owned afterwards. */
+	private int edit;
+
+	@Override
+	public String toString() { return "PersistentWords"; }
+
+	@Override
+	public String asString() {
+		return "length=" + Q + length + Q + " chunks=" + Q + chunks.length + Q + " shared=" + Q + shared + Q + " edit=" + Q + edit + Q;
+	}
+
+	/**
+	 * Constructor where every word is zero.
+	 * @param length Number of words.
+	 */
+	public PersistentWords(final int length) {
+		this.length = length;
+		int n = (length + MASK) >>> SHIFT;
+		this.chunks = new long[n][SIZE];
+		this.shared = false;
+		this.owners = new int[n];
+		this.edit = 0;
+	}
+
+	/**
+	 * Constructor that shares the words of the snapshot, which is O(1).<br>
+	 * Several threads may create arrays from the same snapshot at once, since the snapshot is never written.
+	 * @param length Number of words.
+	 * @param snapshot Snapshot of an array with the same number of words.
+	 */
+	public PersistentWords(final int length, final Snapshot snapshot) {
+		this.length = length;
+		this.chunks = snapshot.chunks;
+		this.shared = true;
+		this.owners = new int[chunks.length];
+		this.edit = 1;
+	}
+
+	/**
+	 * Returns the word at the given index.
+	 * @param i Index.
+	 * @return Word.
+	 */
+	public long get(final int i) {
+		return chunks[i >>> SHIFT][i & MASK];
+	}
+
+	/**
+	 * Returns the chunk of the given index so it can be written, after copying it if it is shared.
+	 * @param i Index.
+	 * @return Chunk.
+	 */
+	private long[] getChunk(final int i) {
+		if (shared) {
+			chunks = chunks.clone();
+			shared = false;
+		}
+		int c = i >>> SHIFT;
+		long[] chunk = chunks[c];
+		if (owners[c] != edit) {
+			chunk = chunk.clone();
+			chunks[c] = chunk;
+			owners[c] = edit;
+		}
+		return chunk;
+	}
+
+	/**
+	 * Sets the word at the given index.
+	 * @param i Index.
+	 * @param word Word.
+	 */
+	public void set(final int i, final long word) {
+		if (get(i) == word) return;
+		getChunk(i)[i & MASK] = word;
+	}
+
+	/**
+	 * Sets every word to the given value.
+	 * @param word Word.
+	 */
+	public void fill(final long word) {
+		long[][] a = new long[chunks.length][SIZE];
+		if (word != 0) {
+			for (long[] chunk : a) Arrays.fill(chunk, word);
+		}
+		chunks = a;
+		shared = false;
+		++edit;
+		for (int c = 0; c < owners.length; c++) owners[c] = edit;
+	}
+
+	/**
+	 * Returns a snapshot of the words. Later writes do not change the snapshot.
+	 * @return Snapshot.
+	 */
+	public Snapshot snapshot() {
+		shared = true;
+		++edit;
+		return new Snapshot(chunks);
+	}
+
+	/**
+	 * Copies the words of the other array, which must have the same length, word by word into the chunks of this array.<br>
+	 * This is O(length), but unlike restore no chunk is shared afterwards, so once every chunk is owned,
+	 * neither the copy nor later writes allocate until the next snapshot.
+	 * @param other Other array.
+	 */
+	public void copyFrom(final PersistentWords other) {
+		if (shared) {
+			chunks = chunks.clone();
+			shared = false;
+		}
+		for (int c = 0; c < chunks.length; c++) {
+			if (owners[c] != edit) {
+				chunks[c] = other.chunks[c].clone();
+				owners[c] = edit;
+			}
+			else
+				System.arraycopy(other.chunks[c], 0, chunks[c], 0, SIZE);
+		}
+	}
+
+	/**
+	 * Restores the words of the snapshot, which must be from an array of the same length.
+	 * @param snapshot Snapshot.
+	 */
+	public void restore(final Snapshot snapshot) {
+		chunks = snapshot.chunks;
+		shared = true;
+		++edit;
+	}
+}
@@ -3,7 +3,9 @@ package com.mysterymaster.puzzle;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * The Puzzle class defines a logic puzzle.<br>
@@ -12,17 +14,17 @@ import java.util.List;
  * @author Michael Benson <michael.benson@mysterymaster.com>
  */
 public class Puzzle extends Base {
-	/** Negative verb. The static verbs exist even when there is no puzzle. */
-	public final static Verb IsNot  = new Verb(0, "is not", "X");
+	/** Negative verb. Each puzzle has its own verbs, so a child puzzle may rename them. */
+	public final Verb IsNot;
 
-	/** Positive verb. The static verbs exist even when there is no puzzle. */
-	public final static Verb Is = new Verb(1, "is", "O");
+	/** Positive verb. Each puzzle has its own verbs, so a child puzzle may rename them. */
+	public final Verb Is;
 
-	/** Possible verb. The static verbs exist even when there is no puzzle. */
-	public final static Verb Maybe = new Verb(2, "may be", " ");
+	/** Possible verb. Each puzzle has its own verbs, so a child puzzle may rename them. */
+	public final Verb Maybe;
 
 	/** Default link. Note that all links are dependent on the nouns. */
-	public static Link With = null;
+	public final Link With;
 
 	/** Name of the puzzle module. */
 	public String myName = null;
@@ -42,6 +44,12 @@ public class Puzzle extends Base {
 	/** List of facts. */
 	public final List<Fact> facts = new ArrayList<>();
 
+	/** Facts grouped by type, where factsByType.get(type - 1) has the facts of the given type (1 to 4). Set in the validate method. */
+	private final List<List<Fact>> factsByType = new ArrayList<>();
+
+	/** Keys of the facts, used by addFact to reject duplicate facts. A fact with the With link has a key for both orders of its nouns. */
+	private final Set<FactKey> factKeys = new HashSet<>();
+
 	/** List of rules. */
 	public final List<Rule> rules = new ArrayList<>();
 
@@ -69,6 +77,9 @@ public class Puzzle extends Base {
 	/** SmartRule object. Set in the constructor method. */
 	public SmartRule smartRule;
 
+	/** Compiled puzzle. Set by the compile method, and cleared in the validate method. */
+	private CompiledPuzzle compiled = null;
+
 	@Override
 	public String toString() {
 		return myName == null ? "Puzzle" : myName;
@@ -81,12 +92,10 @@ public class Puzzle extends Base {
 
 	/** Constructor. Create first link "With", and update its noun type in addNounType method. */
 	public Puzzle() {
-		// Reset the defaults for the static verbs each time the Puzzle object is instantiated.
-		IsNot.name = "is not"; IsNot.code = "X";
-		Is.name = "is"; Is.code = "O";
-		Maybe.name = "may be"; Maybe.code = " ";
-		
-		// The verbs array is defined for the puzzle.
+		// The verbs are defined for each puzzle, so puzzles on different threads do not share them.
+		IsNot = new Verb(0, "is not", "X");
+		Is = new Verb(1, "is", "O");
+		Maybe = new Verb(2, "may be", " ");
 		verbs = new Verb[] { IsNot, Is, Maybe };
 		
 		With = addLink("with", null);
@@ -113,7 +122,7 @@ public class Puzzle extends Base {
 	 * @return The new Noun Type object.
 	 */
 	public final NounType addNounType(final String name) {
-		NounType nounType = new NounType(nounTypes.size() + 1, name);
+		NounType nounType = new NounType(this, nounTypes.size() + 1, name);
 		nounTypes.add(nounType);
 		maxNounTypes = nounTypes.size();
 		if (nounType.num == 1) {
@@ -130,7 +139,7 @@ public class Puzzle extends Base {
 	 * @return The new Link object.
 	 */
 	public final Link addLink(final String name, final NounType nounType) {
-		Link link = new Link(links.size(), name, nounType);
+		Link link = new Link(this, links.size(), name, nounType);
 		links.add(link);
 		maxLinks = links.size();
 		return link;
@@ -145,6 +154,24 @@ public class Puzzle extends Base {
 		return Arrays.asList(nouns);
 	}
 	
+	/**
+	 * Returns a list of the nouns in the given set, in the order of the noun types and nouns.
+	 * @param nouns Noun set.
+	 * @return Unmodifiable list of nouns.
+	 */
+	public final List<Noun> getList(final NounSet nouns) {
+		return nouns.asList();
+	}
+	
+	/**
+	 * Returns the set of the given nouns. Called by the addXX methods for facts and rules.
+	 * @param nouns Variable number of nouns.
+	 * @return Noun set.
+	 */
+	public final NounSet getSet(final Noun... nouns) {
+		return NounSet.of(this, nouns);
+	}
+	
 	// The following methods add one fact where the nouns are one-to-one.
 	
 	public final Fact addFact(final String clueNum, final Noun noun1, final Verb verb, final Link link, final Noun noun2) {
@@ -156,25 +183,18 @@ public class Puzzle extends Base {
 	}
 	
 	public final Fact addFact(final String clueNum, final Noun noun1, final Verb verb, final Link link, final Noun noun2, final String name, final boolean initEnabled) {
+		// Don't enter duplicate facts.
+		if (!factKeys.add(new FactKey(noun1, verb, link, noun2))) {
+			//console.log("Warning! This fact already exists: " + sayFact(noun1, verb, link, noun2));
+			return null;
+		}
+		if (link == With) factKeys.add(new FactKey(noun2, verb, link, noun1));
+
 		String txt = name;
 		if (name == null || name.length() < 1) {
 			txt = sayFact(noun1, verb, link, noun2);
 		}
 
-		// Don't enter duplicate facts.
-		boolean ok = true;
-		for (Fact oldFact : facts) {
-			if (oldFact.verb != verb) continue;
-			if (oldFact.noun1 == noun1 && oldFact.link == link && oldFact.noun2 == noun2)
-				ok = false;
-			else if (oldFact.noun1 == noun2 && oldFact.link == link && oldFact.link == With && oldFact.noun2 == noun1)
-				ok = false;
-			if (!ok) {
-				//console.log("Warning! This fact already exists: " + oldFact.num + " " + oldFact.name);
-				return null;
-			}
-		}
-
 		String msg = getClueNumMsg(clueNum, txt);
 		Fact fact = new Fact(facts.size() + 1, msg, noun1, verb, link, noun2, initEnabled);
 		facts.add(fact);
@@ -261,6 +281,48 @@ public class Puzzle extends Base {
 		return fact;
 	}
 	
+	// The following methods add facts where the nouns are given by noun sets. They are convenience overloads that pass the nouns of the sets to the list overloads above.
+	
+	public final Fact addFact(final String clueNum, final Noun noun1, final Verb verb, final Link link, final NounSet nouns2) {
+		return addFact(clueNum, noun1, verb, link, nouns2.asList());
+	}
+	
+	public final Fact addFact(final String clueNum, final Noun noun1, final Verb verb, final Link link, final NounSet nouns2, final String name) {
+		return addFact(clueNum, noun1, verb, link, nouns2.asList(), name);
+	}
+	
+	public final Fact addFact(final String clueNum, final Noun noun1, final Verb verb, final Link link, final NounSet nouns2, final String name, final boolean initEnabled) {
+		return addFact(clueNum, noun1, verb, link, nouns2.asList(), name, initEnabled);
+	}
+	
+	public final Fact addFact(final String clueNum, final NounSet nouns1, final Verb verb, final Link link, final Noun noun2) {
+		return addFact(clueNum, nouns1.asList(), verb, link, noun2);
+	}
+	
+	public final Fact addFact(final String clueNum, final NounSet nouns1, final Verb verb, final Link link, final Noun noun2, final String name) {
+		return addFact(clueNum, nouns1.asList(), verb, link, noun2, name);
+	}
+	
+	public final Fact addFact(final String clueNum, final NounSet nouns1, final Verb verb, final Link link, final Noun noun2, final String name, final boolean initEnabled) {
+		return addFact(clueNum, nouns1.asList(), verb, link, noun2, name, initEnabled);
+	}
+	
+	public final Fact addFact(final String clueNum, final NounSet nouns1, final Verb verb, final Link link) {
+		return addFact(clueNum, nouns1.asList(), verb, link);
+	}
+	
+	public final Fact addFact(final String clueNum, final NounSet nouns1, final Verb verb, final Link link, final NounSet nouns2) {
+		return addFact(clueNum, nouns1.asList(), verb, link, nouns2.asList());
+	}
+	
+	public final Fact addFact(final String clueNum, final NounSet nouns1, final Verb verb, final Link link, final NounSet nouns2, final String name) {
+		return addFact(clueNum, nouns1.asList(), verb, link, nouns2.asList(), name);
+	}
+	
+	public final Fact addFact(final String clueNum, final NounSet nouns1, final Verb verb, final Link link, final NounSet nouns2, final String name, final boolean initEnabled) {
+		return addFact(clueNum, nouns1.asList(), verb, link, nouns2.asList(), name, initEnabled);
+	}
+	
 	// See puzzles: CicusAnniversaries.
 	public final Fact addFactsInSequence(final String clueNum, final List<Noun> nouns, final Verb verb, final Link link) {
 		return addFactsInSequence(clueNum, nouns, verb, link, null);
@@ -556,6 +618,9 @@ public class Puzzle extends Base {
 
 		// Validate every link has a noun type and a function.
 		for (Link link : links) {
+			if (link.puzzle != this || (link.nounType != null && link.nounType.puzzle != this)) {
+				throw new Error("Link " + link.num + " must belong to this puzzle!" + NL + link.name);
+			}
 			if (link.nounType == null) {
 				throw new Error("Link " + link.num + " must have a noun type!" + NL + link.name);
 			}
@@ -565,9 +630,18 @@ public class Puzzle extends Base {
 			link.update();
 		}
 
-		// Validate the facts.
+		// Validate the facts, and index them by noun, link, and type in one pass.
 		maxFacts = facts.size();
+		for (NounType nounType : nounTypes) {
+			for (Noun noun : nounType.nouns) noun.facts.clear();
+		}
+		for (Link link : links) link.facts.clear();
+		factsByType.clear();
+		for (int type = 1; type <= 4; type++) factsByType.add(new ArrayList<>());
 		for (Fact fact : facts) {
+			if (fact.verb != IsNot && fact.verb != Is && fact.verb != Maybe) {
+				throw new Error("Fact " + fact.num + " must use a verb of this puzzle!" + NL + fact.name);
+			}
 			if (fact.verb == Maybe) {
 				throw new Error("Fact " + fact.num + " cannot use the possible verb!" + NL + fact.name);
 			}
@@ -582,6 +656,15 @@ public class Puzzle extends Base {
 			if (fact.noun1.type == type && fact.noun2.type == type) {
 				throw new Error("Fact " + fact.num + " cannot have the link and both nouns with the same type!" + NL + fact.name);
 			}
+
+			link.facts.add(fact);
+			factsByType.get(fact.type - 1).add(fact);
+
+			// The nouns of facts of type 3 and 4 reference the fact.
+			if (link.num < 1) continue;
+			if (type == fact.noun1.type || type == fact.noun2.type) continue;
+			fact.noun1.facts.add(fact);
+			fact.noun2.facts.add(fact);
 		}
 
 		// Validate the rules.
@@ -601,20 +684,12 @@ public class Puzzle extends Base {
 		for (NounType nounType : nounTypes) {
 			for (Noun noun : nounType.nouns) {
 				noun.pairs = new Mark[maxNounTypes];
-
-				for (Fact fact : facts) {
-					Link link = fact.link;
-					if (link.num < 1) continue;
-					if (link.nounType == fact.noun1.type || link.nounType == fact.noun2.type) continue;
-					if (fact.noun1 == noun || fact.noun2 == noun) {
-						noun.facts.add(fact);
-					}
-				}
 			}
 		}
 
 		// The puzzle is valid.
 		isValid = true;
+		compiled = null;
 		reset();
 
 		// Finally, set the solver for this puzzle.
@@ -623,6 +698,33 @@ public class Puzzle extends Base {
 		return rs;
 	}
 
+	/**
+	 * Returns the facts of the given type. The puzzle must be validated.
+	 * @param type Type of the fact (1 to 4).
+	 * @return Unmodifiable list of facts.
+	 */
+	public List<Fact> getFacts(final int type) {
+		return Collections.unmodifiableList(factsByType.get(type - 1));
+	}
+
+	/**
+	 * Returns the facts that use the given link. The puzzle must be validated.
+	 * @param link Link.
+	 * @return Unmodifiable list of facts.
+	 */
+	public List<Fact> getFacts(final Link link) {
+		return Collections.unmodifiableList(link.facts);
+	}
+
+	/**
+	 * Returns the compiled puzzle shared by every SolveState of this puzzle. The puzzle must be validated.
+	 * @return Compiled puzzle.
+	 */
+	public synchronized CompiledPuzzle compile() {
+		if (compiled == null) compiled = new CompiledPuzzle(this);
+		return compiled;
+	}
+
 	// </editor-fold>
 	
 	// <editor-fold defaultstate="collapsed" desc="Answer">
@@ -631,21 +733,73 @@ public class Puzzle extends Base {
 	public int[][] answer = null;
 
 	/**
-	 * Returns true if the solution is correct (or the answer field is null), otherwise false.<br>
-	 * Called by the Solver.
-	 * @return Boolean.
+	 * Returns the current solution in the same layout as the answer field, with -1 for an unknown noun.
+	 * @return Array where [t2 - 2][n1 - 1] is the zero-based number of the noun of type t2 with noun n1 of the first type.
 	 */
-	boolean isAnswer() {
-		if (answer == null) return true;
+	public int[][] getSolution() {
+		int[][] solution = new int[maxNounTypes - 1][maxNouns];
 		NounType nounType1 = nounTypes.get(0);
 		for (Noun noun1 : nounType1.nouns) {
 			for (NounType nounType2 : nounTypes) {
 				if (nounType2.num == 1) continue;
-				if ((Mark.getPairNounNum(noun1, nounType2) - 1) != answer[nounType2.num - 2][noun1.num - 1]) return false;
+				solution[nounType2.num - 2][noun1.num - 1] = Mark.getPairNounNum(noun1, nounType2) - 1;
 			}
 		}
+		return solution;
+	}
+
+	/**
+	 * Returns true if the solution is correct (or the answer field is null), otherwise false.<br>
+	 * Called by the Solver.
+	 * @return Boolean.
+	 */
+	boolean isAnswer() {
+		return isAnswer(getSolution());
+	}
+
+	/**
+	 * Returns true if the solution is correct (or the answer field is null), otherwise false.<br>
+	 * Called by the BatchSolver with the solution of an engine.
+	 * @param solution Solution in the same layout as the answer field.
+	 * @return Boolean.
+	 */
+	boolean isAnswer(final int[][] solution) {
+		if (answer == null) return true;
+		for (int i = 0; i < answer.length; i++) {
+			if (!Arrays.equals(solution[i], answer[i])) return false;
+		}
 		return true;
 	}
 
 	// </editor-fold>
+
+	/** Key of a fact for the hashed index of facts. The nouns, verb, and link are compared by identity. */
+	private static final class FactKey {
+		private final Noun noun1;
+		private final Verb verb;
+		private final Link link;
+		private final Noun noun2;
+
+		FactKey(final Noun noun1, final Verb verb, final Link link, final Noun noun2) {
+			this.noun1 = noun1;
+			this.verb = verb;
+			this.link = link;
+			this.noun2 = noun2;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof FactKey)) return false;
+			FactKey key = (FactKey) obj;
+			return noun1 == key.noun1 && verb == key.verb && link == key.link && noun2 == key.noun2;
+		}
+
+		@Override
+		public int hashCode() {
+			int h = System.identityHashCode(noun1);
+			h = 31 * h + System.identityHashCode(verb);
+			h = 31 * h + System.identityHashCode(link);
+			return 31 * h + System.identityHashCode(noun2);
+		}
+	}
 }
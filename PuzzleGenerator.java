@@ -0,0 +1,416 @@
+package com.mysterymaster.puzzle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+/**
+ * The Puzzle Generator class builds synthetic puzzles of any size for benchmarks and soak tests.<br>
+ * A hidden solution is planted first: the first noun type is the slots, and each noun of another type is in a random slot.
+ * The solution is stored in the answer field of the puzzle. Every fact and rule is then generated to be true for the solution,
+ * so the puzzle is always consistent, although it may have more than one solution if the facts are sparse.<br>
+ * The links use the SmartLink kinds on the slots, the fact density is the fraction of the pairs of nouns of different types
+ * that get a fact, and the rules are a given number of each SmartRule kind. The same seed always gives the same puzzle.<br>
+ * @version 2026-10-16
+ */
+public final class PuzzleGenerator extends Base {
+	/** Kind of a generated rule. */
+	public enum RuleKind {
+		MatchAtLeastOne("matchAtLeastOne"),
+		MatchOneToExactlyOne("matchOneToExactlyOne"),
+		MatchOneToOne("matchOneToOne"),
+		MatchAllDifferent("matchAllDifferent"),
+		MatchOneList("matchOneList"),
+		IsRelated("isRelated"),
+		InSameGroup("inSameGroup"),
+		InOppositeGroup("inOppositeGroup"),
+		Ordering("ordering");
+
+		public final String name;
+
+		RuleKind(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() { return name; }
+	}
+
+	/** The Synthetic class is a generated puzzle, which remembers how it was generated. */
+	public static final class Synthetic extends Puzzle {
+		/** Seed of the puzzle. */
+		public final long seed;
+
+		/** Slot of each noun indexed by [t - 1][n - 1], where the slot is the zero-based number of the noun of the first type. */
+		final int[][] slots;
+
+		/**
+		 * Constructor.
+		 * @param seed Seed of the puzzle.
+		 * @param slots Slot of each noun.
+		 */
+		Synthetic(final long seed, final int[][] slots) {
+			this.seed = seed;
+			this.slots = slots;
+		}
+
+		/**
+		 * Returns the slot of the noun in the planted solution.
+		 * @param noun Noun.
+		 * @return Noun of the first type.
+		 */
+		public Noun getSlot(final Noun noun) {
+			return nounTypes.get(0).nouns.get(slots[noun.type.num - 1][noun.num - 1]);
+		}
+	}
+
+	/** Number of noun types, including the slots. */
+	public int maxNounTypes;
+
+	/** Number of nouns per noun type. */
+	public int maxNouns;
+
+	/** Kinds of the links on the slots. The With link is always used. */
+	public final List<SmartLink.Kind> linkKinds = new ArrayList<>(Arrays.asList(SmartLink.Kind.IsLessThan, SmartLink.Kind.IsNextTo, SmartLink.Kind.IsOffsetBy));
+
+	/** Fraction of the pairs of nouns of different types that get a fact, from 0 to 1. */
+	public double factDensity = 0.05;
+
+	/** Number of rules of each kind. */
+	public final Map<RuleKind, Integer> ruleCounts = new EnumMap<>(RuleKind.class);
+
+	@Override
+	public String toString() { return "PuzzleGenerator"; }
+
+	@Override
+	public String asString() {
+		return "maxNounTypes=" + Q + maxNounTypes + Q + " maxNouns=" + Q + maxNouns + Q + " linkKinds=" + Q + linkKinds + Q + " factDensity=" + Q + factDensity + Q + " ruleCounts=" + Q + ruleCounts + Q;
+	}
+
+	/**
+	 * Constructor.
+	 * @param maxNounTypes Number of noun types, including the slots.
+	 * @param maxNouns Number of nouns per noun type.
+	 */
+	public PuzzleGenerator(final int maxNounTypes, final int maxNouns) {
+		this.maxNounTypes = maxNounTypes;
+		this.maxNouns = maxNouns;
+	}
+
+	/**
+	 * Sets the number of rules of the given kind.
+	 * @param kind Kind of rule.
+	 * @param count Number of rules.
+	 * @return This generator.
+	 */
+	public PuzzleGenerator setRuleCount(final RuleKind kind, final int count) {
+		ruleCounts.put(kind, count);
+		return this;
+	}
+
+	/**
+	 * Returns a new puzzle for the seed. The puzzle is not validated.
+	 * @param seed Seed.
+	 * @return Puzzle.
+	 */
+	public Synthetic generate(final long seed) {
+		if (maxNounTypes < 2 || maxNouns < 2) throw new Error("The puzzle must have at least two noun types and two nouns per type!");
+		if (factDensity < 0 || factDensity > 1) throw new Error("The fact density must be from 0 to 1!");
+		Random random = new Random(seed);
+
+		// Plant the solution, where the slots are noun type 1.
+		int[][] slots = new int[maxNounTypes][];
+		for (int t = 0; t < maxNounTypes; t++) slots[t] = getPermutation(maxNouns, t == 0 ? null : random);
+		Synthetic puzzle = new Synthetic(seed, slots);
+		puzzle.myName = "Synthetic" + maxNounTypes + "x" + maxNouns + "s" + seed;
+		puzzle.myTitle = "Synthetic " + maxNounTypes + " x " + maxNouns + " (seed " + seed + ")";
+		for (int t = 1; t <= maxNounTypes; t++) {
+			String name = t == 1 ? "Slot" : "Type" + t;
+			NounType nounType = puzzle.addNounType(name);
+			for (int n = 1; n <= maxNouns; n++) nounType.addNoun(t == 1 ? "" + n : "T" + t + "N" + n);
+		}
+		puzzle.answer = new int[maxNounTypes - 1][maxNouns];
+		for (int t = 1; t < maxNounTypes; t++) {
+			for (int n = 0; n < maxNouns; n++) puzzle.answer[t - 1][slots[t][n]] = n;
+		}
+
+		List<Link> links = new ArrayList<>();
+		links.add(puzzle.With);
+		NounType slotType = puzzle.nounTypes.get(0);
+		for (SmartLink.Kind kind : linkKinds) {
+			if (kind == SmartLink.Kind.IsWith) continue;
+			int n = 1 + random.nextInt(Math.max(1, maxNouns / 4));
+			Link link = puzzle.addLink(kind.toString() + " " + n, slotType);
+			link.f = getFunction(kind, n);
+			links.add(link);
+		}
+
+		addFacts(puzzle, links, random);
+		addRules(puzzle, links, random);
+		if (puzzle.facts.isEmpty() && puzzle.rules.isEmpty()) {
+			Noun noun2 = puzzle.nounTypes.get(1).nouns.get(0);
+			puzzle.addFact("1", puzzle.getSlot(noun2), puzzle.Is, puzzle.With, noun2);
+		}
+		return puzzle;
+	}
+
+	/**
+	 * Returns the link function of the kind.
+	 * @param kind Kind of link.
+	 * @param n Offset number.
+	 * @return Link function.
+	 */
+	private static BiFunction<Noun, Noun, Verb> getFunction(final SmartLink.Kind kind, final int n) {
+		switch (kind) {
+			case IsLessThan: return SmartLink.getIsLessThan(n - 1);
+			case IsLessBy: return SmartLink.getIsLessBy(n);
+			case IsMoreThan: return SmartLink.getIsMoreThan(n - 1);
+			case IsMoreBy: return SmartLink.getIsMoreBy(n);
+			case IsNextTo: return SmartLink.getIsNextTo();
+			case IsOffsetBy: return SmartLink.getIsOffsetBy(n);
+			case IsOutsideOf: return SmartLink.getIsOutsideOf(n);
+			case HasRatio: return SmartLink.getHasRatio(1, n + 1);
+			default: return SmartLink.getIsWith();
+		}
+	}
+
+	/**
+	 * Returns a permutation of 0 to n - 1, which is random unless there are no random numbers.
+	 * @param n Number of elements.
+	 * @param random Random numbers, or null for the identity.
+	 * @return Permutation.
+	 */
+	private static int[] getPermutation(final int n, final Random random) {
+		int[] p = new int[n];
+		for (int i = 0; i < n; i++) p[i] = i;
+		if (random == null) return p;
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int k = p[i]; p[i] = p[j]; p[j] = k;
+		}
+		return p;
+	}
+
+	/**
+	 * Returns true if the link relates the nouns in the planted solution, otherwise false.
+	 * @param puzzle Puzzle.
+	 * @param noun1 Noun 1.
+	 * @param link Link.
+	 * @param noun2 Noun 2.
+	 * @return boolean.
+	 */
+	private static boolean isTrue(final Synthetic puzzle, final Noun noun1, final Link link, final Noun noun2) {
+		return link.f.apply(puzzle.getSlot(noun1), puzzle.getSlot(noun2)) == puzzle.Is;
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="Facts">
+
+	/**
+	 * Adds a true fact for each pair of nouns of different types that is picked by the fact density.
+	 * The link of each fact is picked at random, and the verb is positive if the link relates the nouns in the solution.
+	 * @param puzzle Puzzle.
+	 * @param links Links, where the first link is With.
+	 * @param random Random numbers.
+	 */
+	private void addFacts(final Synthetic puzzle, final List<Link> links, final Random random) {
+		int clue = 0;
+		for (int t1 = 0; t1 < maxNounTypes; t1++) {
+			for (int t2 = t1 + 1; t2 < maxNounTypes; t2++) {
+				for (Noun noun1 : puzzle.nounTypes.get(t1).nouns) {
+					for (Noun noun2 : puzzle.nounTypes.get(t2).nouns) {
+						if (random.nextDouble() >= factDensity) continue;
+						Link link = links.get(random.nextInt(links.size()));
+						boolean swap = random.nextBoolean();
+						Noun nounA = swap ? noun2 : noun1, nounB = swap ? noun1 : noun2;
+						Verb verb = isTrue(puzzle, nounA, link, nounB) ? puzzle.Is : puzzle.IsNot;
+						puzzle.addFact("" + (++clue), nounA, verb, link, nounB);
+					}
+				}
+			}
+		}
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Rules">
+
+	/**
+	 * Adds the rules of each kind, which are true for the planted solution.
+	 * @param puzzle Puzzle.
+	 * @param links Links, where the first link is With.
+	 * @param random Random numbers.
+	 */
+	private void addRules(final Synthetic puzzle, final List<Link> links, final Random random) {
+		SmartRule smartRule = puzzle.smartRule;
+		NounType slotType = puzzle.nounTypes.get(0);
+		int[] map = new int[maxNouns];
+		for (int i = 0; i < maxNouns; i++) map[i] = i % 2;
+		String[] groupNames = { "odd", "even" };
+		int k = Math.max(2, Math.min(maxNouns / 2, 6));
+
+		for (RuleKind kind : RuleKind.values()) {
+			Integer count = ruleCounts.get(kind);
+			if (count == null) continue;
+			if (kind == RuleKind.Ordering && links.size() < 2) continue;
+			for (int r = 1; r <= count; r++) {
+				String name = kind.name + " " + r;
+				NounType typeA = getNounType(puzzle, random, null);
+				NounType typeB = getNounType(puzzle, random, typeA);
+				List<Noun> nouns1 = getNouns(typeA.nouns, k, random);
+				List<Noun> nouns2 = getPartners(puzzle, nouns1, typeB);
+				Rule rule;
+				switch (kind) {
+					case MatchAtLeastOne: {
+						// Noun 1 is with one of a list that has its partner.
+						Noun noun1 = nouns1.get(0);
+						List<Noun> list = getOthers(typeB.nouns, nouns2.subList(0, 1), k - 1, random);
+						rule = puzzle.addRule("", name, list);
+						rule.f = smartRule.getMatchAtLeastOne(rule, noun1, list);
+						break;
+					}
+					case MatchOneToExactlyOne: {
+						// Exactly one noun of nouns1 is with exactly one noun of the list, since the others are not partners.
+						List<Noun> list = new ArrayList<>(nouns2.subList(0, 1));
+						for (Noun noun : getNouns(typeB.nouns, maxNouns, random)) {
+							if (list.size() < k && !nouns2.contains(noun)) list.add(noun);
+						}
+						Collections.shuffle(list, random);
+						rule = puzzle.addRule("", name, nouns1);
+						rule.f = smartRule.getMatchOneToExactlyOne(rule, nouns1, list);
+						break;
+					}
+					case MatchOneToOne:
+						Collections.shuffle(nouns2, random);
+						rule = puzzle.addRule("", name, nouns1);
+						rule.f = smartRule.getMatchOneToOne(rule, nouns1, nouns2);
+						break;
+					case MatchAllDifferent: {
+						List<Noun> list = getOthers(typeB.nouns, nouns2, k + 1, random);
+						rule = puzzle.addRule("", name, nouns1);
+						rule.f = smartRule.getMatchAllDifferent(rule, nouns1, list);
+						break;
+					}
+					case MatchOneList: {
+						// The partners are one list, and the other lists are disjoint from it.
+						List<List<Noun>> array2 = new ArrayList<>();
+						array2.add(nouns2);
+						List<Noun> rest = new ArrayList<>(typeB.nouns);
+						rest.removeAll(nouns2);
+						Collections.shuffle(rest, random);
+						for (int i = 0; i + k <= rest.size() && array2.size() < 3; i += k) array2.add(new ArrayList<>(rest.subList(i, i + k)));
+						Collections.shuffle(array2, random);
+						rule = puzzle.addRule("", name, nouns1);
+						rule.f = smartRule.getMatchOneList(rule, nouns1, array2);
+						break;
+					}
+					case IsRelated: {
+						// Noun 1 is related to at least one noun of the list.
+						Link link = links.size() > 1 ? links.get(1 + random.nextInt(links.size() - 1)) : null;
+						Noun noun1 = nouns1.get(0);
+						Noun hit = null;
+						if (link != null) {
+							for (Noun noun : getNouns(typeB.nouns, maxNouns, random)) {
+								if (isTrue(puzzle, noun1, link, noun)) { hit = noun; break; }
+							}
+						}
+						if (hit == null) continue;
+						List<Noun> list = getOthers(typeB.nouns, Collections.singletonList(hit), k, random);
+						rule = puzzle.addRule("", name, list);
+						rule.f = smartRule.getIsRelated(rule, noun1, link, list);
+						break;
+					}
+					case InSameGroup:
+					case InOppositeGroup: {
+						// Noun 1 and another noun of its type are in slots of the same (or opposite) parity.
+						// The rule counts the slots of each group, so both nouns must be in different slots.
+						boolean same = kind == RuleKind.InSameGroup;
+						Noun noun1 = nouns1.get(0), noun2 = null;
+						for (Noun noun : getNouns(typeA.nouns, maxNouns, random)) {
+							if (noun != noun1 && (map[puzzle.getSlot(noun1).num - 1] == map[puzzle.getSlot(noun).num - 1]) == same) { noun2 = noun; break; }
+						}
+						if (noun2 == null) continue;
+						rule = puzzle.addRule("", name, Arrays.asList(noun1, noun2));
+						rule.f = same ? smartRule.getInSameGroup(rule, noun1, noun2, slotType, map, "parity", groupNames)
+							: smartRule.getInOppositeGroup(rule, noun1, noun2, slotType, map, "parity", groupNames);
+						break;
+					}
+					case Ordering:
+						rule = puzzle.addRule("", name);
+						rule.f = smartRule.getOrdering(rule, slotType);
+						break;
+					default:
+						break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a random noun type other than the given noun type.
+	 * @param puzzle Puzzle.
+	 * @param random Random numbers.
+	 * @param other Noun type to avoid, or null.
+	 * @return Noun type.
+	 */
+	private NounType getNounType(final Puzzle puzzle, final Random random, final NounType other) {
+		NounType nounType;
+		do {
+			nounType = puzzle.nounTypes.get(random.nextInt(maxNounTypes));
+		} while (nounType == other);
+		return nounType;
+	}
+
+	/**
+	 * Returns k random nouns of the list.
+	 * @param nouns Nouns.
+	 * @param k Number of nouns.
+	 * @param random Random numbers.
+	 * @return List of nouns.
+	 */
+	private static List<Noun> getNouns(final List<Noun> nouns, final int k, final Random random) {
+		List<Noun> list = new ArrayList<>(nouns);
+		Collections.shuffle(list, random);
+		return new ArrayList<>(list.subList(0, Math.min(k, list.size())));
+	}
+
+	/**
+	 * Returns the given nouns plus random other nouns of the list, so there are k nouns in random order.
+	 * @param nouns Nouns.
+	 * @param given Nouns that must be in the result.
+	 * @param k Number of nouns.
+	 * @param random Random numbers.
+	 * @return List of nouns.
+	 */
+	private static List<Noun> getOthers(final List<Noun> nouns, final List<Noun> given, final int k, final Random random) {
+		List<Noun> list = new ArrayList<>(given);
+		for (Noun noun : getNouns(nouns, nouns.size(), random)) {
+			if (list.size() >= k) break;
+			if (!list.contains(noun)) list.add(noun);
+		}
+		Collections.shuffle(list, random);
+		return list;
+	}
+
+	/**
+	 * Returns the nouns of the noun type that are with the given nouns in the planted solution, in the same order.
+	 * @param puzzle Puzzle.
+	 * @param nouns Nouns.
+	 * @param nounType Noun type of the partners.
+	 * @return List of nouns.
+	 */
+	private static List<Noun> getPartners(final Synthetic puzzle, final List<Noun> nouns, final NounType nounType) {
+		int[] slots = puzzle.slots[nounType.num - 1];
+		int[] nums = new int[slots.length];
+		for (int n = 0; n < slots.length; n++) nums[slots[n]] = n;
+		List<Noun> list = new ArrayList<>(nouns.size());
+		for (Noun noun : nouns) list.add(nounType.nouns.get(nums[puzzle.slots[noun.type.num - 1][noun.num - 1]]));
+		return list;
+	}
+
+	// </editor-fold>
+}
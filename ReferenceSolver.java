@@ -0,0 +1,896 @@
+package com.mysterymaster.puzzle;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The Reference Solver class is a complete solver of the puzzle package, so the model and a solver can be profiled and tuned as one unit.<br>
+ * The state of the solve is a SolveState of the compiled puzzle, where the nouns are integer ids and the grid, pairs, and candidate domains
+ * are primitive arrays with a trail, so every assumption is undone in place. The rules and the FactQueue read the pairs of the state
+ * through getPairNoun, and the solver is bound to the thread while it invokes the rules (SmartRule.bind), so nothing of the puzzle is written
+ * during a solve except the hits of the facts and rules, which are only statistics. Many solvers may therefore solve one validated puzzle
+ * at once, each on its own thread, using solve(CompiledPuzzle, Budget). The solution is given by getSolution.<br>
+ * The nouns that are with each other are merged into NounClusters, so law 2 finds the noun of a third type that both nouns are with,
+ * and the nouns they cannot be with, without sweeping the grid.<br>
+ * Level 1 examines the facts, the laws, and the rules until nothing changes. Facts are queued by the FactQueue, and rules are skipped
+ * by the RuleTracer when nothing they read has changed. The laws are: 1) a noun is with at most one noun of each type,
+ * 2) nouns that are with each other share every mark, and 3) a noun that can only be with one noun of a type is with it.<br>
+ * Level 2 applies law 4: two nouns cannot be together if they have no common candidate of a third noun type.<br>
+ * Level 3 applies law 5, where each noun of one type is with a different noun of another type (SmartRule.getAllDifferentLaw),
+ * then assumes each possible cell of the first noun type in turn, and marks the cell as negative if level 1 finds a contradiction.<br>
+ * Level 4 guesses the noun with the fewest candidates, and undoes the guess if it leads to a contradiction. Level 3 is only applied before the first guess.<br>
+ * @version 2026-10-16
+ */
+public final class ReferenceSolver extends Base implements ISolver, BatchSolver.Engine {
+	/** Status of a solve that found a contradiction, so the puzzle has no solution. */
+	public static final int CONTRADICTION = -1;
+
+	/** Status of a solve that was stopped by its budget. */
+	public static final int STOPPED = 1;
+
+	/** Puzzle. Set in the solve method. */
+	private Puzzle puzzle;
+
+	/** Compiled puzzle. */
+	private CompiledPuzzle compiled;
+
+	/** Solve state. */
+	private SolveState state;
+
+	/** Queue of the facts. */
+	private FactQueue queue;
+
+	/** Tracer of the rules. */
+	private RuleTracer tracer;
+
+	/** This solver wrapped by the tracer, which is bound to the thread while the rules are invoked. */
+	private ISolver ruleSolver;
+
+	/** Clusters of the nouns that are with each other, and the nouns that each cluster cannot be with. */
+	private NounClusters clusters;
+
+	/** Rule used as the reference of the marks of law 5. */
+	private Rule lawRule;
+
+	/** Function of law 5. */
+	private Function<Mark, Integer> allDifferentLaw;
+
+	/** Budget of the solve, or null. */
+	private BatchSolver.Budget budget;
+
+	/** Number of noun types. */
+	private int maxNounTypes;
+
+	/** Number of nouns per noun type. */
+	private int maxNouns;
+
+	/** Number of words per candidate domain. */
+	private int words;
+
+	/** Marks entered, which are reused after they are undone. */
+	private Mark[] marks = new Mark[0];
+
+	/** Size of the trail of the state before each mark was entered. */
+	private int[] markTrails = new int[0];
+
+	/** Size of the trail of the tracer before each mark was entered. */
+	private int[] tracerTrails = new int[0];
+
+	/** Size of the journal of the clusters before each mark was entered. */
+	private int[] clusterJournals = new int[0];
+
+	/** Number of marks entered. */
+	private int markCount = 0;
+
+	/** Number of marks whose laws and rules have been applied. */
+	private int markHead = 0;
+
+	/** Mark given to the rules before any mark is entered. */
+	private final Mark blankMark = new Mark(-1);
+
+	/** Level of the marks being entered. */
+	private int levelNum = 1;
+
+	/** True if the budget stopped the solve. */
+	private boolean stopped = false;
+
+	/** Slots related to each slot by each link as columns[k][j], where bit i is set if slot i is related to slot j. */
+	private long[][][] columns;
+
+	/** Candidate slots of noun 1, noun 2, and the supported slots of a fact. Scratch data of examineFact. */
+	private long[] slots1, slots2, support;
+
+	/** True if the solver should display debug messages. */
+	public boolean verbose = false;
+
+	/** Number of assumptions of level 3 that were examined by the last solve. */
+	public int probes = 0;
+
+	/** Number of guesses of level 4 made by the last solve. */
+	public int guesses = 0;
+
+	@Override
+	public String toString() { return "ReferenceSolver"; }
+
+	@Override
+	public String asString() {
+		return "puzzle=" + Q + puzzle + Q + " marks=" + Q + markCount + Q + " probes=" + Q + probes + Q + " guesses=" + Q + guesses + Q + " stopped=" + Q + stopped + Q;
+	}
+
+	/** Constructor. The solver may solve many puzzles, one at a time. */
+	public ReferenceSolver() {
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="Solve">
+
+	/**
+	 * Validates and solves the puzzle.
+	 * @param puzzle Puzzle.
+	 * @return Zero if the puzzle was solved, WRONG_ANSWER if the solution is not the answer, CONTRADICTION if it has no solution, or STOPPED.
+	 */
+	public int solve(final Puzzle puzzle) {
+		return solve(puzzle, null);
+	}
+
+	/**
+	 * Validates and solves the puzzle within the budget. The solution is given by getSolution.
+	 * @param puzzle Puzzle.
+	 * @param budget Budget, or null for no limit.
+	 * @return Zero if the puzzle was solved, WRONG_ANSWER if the solution is not the answer, CONTRADICTION if it has no solution, or STOPPED.
+	 */
+	@Override
+	public int solve(final Puzzle puzzle, final BatchSolver.Budget budget) {
+		puzzle.validate(this);
+		return solve(puzzle.compile(), budget);
+	}
+
+	/**
+	 * Solves the compiled puzzle within the budget without validating it, so other solvers may solve the same puzzle on other threads.
+	 * The solution is given by getSolution.
+	 * @param compiled Compiled puzzle of a validated puzzle.
+	 * @param budget Budget, or null for no limit.
+	 * @return Zero if the puzzle was solved, WRONG_ANSWER if the solution is not the answer, CONTRADICTION if it has no solution, or STOPPED.
+	 */
+	public int solve(final CompiledPuzzle compiled, final BatchSolver.Budget budget) {
+		setPuzzle(compiled, budget);
+		int rs = bound(() -> search(0));
+		if (stopped) return STOPPED;
+		if (rs != 0) return CONTRADICTION;
+		if (compiled.isAnswer(state)) return 0;
+		return WRONG_ANSWER;
+	}
+
+	/**
+	 * Returns true if every noun of the first noun type is with a noun of every other type, and the solution is the answer (if any).
+	 * @return boolean.
+	 */
+	public boolean verify() {
+		return isSolved() && compiled.isAnswer(state);
+	}
+
+	/**
+	 * Resets the state of the solve of the compiled puzzle, which must be of a validated puzzle. Nothing of the puzzle is written.
+	 * @param compiled Compiled puzzle.
+	 * @param budget Budget, or null.
+	 */
+	private void setPuzzle(final CompiledPuzzle compiled, final BatchSolver.Budget budget) {
+		this.compiled = compiled;
+		this.puzzle = compiled.puzzle;
+		this.budget = budget;
+		state = new SolveState(compiled);
+		queue = new FactQueue(puzzle, this);
+		queue.reset();
+		tracer = new RuleTracer(puzzle);
+		clusters = new NounClusters(compiled);
+		ruleSolver = tracer.wrap(this);
+		lawRule = new Rule(0, "allDifferent", null, true);
+		allDifferentLaw = puzzle.smartRule.getAllDifferentLaw(lawRule);
+
+		maxNounTypes = compiled.maxNounTypes;
+		maxNouns = compiled.maxNouns;
+		words = (maxNouns + 63) >>> 6;
+		slots1 = new long[words];
+		slots2 = new long[words];
+		support = new long[words];
+		columns = new long[compiled.maxLinks][maxNouns][words];
+		for (int k = 0; k < compiled.maxLinks; k++) {
+			for (int i = 0; i < maxNouns; i++) {
+				for (int j = 0; j < maxNouns; j++) {
+					if (compiled.isRelated(k, i, j)) columns[k][j][i >>> 6] |= 1L << i;
+				}
+			}
+		}
+		int maxMarks = getMaxMarks();
+		if (marks.length < maxMarks) {
+			marks = Arrays.copyOf(marks, maxMarks);
+			markTrails = new int[maxMarks];
+			tracerTrails = new int[maxMarks];
+			clusterJournals = new int[maxMarks];
+		}
+		markCount = 0;
+		markHead = 0;
+		levelNum = 1;
+		stopped = false;
+		probes = 0;
+		guesses = 0;
+	}
+
+	/**
+	 * Runs the step while this solver (wrapped by the tracer) is bound to the thread, so the rules read and mark the state of this solver.
+	 * Called by each method that may invoke the rules from outside the solver.
+	 * @param step Step of the solve.
+	 * @return Result of the step.
+	 */
+	private int bound(final IntSupplier step) {
+		puzzle.smartRule.bind(ruleSolver);
+		try {
+			return step.getAsInt();
+		}
+		finally {
+			puzzle.smartRule.bind(null);
+		}
+	}
+
+	/**
+	 * Deduces the marks of the levels, then guesses until the puzzle is solved or every guess leads to a contradiction.<br>
+	 * Level 3 assumes every possible cell, so it is only applied before the first guess. After a guess, levels 1 and 2 are applied.
+	 * @param depth Number of guesses that are in effect.
+	 * @return Zero if the puzzle was solved, otherwise nonzero.
+	 */
+	private int search(final int depth) {
+		while (true) {
+			int rs = deduce(depth == 0 ? 3 : 2);
+			if (rs != 0) return rs;
+			if (isSolved()) return 0;
+
+			// Guess the first candidate of the noun with the fewest candidates.
+			int cell = findGuess();
+			if (cell < 0) return -1;
+			int id1 = cell / maxNounTypes, id2 = state.getDomainFirst(id1, cell % maxNounTypes);
+
+			++guesses;
+			int count = markCount;
+			levelNum = ISolver.MAX_LEVELS;
+			rs = addAssumption(' ', id1, id2);
+			if (rs == 0) rs = search(depth + 1);
+			if (rs == 0 || stopped) return rs;
+			undo(count);
+
+			// The guess is wrong, so the nouns are not together.
+			levelNum = ISolver.MAX_LEVELS;
+			rs = addMark(Mark.Type.Level, 0, ' ', id1, VerbGrid.IS_NOT, id2);
+			if (rs != 0) return rs;
+		}
+	}
+
+	/**
+	 * Enters the marks of the levels up to the given level until nothing changes.
+	 * @param maxLevel Highest level, from 1 to 3.
+	 * @return Zero for success, nonzero for a contradiction.
+	 */
+	private int deduce(final int maxLevel) {
+		while (true) {
+			levelNum = 1;
+			int rs = propagate();
+			if (rs != 0 || maxLevel < 2) return rs;
+
+			int count = markCount;
+			levelNum = 2;
+			rs = applyCommonLaw();
+			if (rs != 0) return rs;
+			if (markCount > count) continue;
+			if (maxLevel < 3) return 0;
+
+			levelNum = 3;
+			rs = allDifferentLaw.apply(blankMark);
+			if (rs != 0) return rs;
+			if (markCount > count) continue;
+
+			rs = probe();
+			if (rs != 0) return rs;
+			if (markCount == count) return 0;
+		}
+	}
+
+	/**
+	 * Applies the laws for each new mark, and examines the queued facts, until nothing changes. Then applies the rules.<br>
+	 * A rule that reads the mark is invoked for each mark. Any other rule only reads the grid, so it is invoked once the laws and facts
+	 * have nothing left to do, which gives the same marks as invoking it for each mark.
+	 * @return Zero for success, nonzero for a contradiction.
+	 */
+	private int propagate() {
+		int rs = markCount == 0 ? applyRules(blankMark, false) : 0;
+		while (rs == 0) {
+			if (stopped) return -1;
+			if (markHead < markCount) {
+				Mark mark = marks[markHead++];
+				rs = applyLaws(mark);
+				if (rs != 0) return rs;
+				queue.onMark(mark);
+				rs = applyRules(mark, false);
+				continue;
+			}
+			Fact fact = queue.poll();
+			if (fact != null) {
+				rs = examineFact(fact);
+				continue;
+			}
+			int count = markCount;
+			rs = applyRules(count == 0 ? blankMark : marks[count - 1], true);
+			if (markCount == count) break;
+		}
+		return rs;
+	}
+
+	/**
+	 * Returns the noun with the fewest candidates of a noun type it is not paired with, where one of the noun types is the first.
+	 * @return Id of the noun times the number of noun types plus the noun type, or -1 if there is none or a noun has no candidates.
+	 */
+	private int findGuess() {
+		int cell = -1, best = Integer.MAX_VALUE;
+		for (int id = 0; id < compiled.maxIds && best > 2; id++) {
+			int t1 = id / maxNouns;
+			for (int t2 = 0; t2 < maxNounTypes; t2++) {
+				if (t2 == t1 || (t1 != 0 && t2 != 0) || state.getPair(id, t2) >= 0) continue;
+				int size = state.getDomainSize(id, t2);
+				if (size == 0) return -1;
+				if (size < best) {
+					best = size;
+					cell = id * maxNounTypes + t2;
+				}
+			}
+		}
+		return cell;
+	}
+
+	/**
+	 * Returns true if every noun of the first noun type is with a noun of every other type, otherwise false.
+	 * @return boolean.
+	 */
+	boolean isSolved() {
+		for (int n = 0; n < maxNouns; n++) {
+			for (int t2 = 1; t2 < maxNounTypes; t2++) {
+				if (state.getPair(n, t2) < 0) return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a new BatchSolver engine for each puzzle.
+	 * @return Engine.
+	 */
+	public static BatchSolver.Engine getEngine() {
+		return new ReferenceSolver();
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Marks">
+
+	/**
+	 * Enters the mark for the cell given by the two noun ids, unless the cell already has the code.
+	 * @param type Type of the mark.
+	 * @param refNum Number of the fact, law, or rule.
+	 * @param refSub Reference character.
+	 * @param id1 Zero-based id of noun 1.
+	 * @param code VerbGrid code of the negative or positive verb.
+	 * @param id2 Zero-based id of noun 2.
+	 * @return Zero for success, nonzero for a contradiction or if the budget ran out.
+	 */
+	private int addMark(final Mark.Type type, final int refNum, final char refSub, final int id1, final int code, final int id2) {
+		if (stopped) return -1;
+		int trail = state.getTrailSize();
+		int rs = state.enter(id1, id2, code);
+		if (rs <= 0) return rs;
+
+		Noun noun1 = compiled.getNoun(id1), noun2 = compiled.getNoun(id2);
+		Mark mark = marks[markCount];
+		if (mark == null) mark = marks[markCount] = new Mark(markCount);
+		tracerTrails[markCount] = tracer.getTrailSize();
+		clusterJournals[markCount] = clusters.getJournalSize();
+		markTrails[markCount++] = trail;
+		mark.update("", levelNum, ' ', type, refNum, refSub, noun1, state.grid.getVerb(code), noun2, null, -1, null);
+		tracer.onCell(noun1, noun2);
+
+		// Merge the clusters of a positive mark, or keep the clusters of a negative mark apart.
+		if ((code == VerbGrid.IS ? clusters.union(id1, id2) : clusters.exclude(id1, id2)) < 0) return -1;
+
+		if (budget != null && !budget.addMark()) {
+			stopped = true;
+			return -1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Enters the assumption that noun 1 is with noun 2 as a mark of the current level.
+	 * An undo point of the tracer is opened first, so the tracer saves what changes until the assumption is undone.
+	 * @param refSub Reference character.
+	 * @param id1 Zero-based id of noun 1.
+	 * @param id2 Zero-based id of noun 2.
+	 * @return Zero for success, nonzero for a contradiction or if the budget ran out.
+	 */
+	private int addAssumption(final char refSub, final int id1, final int id2) {
+		tracer.open(markCount);
+		return addMark(Mark.Type.Level, 0, refSub, id1, VerbGrid.IS, id2);
+	}
+
+	/**
+	 * Undoes every mark after the given number of marks, and closes the undo points of the assumptions that were undone.
+	 * @param count Number of marks to keep.
+	 */
+	void undo(final int count) {
+		if (count < markCount) {
+			state.undo(markTrails[count]);
+			tracer.undo(tracerTrails[count]);
+			clusters.undo(clusterJournals[count]);
+			markCount = count;
+			markHead = Math.min(markHead, count);
+		}
+		tracer.close(count);
+	}
+
+	/**
+	 * Returns the tracer of the rules, so a test can check the size of its trail.
+	 * @return Rule tracer.
+	 */
+	RuleTracer getTracer() {
+		return tracer;
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Facts">
+
+	/**
+	 * Examines the fact, and enters the negative marks for the slots where its nouns cannot be.
+	 * @param fact Fact.
+	 * @return Zero for success, nonzero for a contradiction.
+	 */
+	private int examineFact(final Fact fact) {
+		int f = fact.num - 1;
+		int id1 = compiled.getFactNoun1(f), id2 = compiled.getFactNoun2(f);
+		int code = compiled.getFactCode(f);
+		int k = compiled.getFactLink(f);
+		int before = markCount;
+		int rs;
+
+		switch (compiled.getFactType(f)) {
+			case 1:
+				rs = addMark(Mark.Type.Level, fact.num, ' ', id1, code, id2);
+				break;
+			case 2:
+				rs = examineSlotFact(fact.num, id1, code == VerbGrid.IS, k, id2);
+				break;
+			default:
+				rs = examineLinkFact(fact.num, id1, code == VerbGrid.IS, k, id2);
+				break;
+		}
+		if (markCount > before) ++fact.hits;
+		return rs;
+	}
+
+	/**
+	 * Examines a fact of type 2, where one noun is a slot of the link. The other noun cannot be in any slot
+	 * where the link does not agree with the verb.
+	 * @param num One-based number of the fact.
+	 * @param id1 Zero-based id of noun 1.
+	 * @param related True for the positive verb, false for the negative verb.
+	 * @param k Zero-based number of the link.
+	 * @param id2 Zero-based id of noun 2.
+	 * @return Zero for success, nonzero for a contradiction.
+	 */
+	private int examineSlotFact(final int num, final int id1, final boolean related, final int k, final int id2) {
+		int ts = compiled.getLinkType(k);
+		boolean first = id1 / maxNouns == ts;
+		int slot = first ? id1 % maxNouns : id2 % maxNouns;
+		int id = first ? id2 : id1;
+		for (int j = 0; j < maxNouns; j++) {
+			boolean ok = (first ? compiled.isRelated(k, slot, j) : compiled.isRelated(k, j, slot)) == related;
+			if (ok) continue;
+			int rs = addMark(Mark.Type.Level, num, ' ', id, VerbGrid.IS_NOT, ts * maxNouns + j);
+			if (rs != 0) return rs;
+		}
+		return 0;
+	}
+
+	/**
+	 * Examines a fact of type 3 or 4, where neither noun is a slot of the link. Each noun cannot be in a slot
+	 * that no candidate slot of the other noun supports, and the nouns are not together if no slot supports both.
+	 * @param num One-based number of the fact.
+	 * @param id1 Zero-based id of noun 1.
+	 * @param related True for the positive verb, false for the negative verb.
+	 * @param k Zero-based number of the link.
+	 * @param id2 Zero-based id of noun 2.
+	 * @return Zero for success, nonzero for a contradiction.
+	 */
+	private int examineLinkFact(final int num, final int id1, final boolean related, final int k, final int id2) {
+		int ts = compiled.getLinkType(k);
+		int t1 = id1 / maxNouns, t2 = id2 / maxNouns;
+		int cell = t1 == t2 ? VerbGrid.IS_NOT : state.getCode(id1, id2);
+		boolean together = cell == VerbGrid.IS;
+		boolean canShare = cell != VerbGrid.IS_NOT;
+		int rs;
+
+		for (int w = 0; w < words; w++) {
+			slots1[w] = state.getDomain(id1, ts, w);
+			slots2[w] = state.getDomain(id2, ts, w);
+		}
+
+		// Noun 1 cannot be in a slot unless noun 2 can be in a slot that the link agrees with.
+		for (int w = 0; w < words; w++) support[w] = 0;
+		for (int i = 0; i < maxNouns; i++) {
+			if ((slots1[i >>> 6] & (1L << i)) == 0) continue;
+			if (isSupported(compiled.getRelatedMask(k, i), related, slots2, i, together, canShare)) {
+				support[i >>> 6] |= 1L << i;
+				continue;
+			}
+			rs = addMark(Mark.Type.Level, num, 'a', id1, VerbGrid.IS_NOT, ts * maxNouns + i);
+			if (rs != 0) return rs;
+		}
+
+		// Noun 2 cannot be in a slot unless noun 1 can be in a supported slot that the link agrees with.
+		for (int j = 0; j < maxNouns; j++) {
+			if ((slots2[j >>> 6] & (1L << j)) == 0) continue;
+			if (isSupported(columns[k][j], related, support, j, together, canShare)) continue;
+			rs = addMark(Mark.Type.Level, num, 'b', id2, VerbGrid.IS_NOT, ts * maxNouns + j);
+			if (rs != 0) return rs;
+		}
+
+		// The nouns are not together unless they can share a slot that the link agrees with.
+		if (cell != VerbGrid.MAYBE) return 0;
+		for (int i = 0; i < maxNouns; i++) {
+			if ((slots1[i >>> 6] & slots2[i >>> 6] & (1L << i)) != 0 && compiled.isRelated(k, i, i) == related) return 0;
+		}
+		return addMark(Mark.Type.Level, num, 'c', id1, VerbGrid.IS_NOT, id2);
+	}
+
+	/**
+	 * Returns true if one of the slots agrees with the link for the given slot, otherwise false.
+	 * @param mask Slots related to the given slot.
+	 * @param related True for the positive verb, false for the negative verb.
+	 * @param slots Candidate slots of the other noun.
+	 * @param i Zero-based number of the given slot.
+	 * @param together True if both nouns must be in the same slot.
+	 * @param canShare True if both nouns can be in the same slot.
+	 * @return boolean.
+	 */
+	private boolean isSupported(final long[] mask, final boolean related, final long[] slots, final int i, final boolean together, final boolean canShare) {
+		for (int w = 0; w < words; w++) {
+			long word = (related ? mask[w] : ~mask[w]) & slots[w];
+			if (w == i >>> 6) {
+				if (together) word &= 1L << i;
+				else if (!canShare) word &= ~(1L << i);
+			}
+			else if (together) word = 0;
+			if (word != 0) return true;
+		}
+		return false;
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Laws">
+
+	/**
+	 * Applies laws 1 to 3 for the mark.
+	 * @param mark Mark.
+	 * @return Zero for success, nonzero for a contradiction.
+	 */
+	private int applyLaws(final Mark mark) {
+		int id1 = compiled.getId(mark.noun1), id2 = compiled.getId(mark.noun2);
+		int t1 = id1 / maxNouns, t2 = id2 / maxNouns;
+		int rs;
+
+		if (mark.verb == puzzle.Is) {
+			// Law 1: The other nouns of each type are not with the other noun.
+			for (int n = 0; n < maxNouns; n++) {
+				int x1 = t1 * maxNouns + n, x2 = t2 * maxNouns + n;
+				if (x2 != id2 && (rs = addMark(Mark.Type.Law, 1, 'a', id1, VerbGrid.IS_NOT, x2)) != 0) return rs;
+				if (x1 != id1 && (rs = addMark(Mark.Type.Law, 1, 'b', x1, VerbGrid.IS_NOT, id2)) != 0) return rs;
+			}
+
+			// Law 2: Both nouns have the same mark with every noun of a third type. The nouns are in one cluster,
+			// which has the noun of the third type that both are with, or else the nouns of the third type that neither can be with.
+			for (int t3 = 0; t3 < maxNounTypes; t3++) {
+				if (t3 == t1 || t3 == t2) continue;
+				int m = clusters.getMember(id1, t3);
+				if (m >= 0) {
+					if ((rs = addMark(Mark.Type.Law, 2, 'a', id1, VerbGrid.IS, m)) != 0) return rs;
+					if ((rs = addMark(Mark.Type.Law, 2, 'b', id2, VerbGrid.IS, m)) != 0) return rs;
+					continue;
+				}
+				for (int w = 0; w < words; w++) {
+					int rest = maxNouns - 64 * w;
+					long bits = (rest >= 64 ? -1L : (1L << rest) - 1) & ~clusters.getCandidates(id1, t3, w);
+					for (; bits != 0; bits &= bits - 1) {
+						int id3 = t3 * maxNouns + 64 * w + Long.numberOfTrailingZeros(bits);
+						if ((rs = addMark(Mark.Type.Law, 2, 'a', id1, VerbGrid.IS_NOT, id3)) != 0) return rs;
+						if ((rs = addMark(Mark.Type.Law, 2, 'b', id2, VerbGrid.IS_NOT, id3)) != 0) return rs;
+					}
+				}
+			}
+			return 0;
+		}
+
+		// Law 2: A noun that is with one noun is not with the other noun.
+		for (int t3 = 0; t3 < maxNounTypes; t3++) {
+			if (t3 == t1 || t3 == t2) continue;
+			int p1 = clusters.getMember(id1, t3), p2 = clusters.getMember(id2, t3);
+			if (p1 >= 0 && (rs = addMark(Mark.Type.Law, 2, 'c', p1, VerbGrid.IS_NOT, id2)) != 0) return rs;
+			if (p2 >= 0 && (rs = addMark(Mark.Type.Law, 2, 'd', id1, VerbGrid.IS_NOT, p2)) != 0) return rs;
+		}
+
+		// Law 3: A noun that can only be with one noun of a type is with it.
+		int loner = state.getLoner(id1, t2);
+		if (loner >= 0 && (rs = addMark(Mark.Type.Law, 3, 'a', id1, VerbGrid.IS, loner)) != 0) return rs;
+		loner = state.getLoner(id2, t1);
+		if (loner >= 0 && (rs = addMark(Mark.Type.Law, 3, 'b', id2, VerbGrid.IS, loner)) != 0) return rs;
+		if (state.getPair(id1, t2) < 0 && state.getDomainSize(id1, t2) == 0) return -1;
+		if (state.getPair(id2, t1) < 0 && state.getDomainSize(id2, t1) == 0) return -1;
+		return 0;
+	}
+
+	/**
+	 * Applies law 4 to every possible cell: Two nouns are not together if they have no common candidate of a third noun type.
+	 * @return Zero for success, nonzero for a contradiction.
+	 */
+	private int applyCommonLaw() {
+		for (int id1 = 0; id1 < compiled.maxIds; id1++) {
+			int t1 = id1 / maxNouns;
+			for (int id2 = (t1 + 1) * maxNouns; id2 < compiled.maxIds; id2++) {
+				if (state.getCode(id1, id2) != VerbGrid.MAYBE) continue;
+				int t2 = id2 / maxNouns;
+				for (int t3 = 0; t3 < maxNounTypes; t3++) {
+					if (t3 == t1 || t3 == t2) continue;
+					boolean common = false;
+					for (int w = 0; w < words && !common; w++) common = (state.getDomain(id1, t3, w) & state.getDomain(id2, t3, w)) != 0;
+					if (common) continue;
+					int rs = addMark(Mark.Type.Law, 4, ' ', id1, VerbGrid.IS_NOT, id2);
+					if (rs != 0) return rs;
+					break;
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Assumes each possible cell of a noun of the first noun type, and enters the negative mark if level 1 finds a contradiction.
+	 * @return Zero for success, nonzero for a contradiction.
+	 */
+	private int probe() {
+		for (int n = 0; n < maxNouns; n++) {
+			for (int id2 = maxNouns; id2 < compiled.maxIds; id2++) {
+				if (state.getCode(n, id2) != VerbGrid.MAYBE || state.getPair(n, id2 / maxNouns) >= 0) continue;
+				++probes;
+				int count = markCount;
+				levelNum = 3;
+				int rs = addAssumption('a', n, id2);
+				if (rs == 0) rs = deduce(1);
+				if (stopped) return -1;
+				undo(count);
+				if (rs == 0) continue;
+
+				levelNum = 3;
+				rs = addMark(Mark.Type.Level, 0, 'b', n, VerbGrid.IS_NOT, id2);
+				if (rs == 0) rs = deduce(2);
+				if (rs != 0) return rs;
+			}
+		}
+		return 0;
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Rules">
+
+	/**
+	 * Invokes every enabled rule that is (or is not) traceable for the mark, unless the RuleTracer finds that nothing the rule read has changed.
+	 * @param mark Mark.
+	 * @param traceable True for the rules that only read the grid, or false for the rules that read the mark.
+	 * @return Zero for success, nonzero for a violation.
+	 */
+	private int applyRules(final Mark mark, final boolean traceable) {
+		List<Rule> rules = puzzle.rules;
+		for (int i = 0; i < rules.size(); i++) {
+			Rule rule = rules.get(i);
+			if (!rule.enabled || rule.traceable != traceable) continue;
+			int rs = tracer.invoke(rule, mark);
+			if (rs != 0) return rs;
+		}
+		return 0;
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Branches">
+
+	/**
+	 * Deduces the marks of levels 1 to 3 of the compiled puzzle without guessing. This is the root of the branches of a search.
+	 * @param compiled Compiled puzzle of a validated puzzle.
+	 * @param budget Budget, or null.
+	 * @return Zero for success, CONTRADICTION, or STOPPED.
+	 */
+	int start(final CompiledPuzzle compiled, final BatchSolver.Budget budget) {
+		setPuzzle(compiled, budget);
+		int rs = bound(() -> deduce(3));
+		if (stopped) return STOPPED;
+		return rs == 0 ? 0 : CONTRADICTION;
+	}
+
+	/**
+	 * Enters the cells of the root of another solver of the same compiled puzzle as marks of level 3,
+	 * then deduces the marks of levels 1 and 2. This gives the root without repeating the assumptions of level 3.
+	 * @param compiled Compiled puzzle of a validated puzzle.
+	 * @param cells Cells given by getCells.
+	 * @return Zero for success, or CONTRADICTION.
+	 */
+	int startFrom(final CompiledPuzzle compiled, final int[] cells) {
+		setPuzzle(compiled, null);
+		levelNum = 3;
+		for (int i = 0; i < cells.length; i += 3) {
+			if (addMark(Mark.Type.Level, 0, ' ', cells[i], cells[i + 1], cells[i + 2]) != 0) return CONTRADICTION;
+		}
+		return bound(() -> deduce(2)) == 0 ? 0 : CONTRADICTION;
+	}
+
+	/**
+	 * Returns the cells of the marks entered, which may be given to the startFrom method of another solver of the same puzzle.
+	 * @return Array where each cell is the id of noun 1, the VerbGrid code, and the id of noun 2.
+	 */
+	int[] getCells() {
+		int[] cells = new int[3 * markCount];
+		for (int i = 0; i < markCount; i++) {
+			Mark mark = marks[i];
+			cells[3 * i] = compiled.getId(mark.noun1);
+			cells[3 * i + 1] = VerbGrid.getCode(mark.verb);
+			cells[3 * i + 2] = compiled.getId(mark.noun2);
+		}
+		return cells;
+	}
+
+	/**
+	 * Assumes noun 1 is with noun 2 as a mark of level 4, then deduces the marks of levels 1 and 2.
+	 * @param id1 Zero-based id of noun 1.
+	 * @param id2 Zero-based id of noun 2.
+	 * @return Zero for success, nonzero for a contradiction.
+	 */
+	int assume(final int id1, final int id2) {
+		++guesses;
+		levelNum = ISolver.MAX_LEVELS;
+		int rs = addAssumption(' ', id1, id2);
+		return rs != 0 ? rs : bound(() -> deduce(2));
+	}
+
+	/**
+	 * Returns the number of marks entered, which may be given to undo.
+	 * @return Number of marks.
+	 */
+	int getMarkCount() {
+		return markCount;
+	}
+
+	/**
+	 * Returns the noun with the fewest candidates, followed by its candidates, where exactly one of them must be with the noun.
+	 * @return Array where [0] is the id of the noun, and the rest are the ids of its candidates, or null if a noun has no candidates.
+	 */
+	int[] getGuesses() {
+		int cell = findGuess();
+		if (cell < 0) return null;
+		int id1 = cell / maxNounTypes, t2 = cell % maxNounTypes;
+		int[] ids = new int[1 + state.getDomainSize(id1, t2)];
+		int n = 0;
+		ids[n++] = id1;
+		for (int w = 0; w < words; w++) {
+			for (long word = state.getDomain(id1, t2, w); word != 0; word &= word - 1) {
+				ids[n++] = t2 * maxNouns + 64 * w + Long.numberOfTrailingZeros(word);
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns the solution of the last solve in the same layout as Puzzle.answer, with -1 for an unknown noun.
+	 * @return Solution.
+	 */
+	public int[][] getSolution() {
+		return compiled.getSolution(state);
+	}
+
+	@Override
+	public int[][] getSolution(final Puzzle puzzle) {
+		return getSolution();
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="ISolver">
+
+	@Override
+	public void jot(final String msg) {
+		if (verbose) print(msg);
+	}
+
+	@Override
+	public int getMaxMarks() {
+		return puzzle.maxNounTypes * (puzzle.maxNounTypes - 1) / 2 * puzzle.maxNouns * puzzle.maxNouns;
+	}
+
+	@Override
+	public boolean maybeRelated(final Noun noun1, final Link link, final Noun noun2) {
+		int ts = link.nounType.num - 1;
+		int id1 = compiled.getId(noun1), id2 = compiled.getId(noun2);
+		for (int i = 0; i < maxNouns; i++) {
+			if (noun1.type == link.nounType ? noun1.num - 1 != i : (state.getDomain(id1, ts, i >>> 6) & (1L << i)) == 0) continue;
+			long[] mask = compiled.getRelatedMask(link.num, i);
+			if (noun2.type == link.nounType) {
+				if ((mask[(noun2.num - 1) >>> 6] & (1L << (noun2.num - 1))) != 0) return true;
+				continue;
+			}
+			for (int w = 0; w < words; w++) {
+				if ((mask[w] & state.getDomain(id2, ts, w)) != 0) return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Noun getCommonNoun(final Noun noun1, final Noun noun2, final NounType nounType3) {
+		for (Noun noun3 : nounType3.nouns) {
+			if (canBeWith(noun1, noun3) && canBeWith(noun2, noun3)) return noun3;
+		}
+		return null;
+	}
+
+	@Override
+	public Noun getPairNoun(final Noun noun1, final NounType nounType2) {
+		int id2 = state.getPair(compiled.getId(noun1), nounType2.num - 1);
+		return id2 < 0 ? null : compiled.getNoun(id2);
+	}
+
+	@Override
+	public int getPairNounNum(final Noun noun1, final NounType nounType2) {
+		int id2 = state.getPair(compiled.getId(noun1), nounType2.num - 1);
+		return id2 < 0 ? 0 : compiled.getIndex(id2) + 1;
+	}
+
+	@Override
+	public boolean canBeWith(final Noun noun1, final Noun noun2) {
+		return state.grid.canBeWith(noun1, noun2);
+	}
+
+	@Override
+	public boolean cannotBeWith(final List<Noun> nouns, final Noun noun2) {
+		for (Noun noun1 : nouns) {
+			if (canBeWith(noun1, noun2)) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public Verb getGridVerb(final Noun noun1, final Noun noun2) {
+		return state.grid.getVerb(noun1, noun2);
+	}
+
+	@Override
+	public int addMarkByRule(final Mark mark, final Rule rule, final char refSub, final Noun noun1, final Verb verb, final Noun noun2, final String msg) {
+		if (verbose) jot(msg);
+		boolean law = rule == lawRule;
+		if (!law) ++rule.hits;
+		int code = VerbGrid.getCode(verb);
+		if (code == VerbGrid.MAYBE) throw new Error("Rule " + rule.num + " cannot enter the possible verb!" + NL + rule.name);
+		return addMark(law ? Mark.Type.Law : Mark.Type.Rule, law ? 5 : rule.num, refSub, compiled.getId(noun1), code, compiled.getId(noun2));
+	}
+
+	@Override
+	public int addMarkByRule(final Mark mark, final Rule rule, final char refSub, final Noun noun1, final Verb verb, final Noun noun2, final Supplier<String> msg) {
+		return addMarkByRule(mark, rule, refSub, noun1, verb, noun2, verbose ? msg.get() : null);
+	}
+
+	// </editor-fold>
+}
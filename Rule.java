@@ -25,6 +25,15 @@ public final class Rule extends Base {
 	/** Number of times the rule has been referenced. */
 	public int hits = 0;
 	
+	/** Number of times the rule was skipped by the RuleTracer because nothing it read had changed. */
+	public int skips = 0;
+	
+	/** True if the rule only reads the grid through the solver, so the RuleTracer may skip it. */
+	public boolean traceable = true;
+	
+	/** Kind and parameters of the function if it was returned by SmartRule, otherwise null. Set by SmartRule. */
+	public SmartRule.Descriptor descriptor = null;
+	
 	/** Initial/reset value of the enabled field. */
 	private final boolean initEnabled;
 	
@@ -36,7 +45,7 @@ public final class Rule extends Base {
 	
 	@Override
 	public String asString() {
-		return "num=" + Q + num + Q + " name=" + Q + name + Q + " nouns=" + Q + Helper.getListAsString(nouns) + Q + " enabled=" + Q + enabled + Q + " hits=" + Q + hits + Q + " initEnabled=" + Q + initEnabled + Q + " f=" + Q + f + Q;
+		return "num=" + Q + num + Q + " name=" + Q + name + Q + " nouns=" + Q + Helper.getListAsString(nouns) + Q + " enabled=" + Q + enabled + Q + " hits=" + Q + hits + Q + " skips=" + Q + skips + Q + " initEnabled=" + Q + initEnabled + Q + " f=" + Q + f + Q;
 	}
 	
 	/**
@@ -55,9 +64,16 @@ public final class Rule extends Base {
 		this.f = null;
 	}
 	
+	/**
+	 * Returns the initial/reset value of the enabled field.
+	 * @return boolean.
+	 */
+	boolean isInitEnabled() { return initEnabled; }
+	
 	/** Resets the rule. */
 	public void reset() {
 		enabled = initEnabled;
 		hits = 0;
+		skips = 0;
 	}
 }
@@ -0,0 +1,441 @@
+package com.mysterymaster.puzzle;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The Rule Tracer class records which cells and rows of the grid each rule read on its last evaluation.<br>
+ * The Solver bumps the epoch of a cell each time the cell changes, and skips a rule until a cell or row it read has a newer epoch.<br>
+ * A row is one noun against every noun of another noun type, which is what ISolver.getPairNoun and ISolver.canBeWith read.<br>
+ * Every read goes through the solver returned by wrap, so the tracing state belongs to one solver and costs nothing elsewhere.<br>
+ * While an assumption of the Solver is in effect, the old epochs and the old reads of the rules are saved on a trail, so when the Solver
+ * undoes the assumption it restores them as they were, and the rules that were skipped before the assumption are still skipped after it.
+ * Each is saved at most once per undo point, and nothing is saved while no assumption is in effect.<br>
+ * Note: A rule that reads anything else, such as the fields of the mark or the name of a placer, must set Rule.traceable to false.<br>
+ * @version 2026-10-16
+ */
+public final class RuleTracer extends Base {
+	/** Number of noun types. */
+	private final int maxNounTypes;
+
+	/** Number of nouns per noun type. */
+	private final int maxNouns;
+
+	/** Number of nouns. */
+	private final int total;
+
+	/** Epoch of each cell followed by the epoch of each row. */
+	private final int[] epochs;
+
+	/** Trace number when each cell or row was last recorded, so each is recorded once per evaluation. */
+	private final int[] seen;
+
+	/** Cells and rows read by each rule (zero-based). */
+	private final int[][] reads;
+
+	/** Number of cells and rows read by each rule. */
+	private final int[] readCounts;
+
+	/** Epoch when each rule was last evaluated, or -1 if the rule must be evaluated. */
+	private final int[] stamps;
+
+	/** Last epoch. */
+	private int epoch = 0;
+
+	/** Rules evaluated before this epoch must be evaluated again. */
+	private int floor = 0;
+
+	/** Number of the current trace. */
+	private int traceNum = 0;
+
+	/** Rule being traced, or null. */
+	private Rule rule = null;
+
+	/** Kind of an entry of the trail that restores the epoch of a cell or row. */
+	private static final int EPOCH = 0;
+
+	/** Kind of an entry of the trail that restores the stamp of a rule, and clears its reads. */
+	private static final int STAMP = 1;
+
+	/** Kind of an entry of the trail that restores one read of a rule. */
+	private static final int READ = 2;
+
+	/** Trail of the changes, where each entry is the kind followed by two values. */
+	private int[] trail = new int[3 * 64];
+
+	/** Number of entries of the trail. */
+	private int trailSize = 0;
+
+	/** Number of marks when each open undo point was opened. */
+	private int[] pointCounts = new int[16];
+
+	/** Id of each open undo point. */
+	private int[] pointIds = new int[16];
+
+	/** Number of open undo points. */
+	private int points = 0;
+
+	/** Last id of an undo point. */
+	private int lastId = 0;
+
+	/** Id of the undo point when the epoch of each cell or row was last saved. */
+	private final int[] epochSaves;
+
+	/** Id of the undo point when the stamp and reads of each rule were last saved. */
+	private final int[] ruleSaves;
+
+	@Override
+	public String toString() { return "RuleTracer"; }
+
+	@Override
+	public String asString() {
+		return "epoch=" + Q + epoch + Q + " floor=" + Q + floor + Q + " rule=" + Q + rule + Q;
+	}
+
+	/**
+	 * Constructor. The puzzle must be validated.
+	 * @param puzzle Puzzle.
+	 */
+	public RuleTracer(final Puzzle puzzle) {
+		this.maxNounTypes = puzzle.maxNounTypes;
+		this.maxNouns = puzzle.maxNouns;
+		this.total = maxNounTypes * maxNouns;
+		this.epochs = new int[total * total + total * maxNounTypes];
+		this.seen = new int[epochs.length];
+		this.epochSaves = new int[epochs.length];
+		int n = puzzle.rules.size();
+		this.reads = new int[n][16];
+		this.readCounts = new int[n];
+		this.stamps = new int[n];
+		this.ruleSaves = new int[n];
+		Arrays.fill(stamps, -1);
+	}
+
+	/**
+	 * Returns the zero-based number of the noun across all noun types.
+	 * @param noun Noun.
+	 * @return Number.
+	 */
+	private int getId(final Noun noun) {
+		return (noun.type.num - 1) * maxNouns + noun.num - 1;
+	}
+
+	/**
+	 * Returns the index of the row of noun 1 against noun type 2 in the epochs array.
+	 * @param noun1 Noun 1.
+	 * @param nounType2 Noun type 2.
+	 * @return Index.
+	 */
+	private int getRow(final Noun noun1, final NounType nounType2) {
+		return total * total + getId(noun1) * maxNounTypes + nounType2.num - 1;
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="Epochs">
+
+	/**
+	 * Bumps the epoch of the cell given by the two nouns, and of both rows that contain it.<br>
+	 * Called by the Solver each time the cell is entered or removed.
+	 * @param noun1 Noun 1.
+	 * @param noun2 Noun 2.
+	 */
+	public void onCell(final Noun noun1, final Noun noun2) {
+		int id1 = getId(noun1), id2 = getId(noun2);
+		++epoch;
+		setEpoch(id1 * total + id2);
+		setEpoch(id2 * total + id1);
+		setEpoch(getRow(noun1, noun2.type));
+		setEpoch(getRow(noun2, noun1.type));
+	}
+
+	/**
+	 * Sets the epoch of the cell or row at the given index to the last epoch, after saving its old epoch if an undo point needs it.
+	 * @param i Index.
+	 */
+	private void setEpoch(final int i) {
+		int id = getPointId();
+		if (id != 0 && epochSaves[i] != id) {
+			epochSaves[i] = id;
+			push(EPOCH, i, epochs[i]);
+		}
+		epochs[i] = epoch;
+	}
+
+	/** Forces every rule to be evaluated again. Called by the Solver when it resets, or when a placer changes. */
+	public void invalidate() {
+		floor = ++epoch;
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Trail">
+
+	/**
+	 * Opens an undo point. Called by the Solver before it enters an assumption as the mark after the given number of marks.
+	 * @param count Number of marks.
+	 */
+	public void open(final int count) {
+		if (points == pointIds.length) {
+			pointCounts = Arrays.copyOf(pointCounts, 2 * points);
+			pointIds = Arrays.copyOf(pointIds, 2 * points);
+		}
+		pointCounts[points] = count;
+		pointIds[points++] = ++lastId;
+	}
+
+	/**
+	 * Closes the undo points opened after the given number of marks or later. Called by the Solver after it undoes an assumption.
+	 * Once no undo point is open, no mark can be undone, so the trail is cleared.
+	 * @param count Number of marks.
+	 */
+	public void close(final int count) {
+		while (points > 0 && pointCounts[points - 1] >= count) --points;
+		if (points == 0) trailSize = 0;
+	}
+
+	/**
+	 * Returns the id of the newest open undo point, or zero if no undo point is open.
+	 * @return Id.
+	 */
+	private int getPointId() {
+		return points == 0 ? 0 : pointIds[points - 1];
+	}
+
+	/**
+	 * Adds an entry to the trail.
+	 * @param kind Kind of the entry.
+	 * @param a First value.
+	 * @param b Second value.
+	 */
+	private void push(final int kind, final int a, final int b) {
+		int i = 3 * trailSize++;
+		if (i == trail.length) trail = Arrays.copyOf(trail, 2 * i);
+		trail[i] = kind;
+		trail[i + 1] = a;
+		trail[i + 2] = b;
+	}
+
+	/**
+	 * Returns the size of the trail, which may be given to undo.
+	 * @return Size of the trail.
+	 */
+	public int getTrailSize() { return trailSize; }
+
+	/**
+	 * Returns the most entries the trail may have for the given number of marks: four epochs per mark,
+	 * and the stamp and reads of each rule once per open undo point.
+	 * @param count Number of marks.
+	 * @return Number of entries.
+	 */
+	int getTrailLimit(final int count) {
+		int n = 0;
+		for (int[] list : reads) n += 1 + list.length;
+		return 4 * count + points * n;
+	}
+
+	/**
+	 * Restores the epochs of the cells and rows, and the stamps and reads of the rules, as they were when the trail had the given size.
+	 * The last epoch is not restored, so a rule evaluated later still has a newer stamp. Called by the Solver when it undoes its marks.
+	 * @param size Size of the trail.
+	 */
+	public void undo(final int size) {
+		while (trailSize > size) {
+			int i = 3 * --trailSize;
+			int a = trail[i + 1];
+			int b = trail[i + 2];
+			switch (trail[i]) {
+				case EPOCH:
+					epochs[a] = b;
+					break;
+				case STAMP:
+					stamps[a] = b;
+					readCounts[a] = 0;
+					break;
+				case READ:
+					reads[a][readCounts[a]++] = b;
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Reads">
+
+	/**
+	 * Records the cell or row at the given index in the epochs array for the rule being traced.
+	 * @param i Index.
+	 */
+	private void read(final int i) {
+		if (rule == null || seen[i] == traceNum) return;
+		seen[i] = traceNum;
+		int r = rule.num - 1;
+		int n = readCounts[r];
+		if (n == reads[r].length) reads[r] = Arrays.copyOf(reads[r], 2 * n);
+		reads[r][n] = i;
+		readCounts[r] = n + 1;
+	}
+
+	/**
+	 * Records that the rule being traced read the cell given by the two nouns.
+	 * @param noun1 Noun 1.
+	 * @param noun2 Noun 2.
+	 */
+	void readCell(final Noun noun1, final Noun noun2) {
+		read(getId(noun1) * total + getId(noun2));
+	}
+
+	/**
+	 * Records that the rule being traced read the row of noun 1 against noun type 2.
+	 * @param noun1 Noun 1.
+	 * @param nounType2 Noun type 2.
+	 */
+	void readRow(final Noun noun1, final NounType nounType2) {
+		read(getRow(noun1, nounType2));
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Rules">
+
+	/**
+	 * Returns true if nothing the rule read on its last evaluation has changed, otherwise false.
+	 * @param rule Rule.
+	 * @return boolean.
+	 */
+	public boolean canSkip(final Rule rule) {
+		if (!rule.traceable) return false;
+		int r = rule.num - 1;
+		int stamp = stamps[r];
+		if (stamp < floor) return false;
+		int[] list = reads[r];
+		for (int i = readCounts[r] - 1; i >= 0; i--) {
+			if (epochs[list[i]] > stamp) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Evaluates the rule for the mark while recording what it reads, unless the rule can be skipped.
+	 * Rule.skips is incremented when the rule is skipped.
+	 * @param rule Rule.
+	 * @param mark Mark.
+	 * @return Status of the rule function, or zero if the rule was skipped.
+	 */
+	public int invoke(final Rule rule, final Mark mark) {
+		if (canSkip(rule)) {
+			++rule.skips;
+			return 0;
+		}
+
+		// If an undo point needs them, save the reads of the rule if they may be skipped after an undo, then its stamp, which is restored first.
+		int r = rule.num - 1;
+		int stamp = epoch;
+		int id = getPointId();
+		if (id != 0 && ruleSaves[r] != id) {
+			ruleSaves[r] = id;
+			int old = stamps[r] < floor ? -1 : stamps[r];
+			if (old >= 0) {
+				for (int i = readCounts[r] - 1; i >= 0; i--) push(READ, r, reads[r][i]);
+			}
+			push(STAMP, r, old);
+		}
+		readCounts[r] = 0;
+		this.rule = rule;
+		++traceNum;
+		int rs;
+		try {
+			rs = rule.f.apply(mark);
+		}
+		finally {
+			this.rule = null;
+		}
+
+		// Only a rule that succeeded can be skipped later.
+		stamps[r] = rs == 0 ? stamp : -1;
+		return rs;
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Solver">
+
+	/**
+	 * Returns a solver that forwards to the given solver, and records the reads of the rule being traced.
+	 * The message supplier of a mark is forwarded as is, so it is only invoked if the given solver needs the message.
+	 * The puzzle should be validated with the returned solver so SmartRule reads through it.
+	 * @param solver Solver.
+	 * @return Tracing solver.
+	 */
+	public ISolver wrap(final ISolver solver) {
+		return new ISolver() {
+			@Override
+			public void jot(final String msg) { solver.jot(msg); }
+
+			@Override
+			public int getMaxMarks() { return solver.getMaxMarks(); }
+
+			@Override
+			public boolean maybeRelated(final Noun noun1, final Link link, final Noun noun2) {
+				readRow(noun1, link.nounType);
+				readRow(noun2, link.nounType);
+				return solver.maybeRelated(noun1, link, noun2);
+			}
+
+			@Override
+			public Noun getCommonNoun(final Noun noun1, final Noun noun2, final NounType nounType3) {
+				readRow(noun1, nounType3);
+				readRow(noun2, nounType3);
+				return solver.getCommonNoun(noun1, noun2, nounType3);
+			}
+
+			@Override
+			public boolean canBeWith(final Noun noun1, final Noun noun2) {
+				readRow(noun1, noun2.type);
+				readRow(noun2, noun1.type);
+				return solver.canBeWith(noun1, noun2);
+			}
+
+			@Override
+			public boolean cannotBeWith(final List<Noun> nouns, final Noun noun2) {
+				for (Noun noun : nouns) {
+					readRow(noun, noun2.type);
+					readRow(noun2, noun.type);
+				}
+				return solver.cannotBeWith(nouns, noun2);
+			}
+
+			@Override
+			public Verb getGridVerb(final Noun noun1, final Noun noun2) {
+				readCell(noun1, noun2);
+				return solver.getGridVerb(noun1, noun2);
+			}
+
+			@Override
+			public Noun getPairNoun(final Noun noun1, final NounType nounType2) {
+				readRow(noun1, nounType2);
+				return solver.getPairNoun(noun1, nounType2);
+			}
+
+			@Override
+			public int getPairNounNum(final Noun noun1, final NounType nounType2) {
+				readRow(noun1, nounType2);
+				return solver.getPairNounNum(noun1, nounType2);
+			}
+
+			@Override
+			public int addMarkByRule(final Mark mark, final Rule rule, final char refSub, final Noun noun1, final Verb verb, final Noun noun2, final String msg) {
+				return solver.addMarkByRule(mark, rule, refSub, noun1, verb, noun2, msg);
+			}
+
+			@Override
+			public int addMarkByRule(final Mark mark, final Rule rule, final char refSub, final Noun noun1, final Verb verb, final Noun noun2, final Supplier<String> msg) {
+				return solver.addMarkByRule(mark, rule, refSub, noun1, verb, noun2, msg);
+			}
+		};
+	}
+
+	// </editor-fold>
+}
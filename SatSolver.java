@@ -0,0 +1,1300 @@
+package com.mysterymaster.puzzle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The SAT Solver class compiles a puzzle into clauses of boolean variables, and solves them by conflict-driven clause learning (CDCL).<br>
+ * Variable x(t, r, j) is true if noun j of type t is with noun r of the first noun type, so each model of the clauses is one solution.
+ * Each noun is with exactly one noun of every other type. Two nouns of types other than the first are together if they are with
+ * the same noun of the first type, which is an auxiliary variable. A noun is in slot s of a link if it is with noun s of the link's noun type.<br>
+ * Each fact forbids the pairs of slots that disagree with its verb, either as binary clauses or as support clauses, whichever is smaller.
+ * The rules returned by SmartRule are encoded from their descriptors, where the slots of a noun up to each slot are auxiliary variables for isNotBetween. Every enabled rule is also invoked on each model,
+ * and a model that violates a rule is blocked by a clause, so a rule that cannot be encoded is still enforced.<br>
+ * The CDCL solver has two watched literals, first-UIP learning with clause minimization, VSIDS decisions, phase saving, Luby restarts,
+ * and deletion of learned clauses by their literal block distance (LBD). It needs no library.<br>
+ * @version 2026-10-16
+ */
+public final class SatSolver extends Base implements BatchSolver.Engine {
+	/** Status of a solve that proved the clauses have no model. */
+	public static final int UNSATISFIABLE = -1;
+
+	/** Status of a solve that was stopped by its budget. */
+	public static final int STOPPED = 1;
+
+	/** Literal that is always false, which is variable 0. */
+	private static final int FALSE = 0;
+
+	/** Literal that is always true, which is the negation of variable 0. */
+	private static final int TRUE = 1;
+
+	/** Largest at-most-one constraint that is encoded by pairs. Larger ones use a sequential counter. */
+	private static final int MAX_PAIRWISE = 8;
+
+	/** Number of conflicts of the first restart, which is multiplied by the Luby sequence. */
+	private static final int RESTART_CONFLICTS = 100;
+
+	/** Number of words before the literals of each clause in the arena. */
+	private static final int HEADER = 2;
+
+	/** Flag of a learned clause. */
+	private static final int LEARNT = 1;
+
+	/** Flag of a deleted clause. */
+	private static final int DELETED = 2;
+
+	/** Decay of the activity of the variables. */
+	private static final double VAR_DECAY = 0.95;
+
+	/** Puzzle. Set in the solve method. */
+	private Puzzle puzzle;
+
+	/** Compiled puzzle. */
+	private CompiledPuzzle compiled;
+
+	/** Number of noun types. */
+	private int maxNounTypes;
+
+	/** Number of nouns per noun type. */
+	private int maxNouns;
+
+	/** Auxiliary variable of two nouns of types other than the first as pairVars[a * m + b], or zero if it is not used yet. */
+	private int[] pairVars;
+
+	/** Budget of the solve, or null. */
+	private BatchSolver.Budget budget;
+
+	/** Solver that invokes the rules on each model. */
+	private Checker checker;
+
+	/** Number of variables including variable 0. */
+	private int numVars;
+
+	/** True if an empty clause was found. */
+	private boolean unsat;
+
+	/** True if the budget stopped the solve. */
+	private boolean stopped;
+
+	// <editor-fold defaultstate="collapsed" desc="Clauses and Assignments">
+
+	/** Arena of the clauses, where each clause is its size, its flags and LBD, then its literals. Literal 2v is variable v, and 2v+1 is its negation. */
+	private int[] arena;
+
+	/** Number of words used in the arena. */
+	private int arenaSize;
+
+	/** Number of words of deleted clauses in the arena. */
+	private int wasted;
+
+	/** Clauses watched by each literal, which are visited when the literal becomes false. */
+	private int[][] watches;
+
+	/** Number of clauses watched by each literal. */
+	private int[] watchCounts;
+
+	/** References to the learned clauses. */
+	private int[] learnts;
+
+	/** Number of learned clauses. */
+	private int learntCount;
+
+	/** Number of learned clauses that triggers their reduction. */
+	private int maxLearnts;
+
+	/** Value of each literal, which is 1 for true, -1 for false, or 0 for unassigned. */
+	private byte[] values;
+
+	/** Decision level of each variable. */
+	private int[] levels;
+
+	/** Clause that implied each variable, or -1 for a decision. */
+	private int[] reasons;
+
+	/** Last sign of each variable, which is 1 if it was false. */
+	private byte[] phases;
+
+	/** Literals in the order they were assigned. */
+	private int[] trail;
+
+	/** Number of literals on the trail. */
+	private int trailSize;
+
+	/** Index of the next literal on the trail to propagate. */
+	private int qhead;
+
+	/** Size of the trail at the start of each decision level. */
+	private int[] trailLim;
+
+	/** Current decision level. */
+	private int decisionLevel;
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Decisions and Learning">
+
+	/** Activity of each variable. */
+	private double[] activity;
+
+	/** Amount added to the activity of a variable in a conflict. */
+	private double varInc;
+
+	/** Binary heap of the variables by activity. */
+	private int[] heap;
+
+	/** Number of variables in the heap. */
+	private int heapSize;
+
+	/** Index of each variable in the heap, or -1. */
+	private int[] heapIndex;
+
+	/** Flag of each variable seen by the analysis of a conflict. */
+	private byte[] seen;
+
+	/** Literals of the learned clause, where the first literal is asserted. */
+	private int[] learnt;
+
+	/** Number of literals of the learned clause. */
+	private int learntSize;
+
+	/** Literals to unmark after the analysis of a conflict. */
+	private int[] toClear;
+
+	/** Stamp of each decision level to count the LBD of a learned clause. */
+	private int[] levelStamps;
+
+	/** Last stamp. */
+	private int stamp;
+
+	// </editor-fold>
+
+	/** Solution of the last solve in the layout of Puzzle.answer, or null if there is none. */
+	public int[][] solution = null;
+
+	/** Number of variables of the last solve. */
+	public int variables = 0;
+
+	/** Number of clauses of the puzzle of the last solve. */
+	public int clauses = 0;
+
+	/** Number of rules encoded as clauses by the last solve. */
+	public int encodedRules = 0;
+
+	/** Number of conflicts of the last solve. */
+	public long conflicts = 0;
+
+	/** Number of decisions of the last solve. */
+	public long decisions = 0;
+
+	/** Number of literals propagated by the last solve. */
+	public long propagations = 0;
+
+	/** Number of models that violated a rule and were blocked by the last solve. */
+	public int blocked = 0;
+
+	@Override
+	public String toString() { return "SatSolver"; }
+
+	@Override
+	public String asString() {
+		return "puzzle=" + Q + puzzle + Q + " variables=" + Q + variables + Q + " clauses=" + Q + clauses + Q + " encodedRules=" + Q + encodedRules + Q
+			+ " conflicts=" + Q + conflicts + Q + " decisions=" + Q + decisions + Q + " propagations=" + Q + propagations + Q + " blocked=" + Q + blocked + Q;
+	}
+
+	/** Constructor. The solver may solve many puzzles, one at a time. */
+	public SatSolver() {
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="Solve">
+
+	/**
+	 * Validates and solves the puzzle.
+	 * @param puzzle Puzzle.
+	 * @return Zero if the puzzle was solved, WRONG_ANSWER if the solution is not the answer, UNSATISFIABLE if it has no solution, or STOPPED.
+	 */
+	public int solve(final Puzzle puzzle) {
+		return solve(puzzle, null);
+	}
+
+	/**
+	 * Validates and solves the puzzle within the budget, where each assigned literal counts as one mark.
+	 * The solution is in the solution field and in the pairs of the nouns, and is checked against Puzzle.answer (if any).
+	 * @param puzzle Puzzle.
+	 * @param budget Budget, or null for no limit.
+	 * @return Zero if the puzzle was solved, WRONG_ANSWER if the solution is not the answer, UNSATISFIABLE if it has no solution, or STOPPED.
+	 */
+	@Override
+	public int solve(final Puzzle puzzle, final BatchSolver.Budget budget) {
+		this.puzzle = puzzle;
+		this.budget = budget;
+		checker = new Checker(puzzle);
+		puzzle.validate(checker);
+		checker.grid = new VerbGrid(puzzle);
+		compiled = puzzle.compile();
+		maxNounTypes = compiled.maxNounTypes;
+		maxNouns = compiled.maxNouns;
+		solution = null;
+		stopped = false;
+		conflicts = decisions = propagations = 0;
+		blocked = 0;
+
+		encode();
+		if (unsat) return UNSATISFIABLE;
+
+		while (true) {
+			int rs = search();
+			if (rs != 0) return rs;
+			if (setSolution()) return puzzle.isAnswer(solution) ? 0 : WRONG_ANSWER;
+
+			// The model violates a rule, so it is blocked.
+			++blocked;
+			solution = null;
+			cancelUntil(0);
+			int m = (maxNounTypes - 1) * maxNouns;
+			int[] lits = new int[m];
+			for (int t = 1; t < maxNounTypes; t++) {
+				for (int r = 0; r < maxNouns; r++) lits[(t - 1) * maxNouns + r] = getLit(t, r, checker.rows[t][r]) ^ 1;
+			}
+			int c = addClause(lits, m, 0);
+			if (c >= 0 && !attach(c)) return UNSATISFIABLE;
+		}
+	}
+
+	/**
+	 * Returns a new BatchSolver engine for each puzzle.
+	 * @return Engine.
+	 */
+	public static BatchSolver.Engine getEngine() {
+		return new SatSolver();
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Encoding">
+
+	/** Encodes the grids, the facts, and the rules of the puzzle, then sets up the assignments and watches. */
+	private void encode() {
+		int m = (maxNounTypes - 1) * maxNouns;
+		numVars = 1 + m * maxNouns;
+		pairVars = new int[m * m];
+		arena = new int[1 << 16];
+		arenaSize = 0;
+		wasted = 0;
+		unsat = false;
+		encodedRules = 0;
+
+		// Each noun of the first type is with exactly one noun of each other type, and vice versa.
+		int[] lits = new int[maxNouns];
+		for (int t = 1; t < maxNounTypes; t++) {
+			for (int r = 0; r < maxNouns; r++) {
+				for (int j = 0; j < maxNouns; j++) lits[j] = getLit(t, r, j);
+				addExactlyOne(lits, maxNouns);
+			}
+			for (int j = 0; j < maxNouns; j++) {
+				for (int r = 0; r < maxNouns; r++) lits[r] = getLit(t, r, j);
+				addExactlyOne(lits, maxNouns);
+			}
+		}
+
+		// Facts.
+		for (int f = 0; f < compiled.maxFacts; f++) {
+			if (!compiled.isFactEnabled(f)) continue;
+			int id1 = compiled.getFactNoun1(f), id2 = compiled.getFactNoun2(f);
+			boolean related = compiled.getFactCode(f) == VerbGrid.IS;
+			if (compiled.getFactType(f) == 1) {
+				int lit = getWithLit(id1, id2);
+				addClause(related ? lit : lit ^ 1);
+			}
+			else {
+				addRelation(id1, id2, compiled.getFactLink(f), related);
+			}
+		}
+
+		// Rules.
+		for (Rule rule : puzzle.rules) {
+			if (rule.enabled && rule.descriptor != null && addRule(rule.descriptor)) ++encodedRules;
+		}
+
+		clauses = 0;
+		for (int c = 0; c < arenaSize; c += HEADER + arena[c]) ++clauses;
+		variables = numVars - 1;
+		setup();
+	}
+
+	/**
+	 * Returns the literal of variable x(t, r, j), which is true if noun j of type t is with noun r of the first noun type.
+	 * @param t Zero-based number of the noun type, which is not zero.
+	 * @param r Zero-based number of the noun of the first noun type.
+	 * @param j Zero-based number of the noun of type t.
+	 * @return Literal.
+	 */
+	private int getLit(final int t, final int r, final int j) {
+		return 2 * (1 + ((t - 1) * maxNouns + r) * maxNouns + j);
+	}
+
+	/**
+	 * Returns a new variable.
+	 * @return Variable.
+	 */
+	private int newVar() {
+		return numVars++;
+	}
+
+	/**
+	 * Returns the literal that is true if the two nouns are together. The first time two nouns of types other than the first are
+	 * queried, their auxiliary variable is defined as true exactly when both nouns are with the same noun of the first type.
+	 * @param id1 Zero-based id of noun 1.
+	 * @param id2 Zero-based id of noun 2.
+	 * @return Literal, which is TRUE or FALSE for nouns of the same type.
+	 */
+	private int getWithLit(final int id1, final int id2) {
+		int t1 = id1 / maxNouns, t2 = id2 / maxNouns;
+		if (t1 == t2) return id1 == id2 ? TRUE : FALSE;
+		if (t1 > t2) return getWithLit(id2, id1);
+		if (t1 == 0) return getLit(t2, id1, id2 % maxNouns);
+
+		int m = (maxNounTypes - 1) * maxNouns;
+		int i = (id1 - maxNouns) * m + (id2 - maxNouns);
+		if (pairVars[i] != 0) return 2 * pairVars[i];
+		int v = newVar();
+		pairVars[i] = v;
+		int y = 2 * v, n1 = id1 % maxNouns, n2 = id2 % maxNouns;
+		for (int r = 0; r < maxNouns; r++) {
+			int a = getLit(t1, r, n1), b = getLit(t2, r, n2);
+			addClause(a ^ 1, b ^ 1, y);
+			addClause(y ^ 1, a ^ 1, b);
+			addClause(y ^ 1, b ^ 1, a);
+		}
+		return y;
+	}
+
+	/**
+	 * Returns the literal that is true if the noun is in the slot of the noun type.
+	 * @param id Zero-based id of the noun.
+	 * @param ts Zero-based number of the noun type of the slots.
+	 * @param s Zero-based number of the slot.
+	 * @return Literal.
+	 */
+	private int getSlotLit(final int id, final int ts, final int s) {
+		if (id / maxNouns == ts) return id % maxNouns == s ? TRUE : FALSE;
+		return getWithLit(id, ts * maxNouns + s);
+	}
+
+	/**
+	 * Adds the clauses where noun 1 and noun 2 are in slots whose relation by the link is (or is not) true.<br>
+	 * The forbidden pairs of slots are binary clauses, or each possible slot of a noun implies the slots of the other noun
+	 * it is compatible with, whichever has fewer literals.
+	 * @param id1 Zero-based id of noun 1.
+	 * @param id2 Zero-based id of noun 2.
+	 * @param k Zero-based number of the link.
+	 * @param related True for the positive verb, false for the negative verb.
+	 */
+	private void addRelation(final int id1, final int id2, final int k, final boolean related) {
+		int ts = compiled.getLinkType(k);
+		int[] a = new int[maxNouns], b = new int[maxNouns];
+		for (int s = 0; s < maxNouns; s++) {
+			a[s] = getSlotLit(id1, ts, s);
+			b[s] = getSlotLit(id2, ts, s);
+		}
+		if (id1 == id2) {
+			for (int s = 0; s < maxNouns; s++) {
+				if (compiled.isRelated(k, s, s) != related) addClause(a[s] ^ 1);
+			}
+			return;
+		}
+
+		int forbidden = 0, supports = 0;
+		for (int i = 0; i < maxNouns; i++) {
+			if (a[i] == FALSE) continue;
+			for (int j = 0; j < maxNouns; j++) {
+				if (b[j] == FALSE) continue;
+				if (compiled.isRelated(k, i, j) == related) supports += 2; else ++forbidden;
+			}
+		}
+		if (2 * forbidden <= supports + 2 * maxNouns) {
+			for (int i = 0; i < maxNouns; i++) {
+				if (a[i] == FALSE) continue;
+				for (int j = 0; j < maxNouns; j++) {
+					if (b[j] != FALSE && compiled.isRelated(k, i, j) != related) addClause(a[i] ^ 1, b[j] ^ 1);
+				}
+			}
+			return;
+		}
+
+		int[] lits = new int[maxNouns + 1];
+		for (int i = 0; i < maxNouns; i++) {
+			if (a[i] == FALSE) continue;
+			int n = 0;
+			lits[n++] = a[i] ^ 1;
+			for (int j = 0; j < maxNouns; j++) {
+				if (compiled.isRelated(k, i, j) == related) lits[n++] = b[j];
+			}
+			addClause(lits, n, 0);
+		}
+		for (int j = 0; j < maxNouns; j++) {
+			if (b[j] == FALSE) continue;
+			int n = 0;
+			lits[n++] = b[j] ^ 1;
+			for (int i = 0; i < maxNouns; i++) {
+				if (compiled.isRelated(k, i, j) == related) lits[n++] = a[i];
+			}
+			addClause(lits, n, 0);
+		}
+	}
+
+	/**
+	 * Adds the clauses of the rule if its kind can be encoded.<br>
+	 * The ordering rule only propagates the facts, so it needs no clauses.
+	 * @param d Descriptor of the rule.
+	 * @return True if the rule was encoded, otherwise false.
+	 */
+	private boolean addRule(final SmartRule.Descriptor d) {
+		switch (d.kind) {
+			case MatchAtLeastOne: {
+				// Noun 1 is with at least one noun in the list.
+				int[] lits = new int[d.nouns2.size()];
+				for (int j = 0; j < lits.length; j++) lits[j] = getWithLit(getId(d.noun1), getId(d.nouns2.get(j)));
+				addClause(lits, lits.length, 0);
+				return true;
+			}
+			case MatchOneToExactlyOne: {
+				// Exactly one noun in list 1 is with exactly one noun in list 2.
+				int[] lits = new int[d.nouns1.size() * d.nouns2.size()];
+				int n = 0;
+				for (Noun noun1 : d.nouns1) {
+					for (Noun noun2 : d.nouns2) lits[n++] = getWithLit(getId(noun1), getId(noun2));
+				}
+				addExactlyOne(lits, n);
+				return true;
+			}
+			case MatchOneToOne:
+			case MatchAllDifferent: {
+				// Each noun in list 1 is with a different noun in list 2. For matchOneToOne, every noun in list 2 is also matched.
+				int rows = d.nouns1.size(), cols = d.nouns2.size();
+				int[][] grid = new int[rows][cols];
+				for (int i = 0; i < rows; i++) {
+					for (int j = 0; j < cols; j++) grid[i][j] = getWithLit(getId(d.nouns1.get(i)), getId(d.nouns2.get(j)));
+				}
+				boolean perfect = d.kind == SmartRule.Kind.MatchOneToOne && rows == cols;
+				for (int i = 0; i < rows; i++) {
+					if (perfect) addExactlyOne(grid[i], cols); else addClause(grid[i], cols, 0);
+				}
+				int[] lits = new int[rows];
+				for (int j = 0; j < cols; j++) {
+					for (int i = 0; i < rows; i++) lits[i] = grid[i][j];
+					if (perfect) addExactlyOne(lits, rows); else addAtMostOne(lits, rows);
+				}
+				return true;
+			}
+			case MatchOneList: {
+				// The nouns in list 1 are with the nouns of one of the lists, which is an auxiliary variable per list.
+				int[] choices = new int[d.array2.size()];
+				for (int l = 0; l < choices.length; l++) {
+					List<Noun> list = d.array2.get(l);
+					choices[l] = 2 * newVar();
+					int[] lits = new int[list.size() + 1];
+					for (Noun noun1 : d.nouns1) {
+						lits[0] = choices[l] ^ 1;
+						for (int j = 0; j < list.size(); j++) lits[j + 1] = getWithLit(getId(noun1), getId(list.get(j)));
+						addClause(lits, lits.length, 0);
+					}
+				}
+				addClause(choices, choices.length, 0);
+				return true;
+			}
+			case IsRelated: {
+				// Noun 1 is related to at least one noun in the list, which is an auxiliary variable per noun.
+				int k = d.link.num, ts = compiled.getLinkType(k), id1 = getId(d.noun1);
+				int[] choices = new int[d.nouns2.size()];
+				int[] lits = new int[maxNouns + 2];
+				for (int l = 0; l < choices.length; l++) {
+					int id2 = getId(d.nouns2.get(l));
+					choices[l] = 2 * newVar();
+					for (int i = 0; i < maxNouns; i++) {
+						int a = getSlotLit(id1, ts, i);
+						if (a == FALSE) continue;
+						int n = 0;
+						lits[n++] = choices[l] ^ 1;
+						lits[n++] = a ^ 1;
+						for (int j = 0; j < maxNouns; j++) {
+							if (compiled.isRelated(k, i, j)) lits[n++] = getSlotLit(id2, ts, j);
+						}
+						addClause(lits, n, 0);
+					}
+				}
+				addClause(choices, choices.length, 0);
+				return true;
+			}
+			case IsNotBetween: {
+				// If noun 1 is in slot i, noun 2 before slot i implies noun 3 is not after slot i, and vice versa.
+				int ts = d.nounType.num - 1, id1 = getId(d.noun1);
+				int[] order2 = getOrderLits(getId(d.nouns2.get(0)), ts), order3 = getOrderLits(getId(d.nouns2.get(1)), ts);
+				for (int i = 1; i < maxNouns - 1; i++) {
+					int a = getSlotLit(id1, ts, i);
+					if (a == FALSE) continue;
+					addClause(a ^ 1, order2[i - 1] ^ 1, order3[i]);
+					addClause(a ^ 1, order3[i - 1] ^ 1, order2[i]);
+				}
+				return true;
+			}
+			case InSameGroup:
+			case InOppositeGroup: {
+				// The slots of noun 1 and noun 2 are in the same (or opposite) group.
+				boolean same = d.kind == SmartRule.Kind.InSameGroup;
+				int ts = d.nounType.num - 1, id1 = getId(d.noun1), id2 = getId(d.nouns2.get(0));
+				int[] lits = new int[maxNouns + 1];
+				for (int i = 0; i < maxNouns; i++) {
+					int a = getSlotLit(id1, ts, i);
+					if (a == FALSE) continue;
+					int n = 0;
+					lits[n++] = a ^ 1;
+					for (int j = 0; j < maxNouns; j++) {
+						if ((d.map[i] == d.map[j]) == same) lits[n++] = getSlotLit(id2, ts, j);
+					}
+					addClause(lits, n, 0);
+				}
+				return true;
+			}
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Returns the literals where the noun is in slot s or before, for each slot s of the noun type.
+	 * @param id Zero-based id of the noun.
+	 * @param ts Zero-based number of the noun type of the slots.
+	 * @return Literals.
+	 */
+	private int[] getOrderLits(final int id, final int ts) {
+		int[] order = new int[maxNouns];
+		int prev = FALSE;
+		for (int s = 0; s < maxNouns; s++) {
+			int in = getSlotLit(id, ts, s);
+			if (s == maxNouns - 1 || in == TRUE) {
+				order[s] = TRUE;
+			}
+			else if (in == FALSE) {
+				order[s] = prev;
+			}
+			else {
+				order[s] = 2 * newVar();
+				addClause(in ^ 1, order[s]);
+				addClause(prev ^ 1, order[s]);
+				addClause(order[s] ^ 1, prev, in);
+			}
+			prev = order[s];
+		}
+		return order;
+	}
+
+	/**
+	 * Returns the id of the noun in the compiled puzzle.
+	 * @param noun Noun.
+	 * @return Zero-based id.
+	 */
+	private int getId(final Noun noun) {
+		return compiled.getId(noun);
+	}
+
+	/**
+	 * Adds the clauses where exactly one of the literals is true.
+	 * @param lits Literals.
+	 * @param n Number of literals.
+	 */
+	private void addExactlyOne(final int[] lits, final int n) {
+		addClause(lits, n, 0);
+		addAtMostOne(lits, n);
+	}
+
+	/**
+	 * Adds the clauses where at most one of the literals is true. Small sets use a clause for each pair,
+	 * and larger sets use a sequential counter, where auxiliary variable s(i) is true if one of the first i + 1 literals is true.
+	 * @param lits Literals.
+	 * @param n Number of literals.
+	 */
+	private void addAtMostOne(final int[] lits, final int n) {
+		int[] list = new int[n];
+		int size = 0;
+		for (int i = 0; i < n; i++) {
+			if (lits[i] == TRUE) {
+				// Every other literal is false.
+				for (int j = 0; j < n; j++) {
+					if (j != i) addClause(lits[j] ^ 1);
+				}
+				return;
+			}
+			if (lits[i] != FALSE) list[size++] = lits[i];
+		}
+		if (size <= MAX_PAIRWISE) {
+			for (int i = 0; i < size; i++) {
+				for (int j = i + 1; j < size; j++) addClause(list[i] ^ 1, list[j] ^ 1);
+			}
+			return;
+		}
+		int prev = 2 * newVar();
+		addClause(list[0] ^ 1, prev);
+		for (int i = 1; i < size - 1; i++) {
+			int next = 2 * newVar();
+			addClause(list[i] ^ 1, next);
+			addClause(prev ^ 1, next);
+			addClause(list[i] ^ 1, prev ^ 1);
+			prev = next;
+		}
+		addClause(list[size - 1] ^ 1, prev ^ 1);
+	}
+
+	/**
+	 * Adds the clause of the literals.
+	 * @param lits Literals.
+	 */
+	private void addClause(final int... lits) {
+		addClause(lits, lits.length, 0);
+	}
+
+	/**
+	 * Adds the clause of the first n literals to the arena, without its constant or duplicate literals.<br>
+	 * A clause with a true literal is dropped, and an empty clause means the puzzle has no solution.
+	 * @param lits Literals.
+	 * @param n Number of literals.
+	 * @param flags Flags of the clause.
+	 * @return Reference to the clause, or -1 if the clause was dropped or empty.
+	 */
+	private int addClause(final int[] lits, final int n, final int flags) {
+		if (arenaSize + HEADER + n > arena.length) arena = Arrays.copyOf(arena, Math.max(2 * arena.length, arenaSize + HEADER + n));
+		int c = arenaSize, a = c + HEADER, size = 0;
+		for (int i = 0; i < n; i++) {
+			int lit = lits[i];
+			if (lit == TRUE) return -1;
+			if (lit == FALSE) continue;
+			boolean skip = false;
+			for (int k = 0; k < size; k++) {
+				if (arena[a + k] == lit) { skip = true; break; }
+				if (arena[a + k] == (lit ^ 1)) return -1;
+			}
+			if (!skip) arena[a + size++] = lit;
+		}
+		if (size == 0) {
+			unsat = true;
+			return -1;
+		}
+		arena[c] = size;
+		arena[c + 1] = flags;
+		arenaSize = a + size;
+		return c;
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Setup">
+
+	/** Allocates the arrays of the variables, then attaches every clause of the puzzle. */
+	private void setup() {
+		int lits = 2 * numVars;
+		values = new byte[lits];
+		levels = new int[numVars];
+		reasons = new int[numVars];
+		phases = new byte[numVars];
+		trail = new int[numVars];
+		trailLim = new int[numVars + 1];
+		activity = new double[numVars];
+		heap = new int[numVars];
+		heapIndex = new int[numVars];
+		seen = new byte[numVars];
+		learnt = new int[numVars];
+		toClear = new int[numVars];
+		levelStamps = new int[numVars + 1];
+		watches = new int[lits][];
+		watchCounts = new int[lits];
+		for (int i = 0; i < lits; i++) watches[i] = new int[4];
+		learnts = new int[1024];
+		learntCount = 0;
+		maxLearnts = Math.max(5000, clauses / 3);
+		trailSize = 0;
+		qhead = 0;
+		decisionLevel = 0;
+		varInc = 1.0;
+		stamp = 0;
+		heapSize = 0;
+
+		Arrays.fill(reasons, -1);
+		Arrays.fill(phases, (byte) 1);
+		Arrays.fill(heapIndex, -1);
+		values[FALSE] = -1;
+		values[TRUE] = 1;
+		for (int v = 1; v < numVars; v++) heapInsert(v);
+
+		for (int c = 0; c < arenaSize && !unsat; c += HEADER + arena[c]) {
+			if (!attach(c)) unsat = true;
+		}
+	}
+
+	/**
+	 * Attaches the clause at decision level 0. The first two literals that are not false are watched.
+	 * A clause with one literal that is not false asserts it, and a clause with a true literal is satisfied.
+	 * @param c Reference to the clause.
+	 * @return False if every literal of the clause is false, otherwise true.
+	 */
+	private boolean attach(final int c) {
+		int size = arena[c], a = c + HEADER, found = 0;
+		for (int k = 0; k < size && found < 2; k++) {
+			int lit = arena[a + k];
+			if (values[lit] == 1) return true;
+			if (values[lit] == 0) {
+				arena[a + k] = arena[a + found];
+				arena[a + found++] = lit;
+			}
+		}
+		if (found == 0) return false;
+		if (found == 1) {
+			assign(arena[a], -1);
+			return true;
+		}
+		watch(arena[a], c);
+		watch(arena[a + 1], c);
+		return true;
+	}
+
+	/**
+	 * Watches the clause by the literal.
+	 * @param lit Literal.
+	 * @param c Reference to the clause.
+	 */
+	private void watch(final int lit, final int c) {
+		int n = watchCounts[lit];
+		if (n == watches[lit].length) watches[lit] = Arrays.copyOf(watches[lit], 2 * n);
+		watches[lit][n] = c;
+		watchCounts[lit] = n + 1;
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Search">
+
+	/**
+	 * Searches for a model of the clauses, restarting after a number of conflicts given by the Luby sequence.
+	 * @return Zero if a model was found, UNSATISFIABLE if there is none, or STOPPED.
+	 */
+	private int search() {
+		if (unsat) return UNSATISFIABLE;
+		for (int restart = 0; ; restart++) {
+			long limit = luby(restart) * RESTART_CONFLICTS;
+			long count = 0;
+			while (true) {
+				int confl = propagate();
+				if (confl >= 0) {
+					++conflicts;
+					++count;
+					if (decisionLevel == 0) return UNSATISFIABLE;
+					int level = analyze(confl);
+					cancelUntil(level);
+					addLearnt();
+					varInc /= VAR_DECAY;
+					continue;
+				}
+				if (stopped) return STOPPED;
+				if (count >= limit) break;
+
+				int v = pickBranch();
+				if (v < 0) return 0;
+				++decisions;
+				trailLim[decisionLevel++] = trailSize;
+				assign(2 * v + phases[v], -1);
+			}
+			cancelUntil(0);
+			if (learntCount >= maxLearnts) {
+				reduceLearnts();
+				maxLearnts += maxLearnts / 10;
+			}
+		}
+	}
+
+	/**
+	 * Returns the i-th number of the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, ...
+	 * @param i Zero-based index.
+	 * @return Number.
+	 */
+	private static long luby(int i) {
+		int size = 1, seq = 0;
+		while (size < i + 1) {
+			++seq;
+			size = 2 * size + 1;
+		}
+		while (size - 1 != i) {
+			size = (size - 1) >> 1;
+			--seq;
+			i = i % size;
+		}
+		return 1L << seq;
+	}
+
+	/**
+	 * Assigns the literal as true.
+	 * @param lit Literal.
+	 * @param reason Clause that implied the literal, or -1.
+	 */
+	private void assign(final int lit, final int reason) {
+		int v = lit >> 1;
+		values[lit] = 1;
+		values[lit ^ 1] = -1;
+		levels[v] = decisionLevel;
+		reasons[v] = reason;
+		trail[trailSize++] = lit;
+		if (budget != null && !budget.addMark()) stopped = true;
+	}
+
+	/**
+	 * Propagates the literals on the trail through the clauses that watch their negations.
+	 * @return Reference to a conflicting clause, or -1 if there is no conflict.
+	 */
+	private int propagate() {
+		while (qhead < trailSize) {
+			int falseLit = trail[qhead++] ^ 1;
+			++propagations;
+			int[] ws = watches[falseLit];
+			int n = watchCounts[falseLit], i = 0, j = 0;
+			while (i < n) {
+				int c = ws[i++];
+				if ((arena[c + 1] & DELETED) != 0) continue;
+				int a = c + HEADER;
+
+				// The false literal is moved to the second position.
+				if (arena[a] == falseLit) {
+					arena[a] = arena[a + 1];
+					arena[a + 1] = falseLit;
+				}
+				int first = arena[a];
+				if (values[first] == 1) {
+					ws[j++] = c;
+					continue;
+				}
+
+				// Look for a literal that is not false to watch instead.
+				int size = arena[c];
+				boolean moved = false;
+				for (int k = 2; k < size; k++) {
+					int lit = arena[a + k];
+					if (values[lit] != -1) {
+						arena[a + 1] = lit;
+						arena[a + k] = falseLit;
+						watch(lit, c);
+						moved = true;
+						break;
+					}
+				}
+				if (moved) continue;
+
+				// The clause is unit or conflicting.
+				ws[j++] = c;
+				if (values[first] == -1) {
+					while (i < n) ws[j++] = ws[i++];
+					watchCounts[falseLit] = j;
+					qhead = trailSize;
+					return c;
+				}
+				assign(first, c);
+			}
+			watchCounts[falseLit] = j;
+		}
+		return -1;
+	}
+
+	/**
+	 * Analyzes the conflict, and fills the learned clause with its first unique implication point (UIP) as the first literal.
+	 * @param confl Reference to the conflicting clause.
+	 * @return Decision level to go back to.
+	 */
+	private int analyze(int confl) {
+		int pathCount = 0, p = -1, index = trailSize - 1, clears = 0;
+		learntSize = 1;
+		do {
+			int size = arena[confl], a = confl + HEADER;
+			for (int k = (p == -1) ? 0 : 1; k < size; k++) {
+				int q = arena[a + k], v = q >> 1;
+				if (seen[v] != 0 || levels[v] == 0) continue;
+				bumpVar(v);
+				seen[v] = 1;
+				toClear[clears++] = v;
+				if (levels[v] >= decisionLevel) ++pathCount;
+				else learnt[learntSize++] = q;
+			}
+			while (seen[trail[index--] >> 1] == 0) { }
+			p = trail[index + 1];
+			confl = reasons[p >> 1];
+			seen[p >> 1] = 0;
+			--pathCount;
+		} while (pathCount > 0);
+		learnt[0] = p ^ 1;
+
+		// Remove each literal whose reason only has literals of the learned clause or of level 0.
+		int j = 1;
+		for (int i = 1; i < learntSize; i++) {
+			int v = learnt[i] >> 1, c = reasons[v];
+			boolean keep = c < 0;
+			if (!keep) {
+				int size = arena[c], a = c + HEADER;
+				for (int k = 1; k < size; k++) {
+					int u = arena[a + k] >> 1;
+					if (seen[u] == 0 && levels[u] > 0) { keep = true; break; }
+				}
+			}
+			if (keep) learnt[j++] = learnt[i];
+		}
+		learntSize = j;
+		for (int i = 0; i < clears; i++) seen[toClear[i]] = 0;
+
+		// The literal of the highest level after the UIP is watched second.
+		int level = 0;
+		for (int i = 1; i < learntSize; i++) {
+			int lv = levels[learnt[i] >> 1];
+			if (lv > level) {
+				level = lv;
+				int lit = learnt[1];
+				learnt[1] = learnt[i];
+				learnt[i] = lit;
+			}
+		}
+		return level;
+	}
+
+	/** Adds the learned clause, and asserts its first literal. */
+	private void addLearnt() {
+		if (learntSize == 1) {
+			assign(learnt[0], -1);
+			return;
+		}
+		++stamp;
+		int lbd = 0;
+		for (int i = 0; i < learntSize; i++) {
+			int lv = levels[learnt[i] >> 1];
+			if (levelStamps[lv] != stamp) {
+				levelStamps[lv] = stamp;
+				++lbd;
+			}
+		}
+		int c = addClause(learnt, learntSize, LEARNT | (lbd << 2));
+		if (learntCount == learnts.length) learnts = Arrays.copyOf(learnts, 2 * learntCount);
+		learnts[learntCount++] = c;
+		watch(arena[c + HEADER], c);
+		watch(arena[c + HEADER + 1], c);
+		assign(arena[c + HEADER], c);
+	}
+
+	/**
+	 * Unassigns every literal above the decision level, saving the phase of each variable.
+	 * @param level Decision level.
+	 */
+	private void cancelUntil(final int level) {
+		if (decisionLevel <= level) return;
+		int lim = trailLim[level];
+		for (int i = trailSize - 1; i >= lim; i--) {
+			int lit = trail[i], v = lit >> 1;
+			values[lit] = 0;
+			values[lit ^ 1] = 0;
+			reasons[v] = -1;
+			phases[v] = (byte) (lit & 1);
+			heapInsert(v);
+		}
+		trailSize = lim;
+		qhead = lim;
+		decisionLevel = level;
+	}
+
+	/**
+	 * Returns the unassigned variable with the highest activity, or -1 if every variable is assigned.
+	 * @return Variable, or -1.
+	 */
+	private int pickBranch() {
+		while (heapSize > 0) {
+			int v = heapPop();
+			if (values[2 * v] == 0) return v;
+		}
+		return -1;
+	}
+
+	/**
+	 * Deletes the half of the learned clauses with the highest LBD, except clauses with an LBD of two or less and clauses
+	 * that are the reason of a literal. Called at decision level 0. The arena is compacted when half of it is deleted clauses.
+	 */
+	private void reduceLearnts() {
+		long[] keys = new long[learntCount];
+		for (int i = 0; i < learntCount; i++) keys[i] = ((long) (arena[learnts[i] + 1] >>> 2) << 32) | learnts[i];
+		Arrays.sort(keys);
+		int target = learntCount / 2;
+		for (int i = learntCount - 1; i >= 0 && target > 0; i--) {
+			int c = (int) keys[i];
+			if ((keys[i] >>> 32) <= 2) break;
+			int lit = arena[c + HEADER];
+			if (reasons[lit >> 1] == c && values[lit] == 1) continue;
+			arena[c + 1] |= DELETED;
+			wasted += HEADER + arena[c];
+			--target;
+		}
+		int n = 0;
+		for (int i = 0; i < learntCount; i++) {
+			if ((arena[learnts[i] + 1] & DELETED) == 0) learnts[n++] = learnts[i];
+		}
+		learntCount = n;
+		if (2 * wasted > arenaSize) compact();
+	}
+
+	/**
+	 * Moves the clauses that are not deleted to the front of the arena, and watches them again. Called at decision level 0,
+	 * where the reasons of the literals are no longer needed, and the first two literals of each clause are still its watches.
+	 */
+	private void compact() {
+		for (int i = 0; i < trailSize; i++) reasons[trail[i] >> 1] = -1;
+		Arrays.fill(watchCounts, 0);
+		int size = 0;
+		learntCount = 0;
+		for (int c = 0; c < arenaSize; ) {
+			int next = c + HEADER + arena[c];
+			if ((arena[c + 1] & DELETED) == 0) {
+				int n = next - c;
+				System.arraycopy(arena, c, arena, size, n);
+				if ((arena[size + 1] & LEARNT) != 0) learnts[learntCount++] = size;
+				if (arena[size] > 1) {
+					watch(arena[size + HEADER], size);
+					watch(arena[size + HEADER + 1], size);
+				}
+				size += n;
+			}
+			c = next;
+		}
+		arenaSize = size;
+		wasted = 0;
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Activity">
+
+	/**
+	 * Bumps the activity of the variable.
+	 * @param v Variable.
+	 */
+	private void bumpVar(final int v) {
+		activity[v] += varInc;
+		if (activity[v] > 1e100) {
+			for (int u = 0; u < numVars; u++) activity[u] *= 1e-100;
+			varInc *= 1e-100;
+		}
+		if (heapIndex[v] >= 0) siftUp(heapIndex[v]);
+	}
+
+	/**
+	 * Inserts the variable into the heap if it is not there.
+	 * @param v Variable.
+	 */
+	private void heapInsert(final int v) {
+		if (heapIndex[v] >= 0) return;
+		heap[heapSize] = v;
+		heapIndex[v] = heapSize;
+		siftUp(heapSize++);
+	}
+
+	/**
+	 * Removes and returns the variable with the highest activity.
+	 * @return Variable.
+	 */
+	private int heapPop() {
+		int v = heap[0];
+		heapIndex[v] = -1;
+		if (--heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapIndex[heap[0]] = 0;
+			siftDown(0);
+		}
+		return v;
+	}
+
+	/**
+	 * Moves the variable at the index of the heap up to its place.
+	 * @param i Index.
+	 */
+	private void siftUp(int i) {
+		int v = heap[i];
+		while (i > 0) {
+			int p = (i - 1) >> 1;
+			if (activity[heap[p]] >= activity[v]) break;
+			heap[i] = heap[p];
+			heapIndex[heap[i]] = i;
+			i = p;
+		}
+		heap[i] = v;
+		heapIndex[v] = i;
+	}
+
+	/**
+	 * Moves the variable at the index of the heap down to its place.
+	 * @param i Index.
+	 */
+	private void siftDown(int i) {
+		int v = heap[i];
+		while (true) {
+			int c = 2 * i + 1;
+			if (c >= heapSize) break;
+			if (c + 1 < heapSize && activity[heap[c + 1]] > activity[heap[c]]) ++c;
+			if (activity[heap[c]] <= activity[v]) break;
+			heap[i] = heap[c];
+			heapIndex[heap[i]] = i;
+			i = c;
+		}
+		heap[i] = v;
+		heapIndex[v] = i;
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Solution">
+
+	/**
+	 * Reads the solution from the model, enters it in the grid and the pairs of the nouns, then invokes every enabled rule.
+	 * @return True if no rule is violated, otherwise false.
+	 */
+	private boolean setSolution() {
+		int[][] rows = checker.rows;
+		for (int r = 0; r < maxNouns; r++) rows[0][r] = r;
+		for (int t = 1; t < maxNounTypes; t++) {
+			for (int r = 0; r < maxNouns; r++) {
+				for (int j = 0; j < maxNouns; j++) {
+					if (values[getLit(t, r, j)] == 1) rows[t][r] = j;
+				}
+			}
+		}
+		checker.enter();
+
+		solution = new int[maxNounTypes - 1][];
+		for (int t = 1; t < maxNounTypes; t++) solution[t - 1] = Arrays.copyOf(rows[t], maxNouns);
+		return checker.check();
+	}
+
+	/**
+	 * The Checker class is the ISolver of the puzzle while it is solved by the SatSolver.<br>
+	 * It holds the grid of one complete solution, so each rule can be invoked on it.
+	 * A rule that enters a mark that disagrees with the grid, or that returns a nonzero status, is violated.
+	 */
+	private static final class Checker implements ISolver {
+		/** Puzzle. */
+		private final Puzzle puzzle;
+
+		/** Grid of the solution. Set after the puzzle is validated. */
+		VerbGrid grid = null;
+
+		/** Noun of each noun type with each noun of the first noun type as rows[t][r]. */
+		final int[][] rows;
+
+		/** Mark given to the rules. */
+		private final Mark mark = new Mark(0);
+
+		/** Marks of the pairs of the solution, which are given to the rules that read the mark. */
+		private final List<Mark> pairs = new ArrayList<>();
+
+		/** True if a rule entered a mark that disagrees with the grid. */
+		private boolean violated = false;
+
+		/**
+		 * Constructor.
+		 * @param puzzle Puzzle.
+		 */
+		Checker(final Puzzle puzzle) {
+			this.puzzle = puzzle;
+			int n = puzzle.nounTypes.get(0).nouns.size();
+			this.rows = new int[puzzle.nounTypes.size()][n];
+		}
+
+		/** Enters the solution of the rows in the grid and in the pairs of the nouns. */
+		void enter() {
+			List<NounType> nounTypes = puzzle.nounTypes;
+			int num = 0;
+			pairs.clear();
+			for (int t1 = 0; t1 < nounTypes.size(); t1++) {
+				for (int t2 = t1 + 1; t2 < nounTypes.size(); t2++) {
+					for (int r = 0; r < rows[t1].length; r++) {
+						for (int n2 = 0; n2 < rows[t2].length; n2++) grid.set(t1, rows[t1][r], t2, n2, n2 == rows[t2][r] ? VerbGrid.IS : VerbGrid.IS_NOT);
+						Noun noun1 = nounTypes.get(t1).nouns.get(rows[t1][r]);
+						Noun noun2 = nounTypes.get(t2).nouns.get(rows[t2][r]);
+						Mark pair = new Mark(++num);
+						pair.update("", ISolver.MAX_LEVELS, ' ', Mark.Type.Level, 0, ' ', noun1, puzzle.Is, noun2, null, -1, null);
+						noun1.pairs[t2] = pair;
+						noun2.pairs[t1] = pair;
+						pairs.add(pair);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Invokes every enabled rule on the grid. A rule that reads the mark is also invoked with the mark of each pair.
+		 * @return True if no rule is violated, otherwise false.
+		 */
+		boolean check() {
+			for (Rule rule : puzzle.rules) {
+				if (!rule.enabled) continue;
+				violated = false;
+				if (rule.f.apply(mark) != 0 || violated) return false;
+				if (rule.traceable) continue;
+				for (Mark pair : pairs) {
+					if (rule.f.apply(pair) != 0 || violated) return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void jot(final String msg) {}
+
+		@Override
+		public int getMaxMarks() { return puzzle.maxNounTypes * (puzzle.maxNounTypes - 1) / 2 * puzzle.maxNouns * puzzle.maxNouns; }
+
+		@Override
+		public boolean maybeRelated(final Noun noun1, final Link link, final Noun noun2) {
+			NounType slots = link.nounType;
+			Noun slot1 = noun1.type == slots ? noun1 : Mark.getPairNoun(noun1, slots);
+			Noun slot2 = noun2.type == slots ? noun2 : Mark.getPairNoun(noun2, slots);
+			return link.getRelatedSlots(slot1).contains(slot2);
+		}
+
+		@Override
+		public Noun getCommonNoun(final Noun noun1, final Noun noun2, final NounType nounType3) {
+			for (Noun noun3 : nounType3.nouns) {
+				if (grid.canBeWith(noun1, noun3) && grid.canBeWith(noun2, noun3)) return noun3;
+			}
+			return null;
+		}
+
+		@Override
+		public boolean canBeWith(final Noun noun1, final Noun noun2) {
+			return grid.canBeWith(noun1, noun2);
+		}
+
+		@Override
+		public boolean cannotBeWith(final List<Noun> nouns, final Noun noun2) {
+			for (Noun noun1 : nouns) {
+				if (grid.canBeWith(noun1, noun2)) return false;
+			}
+			return true;
+		}
+
+		@Override
+		public Verb getGridVerb(final Noun noun1, final Noun noun2) {
+			return grid.getVerb(noun1, noun2);
+		}
+
+		@Override
+		public int addMarkByRule(final Mark mark, final Rule rule, final char refSub, final Noun noun1, final Verb verb, final Noun noun2, final String msg) {
+			if (grid.getVerb(noun1, noun2) == verb) return 0;
+			violated = true;
+			return -1;
+		}
+
+		@Override
+		public int addMarkByRule(final Mark mark, final Rule rule, final char refSub, final Noun noun1, final Verb verb, final Noun noun2, final Supplier<String> msg) {
+			return addMarkByRule(mark, rule, refSub, noun1, verb, noun2, (String) null);
+		}
+	}
+
+	// </editor-fold>
+}
@@ -1,28 +1,430 @@
 package com.mysterymaster.puzzle;
 
+import java.util.List;
 import java.util.function.BiFunction;
 
 /**
  * The Smart Link class defines static methods that return a function for a link.<br>
  * The link function returns a verb based on two nouns with the same noun type as the link.<br>
  * This class takes responsibility of defining links from the Puzzle class.<br>
+ * Each function is a Descriptor that knows its kind and parameters, so the Link class can build its table,
+ * inverse, and one-to-one flag in closed form. A custom lambda is still evaluated for every pair of slots.<br>
+ * The combinators (and, or, not, inverse, compose, shifted) build a Combinator from other link functions,
+ * which is compiled into a relation table once by the Link class, so a compound relation costs the same per lookup as a primitive one.<br>
  * Copyright (c) 2018 mysterymaster.com. All rights reserved.
  * @version 2018-05-11
  * @author Michael Benson <michael.benson@mysterymaster.com>
  */
 public final class SmartLink {
+	/** Kind of a link function. */
+	public enum Kind {
+		IsWith("isWith"),
+		IsLessThan("isLessThan"),
+		IsLessBy("isLessBy"),
+		IsMoreThan("isMoreThan"),
+		IsMoreBy("isMoreBy"),
+		IsNextTo("isNextTo"),
+		IsOffsetBy("isOffsetBy"),
+		IsOutsideOf("isOutsideOf"),
+		HasRatio("hasRatio");
+		
+		public final String name;
+		
+		Kind(String name) {
+			this.name = name;
+		}
+		
+		@Override
+		public String toString() { return name; }
+	}
+	
+	/**
+	 * The Descriptor class is a link function with its kind and parameters, where slot i is the slot with number i (one-based).<br>
+	 * Every query is answered in closed form from the kind, without calling the function for each pair of slots.
+	 */
+	public static final class Descriptor extends Base implements BiFunction<Noun, Noun, Verb> {
+		/** Kind of the function. */
+		public final Kind kind;
+		
+		/** First parameter, which is the offset number or the left hand side of the ratio. */
+		public final int n1;
+		
+		/** Second parameter, which is the right hand side of the ratio, otherwise zero. */
+		public final int n2;
+		
+		@Override
+		public String toString() {
+			switch (kind) {
+				case IsWith: case IsNextTo: return kind.name;
+				case HasRatio: return kind.name + "(" + n1 + "," + n2 + ")";
+				default: return kind.name + "(" + n1 + ")";
+			}
+		}
+		
+		@Override
+		public String asString() {
+			return "kind=" + Q + kind + Q + " n1=" + Q + n1 + Q + " n2=" + Q + n2 + Q;
+		}
+		
+		/**
+		 * Constructor.
+		 * @param kind Kind of the function.
+		 * @param n1 First parameter.
+		 * @param n2 Second parameter.
+		 */
+		Descriptor(final Kind kind, final int n1, final int n2) {
+			this.kind = kind;
+			this.n1 = n1;
+			this.n2 = n2;
+		}
+		
+		@Override
+		public Verb apply(final Noun noun1, final Noun noun2) {
+			return getVerb(noun1, isRelated(noun1.num, noun2.num));
+		}
+		
+		/**
+		 * Returns true if slot i is related to slot j, otherwise false.
+		 * @param i One-based number of slot 1.
+		 * @param j One-based number of slot 2.
+		 * @return boolean.
+		 */
+		public boolean isRelated(final int i, final int j) {
+			switch (kind) {
+				case IsWith: return i == j;
+				case IsLessThan: return i < j - n1;
+				case IsLessBy: return i == j - n1;
+				case IsMoreThan: return i > j + n1;
+				case IsMoreBy: return i == j + n1;
+				case IsNextTo: return i == j - 1 || i == j + 1;
+				case IsOffsetBy: return i == j - n1 || i == j + n1;
+				case IsOutsideOf: return i < j - n1 || i > j + n1;
+				case HasRatio: return n1 * i == n2 * j;
+			}
+			return false;
+		}
+		
+		/**
+		 * Returns the slots related to slot i as a bit mask where bit (j - 1) is for slot j.
+		 * @param i One-based number of the slot.
+		 * @param n Number of slots.
+		 * @return Array of words.
+		 */
+		public long[] getRelatedMask(final int i, final int n) {
+			long[] mask = new long[(n + 63) >>> 6];
+			switch (kind) {
+				case IsWith: setRange(mask, n, i, i); break;
+				case IsLessThan: setRange(mask, n, i + n1 + 1, n); break;
+				case IsLessBy: setRange(mask, n, i + n1, i + n1); break;
+				case IsMoreThan: setRange(mask, n, 1, i - n1 - 1); break;
+				case IsMoreBy: setRange(mask, n, i - n1, i - n1); break;
+				case IsNextTo: setRange(mask, n, i - 1, i - 1); setRange(mask, n, i + 1, i + 1); break;
+				case IsOffsetBy: setRange(mask, n, i - n1, i - n1); setRange(mask, n, i + n1, i + n1); break;
+				case IsOutsideOf: setRange(mask, n, 1, i - n1 - 1); setRange(mask, n, i + n1 + 1, n); break;
+				case HasRatio:
+					if (n2 == 0) {
+						if (n1 * i == 0) setRange(mask, n, 1, n);
+					}
+					else if ((n1 * i) % n2 == 0) {
+						setRange(mask, n, n1 * i / n2, n1 * i / n2);
+					}
+					break;
+			}
+			return mask;
+		}
+		
+		/**
+		 * Sets the bits of the slots from a to b (one-based), clipped to the slots.
+		 * @param mask Bit mask.
+		 * @param n Number of slots.
+		 * @param a First slot.
+		 * @param b Last slot.
+		 */
+		private static void setRange(final long[] mask, final int n, final int a, final int b) {
+			for (int j = Math.max(1, a); j <= Math.min(n, b); j++) mask[(j - 1) >>> 6] |= 1L << (j - 1);
+		}
+		
+		/**
+		 * Returns the descriptor of the inverse relation, where slot j is related to slot i if slot i is related to slot j.
+		 * @return Descriptor.
+		 */
+		public Descriptor inverse() {
+			switch (kind) {
+				case IsLessThan: return new Descriptor(Kind.IsMoreThan, n1, 0);
+				case IsLessBy: return new Descriptor(Kind.IsMoreBy, n1, 0);
+				case IsMoreThan: return new Descriptor(Kind.IsLessThan, n1, 0);
+				case IsMoreBy: return new Descriptor(Kind.IsLessBy, n1, 0);
+				case HasRatio: return new Descriptor(Kind.HasRatio, n2, n1);
+				default: return this;
+			}
+		}
+		
+		/**
+		 * Returns true if each slot is related to at most one slot, otherwise false.
+		 * @param n Number of slots.
+		 * @return boolean.
+		 */
+		public boolean isOneToOne(final int n) {
+			switch (kind) {
+				case IsWith: case IsLessBy: case IsMoreBy: return true;
+				case IsLessThan: case IsMoreThan: return Math.min(n, n - 1 - n1) <= 1;
+				case IsNextTo: return n <= 2;
+				case IsOffsetBy: return n1 == 0 || n <= 2 * Math.abs(n1);
+				case HasRatio: return n2 != 0 || n1 != 0 || n <= 1;
+				default:
+					for (int i = 1; i <= n; i++) {
+						int cnt = 0;
+						for (long word : getRelatedMask(i, n)) cnt += Long.bitCount(word);
+						if (cnt > 1) return false;
+					}
+					return true;
+			}
+		}
+		
+		/**
+		 * Returns the smallest interval of the slots related to any slot from lo to hi, or null if there are none.
+		 * @param lo One-based number of the first slot.
+		 * @param hi One-based number of the last slot.
+		 * @param n Number of slots.
+		 * @return Array of {first, last} one-based slot numbers, or null.
+		 */
+		public int[] getImage(final int lo, final int hi, final int n) {
+			int a, b;
+			switch (kind) {
+				case IsWith: a = lo; b = hi; break;
+				case IsLessThan: a = lo + n1 + 1; b = n; break;
+				case IsLessBy: a = lo + n1; b = hi + n1; break;
+				case IsMoreThan: a = 1; b = hi - n1 - 1; break;
+				case IsMoreBy: a = lo - n1; b = hi - n1; break;
+				default:
+					a = n + 1; b = 0;
+					for (int i = lo; i <= hi; i++) {
+						long[] mask = getRelatedMask(i, n);
+						for (int w = 0; w < mask.length; w++) {
+							if (mask[w] == 0) continue;
+							a = Math.min(a, 64 * w + Long.numberOfTrailingZeros(mask[w]) + 1);
+							b = Math.max(b, 64 * w + 64 - Long.numberOfLeadingZeros(mask[w]));
+						}
+					}
+					break;
+			}
+			a = Math.max(a, 1);
+			b = Math.min(b, n);
+			return a > b ? null : new int[] { a, b };
+		}
+	}
+	
+	/** Operation of a combinator. */
+	public enum Operation {
+		And("and"),
+		Or("or"),
+		Not("not"),
+		Inverse("inverse"),
+		Compose("compose"),
+		Shifted("shifted");
+		
+		public final String name;
+		
+		Operation(String name) {
+			this.name = name;
+		}
+		
+		@Override
+		public String toString() { return name; }
+	}
+	
+	/**
+	 * The Combinator class is a link function built from one or two other link functions.<br>
+	 * The Link class compiles it into a relation table with the getTable method, where each operand is compiled once.
+	 */
+	public static final class Combinator extends Base implements BiFunction<Noun, Noun, Verb> {
+		/** Operation. */
+		public final Operation operation;
+		
+		/** First operand. */
+		public final BiFunction<Noun, Noun, Verb> f1;
+		
+		/** Second operand, or null. */
+		public final BiFunction<Noun, Noun, Verb> f2;
+		
+		/** Offset number of the shifted operation, otherwise zero. */
+		public final int n;
+		
+		@Override
+		public String toString() {
+			switch (operation) {
+				case Not: case Inverse: return operation.name + "(" + f1 + ")";
+				case Shifted: return operation.name + "(" + f1 + "," + n + ")";
+				default: return operation.name + "(" + f1 + "," + f2 + ")";
+			}
+		}
+		
+		@Override
+		public String asString() {
+			return "operation=" + Q + operation + Q + " f1=" + Q + f1 + Q + " f2=" + Q + f2 + Q + " n=" + Q + n + Q;
+		}
+		
+		/**
+		 * Constructor.
+		 * @param operation Operation.
+		 * @param f1 First operand.
+		 * @param f2 Second operand, or null.
+		 * @param n Offset number of the shifted operation.
+		 */
+		Combinator(final Operation operation, final BiFunction<Noun, Noun, Verb> f1, final BiFunction<Noun, Noun, Verb> f2, final int n) {
+			if (f1 == null) throw new Error("The link function must be given!");
+			this.operation = operation;
+			this.f1 = f1;
+			this.f2 = f2;
+			this.n = n;
+		}
+		
+		@Override
+		public Verb apply(final Noun noun1, final Noun noun2) {
+			return getVerb(noun1, isRelated(noun1, noun2));
+		}
+		
+		/**
+		 * Returns true if slot 1 is related to slot 2 by evaluating the operands, otherwise false.
+		 * @param slot1 Slot 1.
+		 * @param slot2 Slot 2.
+		 * @return boolean.
+		 */
+		private boolean isRelated(final Noun slot1, final Noun slot2) {
+			switch (operation) {
+				case And: return isPositive(f1, slot1, slot2) && isPositive(f2, slot1, slot2);
+				case Or: return isPositive(f1, slot1, slot2) || isPositive(f2, slot1, slot2);
+				case Not: return !isPositive(f1, slot1, slot2);
+				case Inverse: return isPositive(f1, slot2, slot1);
+				case Compose:
+					for (Noun slot : slot1.type.nouns) {
+						if (isPositive(f1, slot1, slot) && isPositive(f2, slot, slot2)) return true;
+					}
+					return false;
+				case Shifted:
+					int j = slot2.num + n;
+					List<Noun> slots = slot2.type.nouns;
+					return j >= 1 && j <= slots.size() && isPositive(f1, slot1, slots.get(j - 1));
+			}
+			return false;
+		}
+		
+		/**
+		 * Returns the relation table of the combinator, where bit j of table[i] is set if slot i is related to slot j (zero-based).
+		 * @param slots Slots.
+		 * @return Relation table.
+		 */
+		long[][] getTable(final List<Noun> slots) {
+			int size = slots.size();
+			int words = (size + 63) >>> 6;
+			long[][] a = SmartLink.getTable(f1, slots);
+			long[][] b = (f2 == null) ? null : SmartLink.getTable(f2, slots);
+			long[][] table = new long[size][words];
+			for (int i = 0; i < size; i++) {
+				for (int w = 0; w < words; w++) {
+					switch (operation) {
+						case And: table[i][w] = a[i][w] & b[i][w]; break;
+						case Or: table[i][w] = a[i][w] | b[i][w]; break;
+						case Not: table[i][w] = ~a[i][w] & getWordMask(size, w); break;
+						default: break;
+					}
+				}
+				switch (operation) {
+					case Inverse:
+						for (int j = 0; j < size; j++) {
+							if ((a[j][i >>> 6] & (1L << i)) != 0) table[i][j >>> 6] |= 1L << j;
+						}
+						break;
+					case Compose:
+						for (int k = 0; k < size; k++) {
+							if ((a[i][k >>> 6] & (1L << k)) == 0) continue;
+							for (int w = 0; w < words; w++) table[i][w] |= b[k][w];
+						}
+						break;
+					case Shifted:
+						for (int j = 0; j < size; j++) {
+							int k = j + n;
+							if (k >= 0 && k < size && (a[i][k >>> 6] & (1L << k)) != 0) table[i][j >>> 6] |= 1L << j;
+						}
+						break;
+					default:
+						break;
+				}
+			}
+			return table;
+		}
+		
+		/**
+		 * Returns the mask of the bits of the word that are for a slot.
+		 * @param size Number of slots.
+		 * @param w Zero-based number of the word.
+		 * @return Mask.
+		 */
+		private static long getWordMask(final int size, final int w) {
+			int bits = size - 64 * w;
+			return bits >= 64 ? -1L : (1L << bits) - 1;
+		}
+	}
+	
+	/**
+	 * Returns true if the link function relates slot 1 to slot 2, otherwise false.
+	 * @param f Link function.
+	 * @param slot1 Slot 1.
+	 * @param slot2 Slot 2.
+	 * @return boolean.
+	 */
+	private static boolean isPositive(final BiFunction<Noun, Noun, Verb> f, final Noun slot1, final Noun slot2) {
+		return f.apply(slot1, slot2) == slot1.type.puzzle.Is;
+	}
+	
+	/**
+	 * Returns the relation table of the link function, where bit j of table[i] is set if slot i is related to slot j (zero-based).<br>
+	 * A descriptor is computed in closed form, a combinator compiles its operands once, and a custom function is evaluated for every pair of slots.
+	 * Called by Link.update.
+	 * @param f Link function.
+	 * @param slots Slots.
+	 * @return Relation table.
+	 */
+	static long[][] getTable(final BiFunction<Noun, Noun, Verb> f, final List<Noun> slots) {
+		int size = slots.size();
+		if (f instanceof Descriptor) {
+			long[][] table = new long[size][];
+			for (int i = 0; i < size; i++) table[i] = ((Descriptor) f).getRelatedMask(i + 1, size);
+			return table;
+		}
+		if (f instanceof Combinator) return ((Combinator) f).getTable(slots);
+		long[][] table = new long[size][(size + 63) >>> 6];
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				if (isPositive(f, slots.get(i), slots.get(j))) table[i][j >>> 6] |= 1L << j;
+			}
+		}
+		return table;
+	}
+	
 	/** Constructor. */
 	public SmartLink() {
 		throw new Error("SmartLink is a static class!");
 	}
 	
+	/**
+	 * Returns the positive verb of the noun's puzzle if the flag is true, otherwise its negative verb.
+	 * @param noun Noun whose puzzle owns the verbs.
+	 * @param flag True for the positive verb.
+	 * @return Verb.
+	 */
+	private static Verb getVerb(final Noun noun, final boolean flag) {
+		Puzzle puzzle = noun.type.puzzle;
+		return flag ? puzzle.Is : puzzle.IsNot;
+	}
+	
 	/**
 	 * Returns lambda expression for the isWith function:
 	 * <blockquote>Returns positive verb if both nouns are equal (i.e., are the same noun), otherwise negative verb.</blockquote>
 	 * @return Function isWith.
 	 */
 	static BiFunction<Noun, Noun, Verb> getIsWith() {
-		return (noun1, noun2) -> noun1.num == noun2.num ? Puzzle.Is : Puzzle.IsNot;
+		return new Descriptor(Kind.IsWith, 0, 0);
 	}
 	
 	/**
@@ -33,7 +435,7 @@ public final class SmartLink {
 	 * @return Function isLessThan.
 	 */
 	public static BiFunction<Noun, Noun, Verb> getIsLessThan(int n) {
-		return (noun1, noun2) -> noun1.num < noun2.num - n ? Puzzle.Is : Puzzle.IsNot;
+		return new Descriptor(Kind.IsLessThan, n, 0);
 	}
 	
 	/**
@@ -43,7 +445,7 @@ public final class SmartLink {
 	 * @return Function isLessBy.
 	 */
 	public static BiFunction<Noun, Noun, Verb> getIsLessBy(int n) {
-		return (noun1, noun2) -> noun1.num == noun2.num - n ? Puzzle.Is : Puzzle.IsNot;
+		return new Descriptor(Kind.IsLessBy, n, 0);
 	}
 	
 	/**
@@ -54,7 +456,7 @@ public final class SmartLink {
 	 * @return Function isMoreThan.
 	 */
 	public static BiFunction<Noun, Noun, Verb> getIsMoreThan(int n) {
-		return (noun1, noun2) -> noun1.num > noun2.num + n ? Puzzle.Is : Puzzle.IsNot;
+		return new Descriptor(Kind.IsMoreThan, n, 0);
 	}
 	
 	/**
@@ -64,7 +466,7 @@ public final class SmartLink {
 	 * @return Function isMoreBy.
 	 */
 	public static BiFunction<Noun, Noun, Verb> getIsMoreBy(int n) {
-		return (noun1, noun2) -> noun1.num == noun2.num + n ? Puzzle.Is : Puzzle.IsNot;
+		return new Descriptor(Kind.IsMoreBy, n, 0);
 	}
 	
 	/**
@@ -73,7 +475,7 @@ public final class SmartLink {
 	 * @return Function isNextTo.
 	 */
 	public static BiFunction<Noun, Noun, Verb> getIsNextTo() {
-		return (noun1, noun2) -> (noun1.num == noun2.num - 1) || (noun1.num == noun2.num + 1) ? Puzzle.Is : Puzzle.IsNot;
+		return new Descriptor(Kind.IsNextTo, 1, 0);
 	}
 	
 	/**
@@ -84,7 +486,7 @@ public final class SmartLink {
 	 * @return Function isOffsetBy.
 	 */
 	public static BiFunction<Noun, Noun, Verb> getIsOffsetBy(int n) {
-		return (noun1, noun2) -> (noun1.num == noun2.num - n) || (noun1.num == noun2.num + n) ? Puzzle.Is : Puzzle.IsNot;
+		return new Descriptor(Kind.IsOffsetBy, n, 0);
 	}
 	
 	/**
@@ -94,7 +496,7 @@ public final class SmartLink {
 	 * @return Function isOutsideOf.
 	 */
 	public static BiFunction<Noun, Noun, Verb> getIsOutsideOf(int n) {
-		return (noun1, noun2) -> (noun1.num < noun2.num - n) || (noun1.num > noun2.num + n) ? Puzzle.Is : Puzzle.IsNot;
+		return new Descriptor(Kind.IsOutsideOf, n, 0);
 	}
 	
 	/**
@@ -105,6 +507,67 @@ public final class SmartLink {
 	 * @return Function hasRatio.
 	 */
 	public static BiFunction<Noun, Noun, Verb> getHasRatio(int n1, int n2) {
-		return (noun1, noun2) -> (n1 * noun1.num == n2 * noun2.num) ? Puzzle.Is : Puzzle.IsNot;
+		return new Descriptor(Kind.HasRatio, n1, n2);
+	}
+	
+	/**
+	 * Returns the and combinator: Slot 1 is related to slot 2 if both functions relate them.
+	 * @param f1 Link function 1.
+	 * @param f2 Link function 2.
+	 * @return Function and.
+	 */
+	public static BiFunction<Noun, Noun, Verb> getAnd(final BiFunction<Noun, Noun, Verb> f1, final BiFunction<Noun, Noun, Verb> f2) {
+		return new Combinator(Operation.And, f1, f2, 0);
+	}
+	
+	/**
+	 * Returns the or combinator: Slot 1 is related to slot 2 if either function relates them.<br>
+	 * Example: "two or three apart" is getOr(getIsOffsetBy(2), getIsOffsetBy(3)).
+	 * @param f1 Link function 1.
+	 * @param f2 Link function 2.
+	 * @return Function or.
+	 */
+	public static BiFunction<Noun, Noun, Verb> getOr(final BiFunction<Noun, Noun, Verb> f1, final BiFunction<Noun, Noun, Verb> f2) {
+		return new Combinator(Operation.Or, f1, f2, 0);
+	}
+	
+	/**
+	 * Returns the not combinator: Slot 1 is related to slot 2 if the function does not relate them.
+	 * @param f Link function.
+	 * @return Function not.
+	 */
+	public static BiFunction<Noun, Noun, Verb> getNot(final BiFunction<Noun, Noun, Verb> f) {
+		return new Combinator(Operation.Not, f, null, 0);
+	}
+	
+	/**
+	 * Returns the inverse combinator: Slot 1 is related to slot 2 if the function relates slot 2 to slot 1.<br>
+	 * The inverse of a descriptor is a descriptor, such as isMoreThan(n) for isLessThan(n).
+	 * @param f Link function.
+	 * @return Function inverse.
+	 */
+	public static BiFunction<Noun, Noun, Verb> getInverse(final BiFunction<Noun, Noun, Verb> f) {
+		if (f instanceof Descriptor) return ((Descriptor) f).inverse();
+		return new Combinator(Operation.Inverse, f, null, 0);
+	}
+	
+	/**
+	 * Returns the compose combinator: Slot 1 is related to slot 2 if function 1 relates slot 1 to some slot that function 2 relates to slot 2.
+	 * @param f1 Link function 1.
+	 * @param f2 Link function 2.
+	 * @return Function compose.
+	 */
+	public static BiFunction<Noun, Noun, Verb> getCompose(final BiFunction<Noun, Noun, Verb> f1, final BiFunction<Noun, Noun, Verb> f2) {
+		return new Combinator(Operation.Compose, f1, f2, 0);
+	}
+	
+	/**
+	 * Returns the shifted combinator: Slot 1 is related to slot 2 if the function relates slot 1 to the slot n after slot 2.
+	 * @param f Link function.
+	 * @param n Offset number.
+	 * @return Function shifted.
+	 */
+	public static BiFunction<Noun, Noun, Verb> getShifted(final BiFunction<Noun, Noun, Verb> f, final int n) {
+		return new Combinator(Operation.Shifted, f, null, n);
 	}
 }
@@ -1,8 +1,10 @@
 package com.mysterymaster.puzzle;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * The Smart Rule class defines methods that return a function for the given puzzle and rule.<br>
@@ -15,8 +17,11 @@ public final class SmartRule extends Base {
 	/** Puzzle object. Set in the constructor. */
 	private final Puzzle puzzle;
 
-	/** Solver object. Set in the validate method. */
+	/** Solver object. Set in the validate method, and used on every thread that has not bound a solver of its own. */
 	ISolver solver;
+
+	/** Solver object bound to each thread that solves the puzzle as one of many sessions. */
+	private final ThreadLocal<ISolver> sessions = new ThreadLocal<>();
 	
 	@Override
 	public String toString() { return "SmartRule"; }
@@ -32,19 +37,128 @@ public final class SmartRule extends Base {
 		this.puzzle = puzzle;
 	}
 	
+	/**
+	 * Binds the solver to the current thread, so the rules invoked on this thread read and mark its grid instead of the grid
+	 * of the solver given to the validate method. This lets many solvers share the puzzle, each on its own thread.<br>
+	 * Called by the ReferenceSolver before it invokes the rules, and with null after.
+	 * @param solver Solver, or null to unbind the solver of the current thread.
+	 */
+	void bind(final ISolver solver) {
+		if (solver == null) sessions.remove(); else sessions.set(solver);
+	}
+	
+	/**
+	 * Returns the solver bound to the current thread, otherwise the solver of the validate method.
+	 * Each rule function reads this once per invocation.
+	 * @return Solver.
+	 */
+	private ISolver getSolver() {
+		ISolver session = sessions.get();
+		return session != null ? session : solver;
+	}
+	
+	// <editor-fold defaultstate="collapsed" desc="Descriptor">
+	
+	/** Kind of a rule function returned by SmartRule. */
+	public enum Kind {
+		MatchAtLeastOne("matchAtLeastOne"),
+		MatchOneToExactlyOne("matchOneToExactlyOne"),
+		MatchOneToOne("matchOneToOne"),
+		MatchAllDifferent("matchAllDifferent"),
+		MatchOneList("matchOneList"),
+		IsNotBetween("isNotBetween"),
+		IsRelated("isRelated"),
+		InOppositeGroup("inOppositeGroup"),
+		InSameGroup("inSameGroup"),
+		Ordering("ordering");
+		
+		public final String name;
+		
+		Kind(String name) {
+			this.name = name;
+		}
+		
+		@Override
+		public String toString() { return name; }
+	}
+	
+	/**
+	 * The Descriptor class is the kind and the parameters of a rule function returned by SmartRule.<br>
+	 * Each method that returns a rule function sets Rule.descriptor, so an engine other than a Solver, such as the SatSolver,
+	 * can enforce the rule without invoking the function. Parameters that the kind does not use are null.
+	 */
+	public static final class Descriptor extends Base {
+		/** Kind of the function. */
+		public final Kind kind;
+		
+		/** Noun 1. */
+		public final Noun noun1;
+		
+		/** Array of nouns for noun 1. */
+		public final List<Noun> nouns1;
+		
+		/** Array of nouns for noun 2. For isNotBetween, this is noun 2 and noun 3. */
+		public final List<Noun> nouns2;
+		
+		/** 2D-array of nouns for matchOneList. */
+		public final List<List<Noun>> array2;
+		
+		/** Link for isRelated. */
+		public final Link link;
+		
+		/** Noun type of the slots for isNotBetween, inOppositeGroup, inSameGroup, and ordering. */
+		public final NounType nounType;
+		
+		/** Group of each slot for inOppositeGroup and inSameGroup. */
+		public final int[] map;
+		
+		@Override
+		public String toString() { return kind.name; }
+		
+		@Override
+		public String asString() {
+			return "kind=" + Q + kind + Q + " noun1=" + Q + noun1 + Q + " nouns1=" + Q + nouns1 + Q + " nouns2=" + Q + nouns2 + Q + " array2=" + Q + array2 + Q + " link=" + Q + link + Q + " nounType=" + Q + nounType + Q;
+		}
+		
+		/**
+		 * Constructor.
+		 * @param kind Kind of the function.
+		 * @param noun1 Noun 1, or null.
+		 * @param nouns1 Array of nouns for noun 1, or null.
+		 * @param nouns2 Array of nouns for noun 2, or null.
+		 * @param array2 2D-array of nouns, or null.
+		 * @param link Link, or null.
+		 * @param nounType Noun type, or null.
+		 * @param map Array of groups, or null.
+		 */
+		Descriptor(final Kind kind, final Noun noun1, final List<Noun> nouns1, final List<Noun> nouns2, final List<List<Noun>> array2, final Link link, final NounType nounType, final int[] map) {
+			this.kind = kind;
+			this.noun1 = noun1;
+			this.nouns1 = nouns1;
+			this.nouns2 = nouns2;
+			this.array2 = array2;
+			this.link = link;
+			this.nounType = nounType;
+			this.map = map;
+		}
+	}
+	
+	// </editor-fold>
+	
 	// <editor-fold defaultstate="collapsed" desc="matchAtLeastOne">
 	
 	/**
 	 * Returns true if noun 1 can be with any noun 2 in the list.
 	 * Called by SmartRule.getMatchAtLeastOne.
+	 * @param solver Solver.
 	 * @param noun1 Noun 1.
 	 * @param nouns2 List of nouns.
 	 * @return Boolean.
 	 */
-	private boolean canBeWith2(final Noun noun1, final List<Noun> nouns2) {
+	private boolean canBeWith2(final ISolver solver, final Noun noun1, final List<Noun> nouns2) {
 		for (Noun noun2 : nouns2) {
 			if (noun1.type == noun2.type) continue;
-			if (Mark.getPairNounNum(noun1, noun2.type) == noun2.num) return true;
+			if (solver.getPairNounNum(noun1, noun2.type) == noun2.num) return true;
 			if (solver.canBeWith(noun1, noun2)) return true;
 		}
 		return false;
@@ -54,15 +168,16 @@ public final class SmartRule extends Base {
 	 * Returns noun 2 from the list if it is the only noun that can be with noun1.<br>
 	 * Note: This returns null if noun 1 is already with a noun 2.
 	 * Called by SmartRule.getMatchAtLeastOne
+	 * @param solver Solver.
 	 * @param noun1 Noun 1.
 	 * @param nouns2 List of nouns.
 	 * @return Noun.
 	 */
-	private Noun isOnlyNoun(final Noun noun1, final List<Noun> nouns2) {
+	private Noun isOnlyNoun(final ISolver solver, final Noun noun1, final List<Noun> nouns2) {
 		Noun noun = null;
 		for (Noun noun2 : nouns2) {
 			if (noun1.type == noun2.type) continue;
-			if (Mark.getPairNoun(noun1, noun2.type) == noun2) return null;
+			if (solver.getPairNoun(noun1, noun2.type) == noun2) return null;
 			if (!solver.canBeWith(noun1, noun2)) continue;
 			if (noun != null) return null;
 			noun = noun2;
@@ -79,17 +194,18 @@ public final class SmartRule extends Base {
 	 * @return Function matchAtLeastOne
 	 */
 	public Function<Mark, Integer> getMatchAtLeastOne(final Rule rule, final Noun noun1, final List<Noun> nouns2) {
+		rule.descriptor = new Descriptor(Kind.MatchAtLeastOne, noun1, null, nouns2, null, null, null, null);
 		return mark -> {
+			final ISolver solver = getSolver();
 			int rs = 0;
 
 			// Violation if noun1 cannot be with any noun in nouns2.
-			if (!canBeWith2(noun1, nouns2)) return -1;
+			if (!canBeWith2(solver, noun1, nouns2)) return -1;
 
 			// Trigger if noun1 can only be with one noun in nouns2.
-			Noun noun2 = isOnlyNoun(noun1, nouns2);
+			Noun noun2 = isOnlyNoun(solver, noun1, nouns2);
 			if (noun2 != null) {
-				String msg = noun1.name + " must be with " + noun2.name + ".";
-				rs = solver.addMarkByRule(mark, rule, ' ', noun1, Puzzle.Is, noun2, msg);
+				rs = solver.addMarkByRule(mark, rule, ' ', noun1, puzzle.Is, noun2, () -> noun1.name + " must be with " + noun2.name + ".");
 			}
 
 			// Example: For "Dog Duty", Whiley belongs to a woman.
@@ -98,18 +214,16 @@ public final class SmartRule extends Base {
 			for (NounType nounType : puzzle.nounTypes) {
 				if (noun1.type == nounType) continue;
 				for (Noun nounX : nounType.nouns) {
-					if (solver.getGridVerb(noun1, nounX) == Puzzle.IsNot) continue;
+					if (solver.getGridVerb(noun1, nounX) == puzzle.IsNot) continue;
 					boolean ok = false;
 					for (Noun noun : nouns2) {
-						if (noun.type == nounType || solver.getGridVerb(noun, nounX) != Puzzle.IsNot) {
+						if (noun.type == nounType || solver.getGridVerb(noun, nounX) != puzzle.IsNot) {
 							ok = true;
 							break;
 						}
 					}
 					if (!ok) {
-						String msg = "SmartRule.matchAtLeastOne: No item in list can be with " + nounX.name + ".";
-						//print(msg);
-						rs = solver.addMarkByRule(mark, rule, ' ', noun1, Puzzle.IsNot, nounX, msg);
+						rs = solver.addMarkByRule(mark, rule, ' ', noun1, puzzle.IsNot, nounX, () -> "SmartRule.matchAtLeastOne: No item in list can be with " + nounX.name + ".");
 						if (rs != 0) return rs;
 					}
 				}
@@ -131,7 +245,9 @@ public final class SmartRule extends Base {
 	 * @return Function matchOneToExactlyOne.
 	 */
 	public Function<Mark, Integer> getMatchOneToExactlyOne(final Rule rule, final List<Noun> nouns1, final List<Noun> nouns2) {
+		rule.descriptor = new Descriptor(Kind.MatchOneToExactlyOne, null, nouns1, nouns2, null, null, null, null);
 		return mark -> {
+			final ISolver solver = getSolver();
 			int rs = 0;
 
 			// Example: ModernNovels has exactly one of the two men (Oscar, Peter) chose a Faulkner novel ("Light in August", "Absalom! Absalom!").
@@ -160,7 +276,7 @@ public final class SmartRule extends Base {
 					if (noun2.type == noun1.type) continue;
 
 					// Abort if noun1 is already with noun2.
-					if (Mark.isPair(noun1, noun2)) {
+					if (solver.getPairNoun(noun1, noun2.type) == noun2) {
 						scanFlag = false;
 						break;
 					}
@@ -193,8 +309,7 @@ public final class SmartRule extends Base {
 					// There is only one noun1 that can be with noun2.
 					Noun noun1 = nouns1.get(i1);
 					Noun noun2 = nouns2.get(i2);
-					String msg = noun1.name + " must be with " + noun2.name + ".";
-					rs = solver.addMarkByRule(mark, rule, ' ', noun1, Puzzle.Is, noun2, msg);
+					rs = solver.addMarkByRule(mark, rule, ' ', noun1, puzzle.Is, noun2, () -> noun1.name + " must be with " + noun2.name + ".");
 					if (rs != 0) return rs;
 				}
 				else {
@@ -210,7 +325,7 @@ public final class SmartRule extends Base {
 			}
 
 			// Rule violation if the number of matches between nouns in list1 and list2 is more than one.
-			if (SmartRule.getNumMatches(nouns1, nouns2) > 1) return -1;
+			if (countMatches(solver, nouns1, nouns2) > 1) return -1;
 
 			return rs;
 		};
@@ -232,13 +347,44 @@ public final class SmartRule extends Base {
 		}
 		return cnt;
 	}
+
+	/**
+	 * Returns the number of matches (zero or more) between the nouns in both lists, where the pairs are read through the solver.
+	 * @param solver Solver.
+	 * @param nouns1 Array of nouns for noun 1.
+	 * @param nouns2 Array of nouns for noun 2.
+	 * @return Number of matches.
+	 */
+	private int countMatches(final ISolver solver, final List<Noun> nouns1, final List<Noun> nouns2) {
+		int cnt = 0;
+		for (Noun noun1 : nouns1) {
+			for (Noun noun2 : nouns2) {
+				if (noun2.type == noun1.type) continue;
+				if (solver.getPairNoun(noun1, noun2.type) == noun2) ++cnt;
+			}
+		}
+		return cnt;
+	}
 	
 	// </editor-fold>
 	
 	// <editor-fold defaultstate="collapsed" desc="matchOneToOne">
 	
+	/** Message for trigger a of matchOneToOne. */
+	private static final String MSG_ONE_TO_ONE_A = "Only one of each noun in list2 can be with one of each noun in list1.";
+	
+	/** Message for trigger b of matchOneToOne. */
+	private static final String MSG_ONE_TO_ONE_B = "Only one of each noun in list1 can be with one of each noun in list2.";
+	
+	/** Message for trigger c of matchOneToOne. */
+	private static final String MSG_ONE_TO_ONE_C = "Only one noun in list2 is available for noun1.";
+	
+	/** Message for trigger d of matchOneToOne. */
+	private static final String MSG_ONE_TO_ONE_D = "Only one noun in list1 is available for noun2.";
+	
 	/**
 	 * Returns the matchOneToOne function to enforce rule where each noun in nouns1 is uniquely matched with one noun in nouns2.<br>
+	 * The function keeps the verb numbers of the grid in a scratch array of each thread, so it does not allocate anything when it is invoked.<br>
 	 * See puzzles: ModernNovels, SmallTownMotels.
 	 * @param rule Rule.
 	 * @param nouns1 Array of nouns for noun 1.
@@ -246,122 +392,385 @@ public final class SmartRule extends Base {
 	 * @return Function matchOneToOne.
 	 */
 	public Function<Mark, Integer> getMatchOneToOne(final Rule rule, final List<Noun> nouns1, final List<Noun> nouns2) {
-		int listLength = nouns1.size();
-		Verb[][] grid = Helper.getArray2D(listLength, listLength, null);
+		rule.descriptor = new Descriptor(Kind.MatchOneToOne, null, nouns1, nouns2, null, null, null, null);
+		final int listLength = nouns1.size();
+		final Noun[] list1 = nouns1.toArray(new Noun[0]);
+		final Noun[] list2 = nouns2.toArray(new Noun[0]);
+		final int rows = list1.length;
+		final int cols = list2.length;
+		
+		// Scratch grid of verb numbers of each thread, where grid[row * cols + col] is for list1[row] and list2[col].
+		final ThreadLocal<int[]> grids = ThreadLocal.withInitial(() -> new int[rows * cols]);
+		final int isNot = puzzle.IsNot.num;
+		final int is = puzzle.Is.num;
+		final int maybe = puzzle.Maybe.num;
+		
 		return mark -> {
+			final ISolver solver = getSolver();
+			final int[] grid = grids.get();
 			int rs = 0;
 
 			// Populate the grid with the current marks. Enter 'X' if both nouns have the same type.
-			for (int row = 0; row < nouns1.size(); row++) {
-				Noun noun1 = nouns1.get(row);
-				for (int col = 0; col < nouns2.size(); col++) {
-					Noun noun2 = nouns2.get(col);
-					grid[row][col] = solver.getGridVerb(noun1, noun2);
-					if (noun1.type == noun2.type) grid[row][col] = Puzzle. IsNot;
+			for (int row = 0; row < rows; row++) {
+				Noun noun1 = list1[row];
+				for (int col = 0; col < cols; col++) {
+					Noun noun2 = list2[col];
+					grid[row * cols + col] = (noun1.type == noun2.type) ? isNot : solver.getGridVerb(noun1, noun2).num;
 				}
 			}
 
 			// a) Rule violation if there is more than one 'O' per row (may not happen too often).
 			// Trigger: If a row has one 'O', enter 'X' for the other cols in that row.
-			for (int row = 0; row < nouns1.size(); row++) {
-				Noun noun1 = nouns1.get(row);
+			for (int row = 0; row < rows; row++) {
 				int cnt = 0;
-				for (int col = 0; col < nouns2.size(); col++) {
-					if (grid[row][col] == Puzzle.Is) ++cnt;
-				}
-				if (cnt > 1) {
-					//print("DBG SmartGrid a) Too many positive marks in row!");
-					return 1;
+				for (int col = 0; col < cols; col++) {
+					if (grid[row * cols + col] == is) ++cnt;
 				}
+				if (cnt > 1) return 1;
 				if (cnt == 1) {
-					for (int col = 0; col < nouns2.size(); col++) {
-						Noun noun2 = nouns2.get(col);
-						if (grid[row][col] != Puzzle.Maybe) continue;
-						String msg = "Only one of each noun in list2 can be with one of each noun in list1.";
-						//print(msg);
-						rs = solver.addMarkByRule(mark, rule, 'a', noun1, Puzzle.IsNot, noun2, msg);
+					for (int col = 0; col < cols; col++) {
+						int i = row * cols + col;
+						if (grid[i] != maybe) continue;
+						rs = solver.addMarkByRule(mark, rule, 'a', list1[row], puzzle.IsNot, list2[col], MSG_ONE_TO_ONE_A);
 						if (rs != 0) return rs;
-						grid[row][col] = Puzzle.IsNot;
+						grid[i] = isNot;
 					}
 				}
 			}
 
 			// b) Rule violation if there is more than one 'O' per col (may not happen too often).
 			// Trigger: If a col has one 'O', enter 'X' for the other rows in that col.
-			for (int col = 0; col < nouns2.size(); col++) {
-				Noun noun2 = nouns2.get(col);
+			for (int col = 0; col < cols; col++) {
 				int cnt = 0;
-				for (int row = 0; row < nouns1.size(); row++) {
-					if (grid[row][col] == Puzzle.Is) ++cnt;
-				}
-				if (cnt > 1) {
-					//print("DBG SmartGrid b) Too many positive marks in col!");
-					return 1;
+				for (int row = 0; row < rows; row++) {
+					if (grid[row * cols + col] == is) ++cnt;
 				}
+				if (cnt > 1) return 1;
 				if (cnt == 1) {
-					for (int row = 0; row < nouns1.size(); row++) {
-						Noun noun1 = nouns1.get(row);
-						if (grid[row][col] != Puzzle.Maybe) continue;
-						String msg = "Only one of each noun in list1 can be with one of each noun in list2.";
-						//print(msg);
-						rs = solver.addMarkByRule(mark, rule, 'b', noun1, Puzzle.IsNot, noun2, msg);
+					for (int row = 0; row < rows; row++) {
+						int i = row * cols + col;
+						if (grid[i] != maybe) continue;
+						rs = solver.addMarkByRule(mark, rule, 'b', list1[row], puzzle.IsNot, list2[col], MSG_ONE_TO_ONE_B);
 						if (rs != 0) return rs;
-						grid[row][col] = Puzzle.IsNot;
+						grid[i] = isNot;
 					}
 				}
 			}
 
 			// c) Rule violation if there is all 'X' in the row (may not happen too often).
 			// Trigger: If a row has all 'X' except one '?', enter 'O' for the '?'.
-			for (int row = 0; row < nouns1.size(); row++) {
-				Noun noun1 = nouns1.get(row);
-				int i = -1;
-				int[] cnts = new int[] {0, 0, 0};
-				for (int col = 0; col < nouns2.size(); col++) {
-					Verb verb = grid[row][col];
-					cnts[verb.num] += 1;
-					if (verb == Puzzle.Maybe) i = col;
-				}
-				if (cnts[0] == listLength) {
-					//print("SmartGrid c) All negative marks in row!");
-					return 1;
-				}
-				if (cnts[0] == listLength - 1 && cnts[1] == 0 && cnts[2] == 1) {
-					Noun noun2 = nouns2.get(i);
-					String msg = "Only one noun in list2 is available for noun1.";
-					//print(msg);
-					rs = solver.addMarkByRule(mark, rule, 'c', noun1, Puzzle.Is, noun2, msg);
+			for (int row = 0; row < rows; row++) {
+				int k = -1;
+				int cntNot = 0, cntIs = 0, cntMaybe = 0;
+				for (int col = 0; col < cols; col++) {
+					int verb = grid[row * cols + col];
+					if (verb == isNot) ++cntNot;
+					else if (verb == is) ++cntIs;
+					else { ++cntMaybe; k = col; }
+				}
+				if (cntNot == listLength) return 1;
+				if (cntNot == listLength - 1 && cntIs == 0 && cntMaybe == 1) {
+					rs = solver.addMarkByRule(mark, rule, 'c', list1[row], puzzle.Is, list2[k], MSG_ONE_TO_ONE_C);
 					if (rs != 0) return rs;
-					grid[row][i] = Puzzle.Is;
+					grid[row * cols + k] = is;
 				}
 			}
 
 			// d) Rule violation if there is all 'X' in the col (may not happen too often).
 			// Trigger: if a col has all 'X' except one '?', enter 'O' for the '?'.
-			for (int col = 0; col < nouns2.size(); col++) {
-				Noun noun2 = nouns2.get(col);
-				int i = -1;
-				int[] cnts = new int[] {0, 0, 0};
-				for (int row = 0; row < nouns1.size(); row++) {
-					Verb verb = grid[row][col];
-					cnts[verb.num] += 1;
-					if (verb == Puzzle.Maybe) i = row;
-				}
-				if (cnts[0] == listLength) {
-					//print("SmartGrid d) All negative marks in col!");
-					return 1;
-				}
-				if (cnts[0] == listLength - 1 && cnts[1] == 0 && cnts[2] == 1) {
-					Noun noun1 = nouns1.get(i);
-					String msg = "Only one noun in list1 is available for noun2.";
-					//print(msg);
-					rs = solver.addMarkByRule(mark, rule, 'd', noun1, Puzzle.Is, noun2, msg);
+			for (int col = 0; col < cols; col++) {
+				int k = -1;
+				int cntNot = 0, cntIs = 0, cntMaybe = 0;
+				for (int row = 0; row < rows; row++) {
+					int verb = grid[row * cols + col];
+					if (verb == isNot) ++cntNot;
+					else if (verb == is) ++cntIs;
+					else { ++cntMaybe; k = row; }
+				}
+				if (cntNot == listLength) return 1;
+				if (cntNot == listLength - 1 && cntIs == 0 && cntMaybe == 1) {
+					rs = solver.addMarkByRule(mark, rule, 'd', list1[k], puzzle.Is, list2[col], MSG_ONE_TO_ONE_D);
 					if (rs != 0) return rs;
-					grid[i][col] = Puzzle.Is;
+					grid[k * cols + col] = is;
 				}
 			}
 
-			//printGrid();
+			return rs;
+		};
+	}
+	
+	// </editor-fold>
+	
+	// <editor-fold defaultstate="collapsed" desc="matchAllDifferent">
+	
+	/** Message for trigger a of matchAllDifferent. */
+	private static final String MSG_ALL_DIFFERENT_A = "No one-to-one matching of list1 with list2 can use this pair.";
+	
+	/** Message for trigger b of matchAllDifferent. */
+	private static final String MSG_ALL_DIFFERENT_B = "Every one-to-one matching of list1 with list2 uses this pair.";
+	
+	/**
+	 * The All Different class prunes the grid of two lists of nouns where each noun in list1 is with a different noun in list2.<br>
+	 * It finds a maximum matching of the possible pairs, and then removes every pair that is not in any maximum matching.
+	 * A pair is in some maximum matching if it is in the matching, if both nouns are in the same strongly connected component
+	 * of the alternating graph, or if noun 2 can be reached by an alternating path from an unmatched noun in list2.<br>
+	 * The scratch arrays are allocated once, so each invocation only reads the grid and enters marks. An instance is used by one thread at a time.
+	 */
+	private final class AllDifferent {
+		private final Rule rule;
+		private final Noun[] list1;
+		private final Noun[] list2;
+		private final int rows;
+		private final int cols;
+		
+		/** True if list1[row] may be with list2[col], as edge[row * cols + col]. */
+		private final boolean[] edge;
+		
+		/** True if the edge is in some maximum matching. */
+		private final boolean[] usable;
+		
+		/** Column matched with each row, or -1. */
+		private final int[] matchRow;
+		
+		/** Row matched with each column, or -1. */
+		private final int[] matchCol;
+		
+		/** Visit stamp of each column for the augmenting paths. */
+		private final int[] seen;
+		private int stamp = 0;
+		
+		/** Tarjan data of the alternating graph, where rows are nodes 0 to rows - 1 and columns follow. */
+		private final int[] index;
+		private final int[] low;
+		private final int[] comp;
+		private final int[] stack;
+		private final boolean[] onStack;
+		private int counter;
+		private int top;
+		private int comps;
+		
+		AllDifferent(final Rule rule, final List<Noun> nouns1, final List<Noun> nouns2) {
+			this.rule = rule;
+			this.list1 = nouns1.toArray(new Noun[0]);
+			this.list2 = nouns2.toArray(new Noun[0]);
+			this.rows = list1.length;
+			this.cols = list2.length;
+			this.edge = new boolean[rows * cols];
+			this.usable = new boolean[rows * cols];
+			this.matchRow = new int[rows];
+			this.matchCol = new int[cols];
+			this.seen = new int[cols];
+			int nodes = rows + cols;
+			this.index = new int[nodes];
+			this.low = new int[nodes];
+			this.comp = new int[nodes];
+			this.stack = new int[nodes];
+			this.onStack = new boolean[nodes];
+		}
+		
+		/**
+		 * Checks for a rule violation, and enters the marks of the pairs that are not in any maximum matching.
+		 * @param solver Solver.
+		 * @param mark Mark.
+		 * @return Zero for success, nonzero for failure.
+		 */
+		int propagate(final ISolver solver, final Mark mark) {
+			int rs = 0;
+			
+			// Populate the edges. A positive cell removes the other edges of its row and column.
+			for (int row = 0; row < rows; row++) {
+				for (int col = 0; col < cols; col++) {
+					Noun noun1 = list1[row], noun2 = list2[col];
+					edge[row * cols + col] = noun1.type != noun2.type && solver.getGridVerb(noun1, noun2) != puzzle.IsNot;
+				}
+			}
+			for (int row = 0; row < rows; row++) {
+				for (int col = 0; col < cols; col++) {
+					Noun noun1 = list1[row], noun2 = list2[col];
+					if (noun1.type == noun2.type || solver.getGridVerb(noun1, noun2) != puzzle.Is) continue;
+					for (int k = 0; k < cols; k++) edge[row * cols + k] = (k == col);
+					for (int k = 0; k < rows; k++) edge[k * cols + col] = (k == row);
+				}
+			}
+			
+			// Violation if some noun in list1 cannot be matched.
+			Arrays.fill(matchRow, -1);
+			Arrays.fill(matchCol, -1);
+			for (int row = 0; row < rows; row++) {
+				++stamp;
+				if (!augment(row)) return -1;
+			}
+			
+			// Find the edges in some maximum matching.
+			for (int i = 0; i < usable.length; i++) usable[i] = false;
+			for (int row = 0; row < rows; row++) usable[row * cols + matchRow[row]] = true;
+			findComponents();
+			for (int row = 0; row < rows; row++) {
+				for (int col = 0; col < cols; col++) {
+					if (edge[row * cols + col] && comp[row] == comp[rows + col]) usable[row * cols + col] = true;
+				}
+			}
+			markFreePaths();
+			
+			// a) Trigger: A pair that is not in any maximum matching is not together.
+			for (int row = 0; row < rows; row++) {
+				for (int col = 0; col < cols; col++) {
+					int i = row * cols + col;
+					Noun noun1 = list1[row], noun2 = list2[col];
+					if (usable[i] || noun1.type == noun2.type || solver.getGridVerb(noun1, noun2) != puzzle.Maybe) continue;
+					rs = solver.addMarkByRule(mark, rule, 'a', noun1, puzzle.IsNot, noun2, MSG_ALL_DIFFERENT_A);
+					if (rs != 0) return rs;
+				}
+			}
+			
+			// b) Trigger: If a noun in list1 has only one pair in any maximum matching, then they are together.
+			for (int row = 0; row < rows; row++) {
+				int k = -1, cnt = 0;
+				for (int col = 0; col < cols; col++) {
+					if (usable[row * cols + col]) { ++cnt; k = col; }
+				}
+				if (cnt != 1 || solver.getGridVerb(list1[row], list2[k]) != puzzle.Maybe) continue;
+				rs = solver.addMarkByRule(mark, rule, 'b', list1[row], puzzle.Is, list2[k], MSG_ALL_DIFFERENT_B);
+				if (rs != 0) return rs;
+			}
+			
+			return rs;
+		}
+		
+		/**
+		 * Returns true if an augmenting path from the row was found and applied, otherwise false.
+		 * @param row Row.
+		 * @return boolean.
+		 */
+		private boolean augment(final int row) {
+			for (int col = 0; col < cols; col++) {
+				if (!edge[row * cols + col] || seen[col] == stamp) continue;
+				seen[col] = stamp;
+				if (matchCol[col] < 0 || augment(matchCol[col])) {
+					matchRow[row] = col;
+					matchCol[col] = row;
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * Marks the edges on alternating paths from the unmatched columns. A path goes from a column to a row by an unmatched edge,
+		 * then from the row to its matched column.
+		 */
+		private void markFreePaths() {
+			for (int col = 0; col < cols; col++) seen[col] = 0;
+			++stamp;
+			int head = 0, tail = 0;
+			for (int col = 0; col < cols; col++) {
+				if (matchCol[col] < 0) { seen[col] = stamp; stack[tail++] = col; }
+			}
+			while (head < tail) {
+				int col = stack[head++];
+				for (int row = 0; row < rows; row++) {
+					if (!edge[row * cols + col] || matchRow[row] == col) continue;
+					usable[row * cols + col] = true;
+					int next = matchRow[row];
+					if (seen[next] != stamp) { seen[next] = stamp; stack[tail++] = next; }
+				}
+			}
+		}
+		
+		/**
+		 * Finds the strongly connected components of the alternating graph, where a matched edge goes from the row to the column,
+		 * and an unmatched edge goes from the column to the row.
+		 */
+		private void findComponents() {
+			Arrays.fill(index, -1);
+			counter = 0;
+			top = 0;
+			comps = 0;
+			for (int v = 0; v < rows + cols; v++) {
+				if (index[v] < 0) connect(v);
+			}
+		}
+		
+		/**
+		 * Visits the node for Tarjan's algorithm.
+		 * @param v Node.
+		 */
+		private void connect(final int v) {
+			index[v] = low[v] = counter++;
+			stack[top++] = v;
+			onStack[v] = true;
+			if (v < rows) {
+				int w = rows + matchRow[v];
+				visit(v, w);
+			}
+			else {
+				int col = v - rows;
+				for (int row = 0; row < rows; row++) {
+					if (edge[row * cols + col] && matchRow[row] != col) visit(v, row);
+				}
+			}
+			if (low[v] == index[v]) {
+				int w;
+				do {
+					w = stack[--top];
+					onStack[w] = false;
+					comp[w] = comps;
+				} while (w != v);
+				++comps;
+			}
+		}
+		
+		/**
+		 * Follows the edge from node v to node w for Tarjan's algorithm.
+		 * @param v Node v.
+		 * @param w Node w.
+		 */
+		private void visit(final int v, final int w) {
+			if (index[w] < 0) {
+				connect(w);
+				low[v] = Math.min(low[v], low[w]);
+			}
+			else if (onStack[w]) {
+				low[v] = Math.min(low[v], index[w]);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the matchAllDifferent function to enforce the rule where each noun in nouns1 is with a different noun in nouns2.<br>
+	 * This prunes every pair that cannot be in any one-to-one matching, which is stronger than the row and column patterns of matchOneToOne.
+	 * @param rule Rule.
+	 * @param nouns1 Array of nouns for noun 1.
+	 * @param nouns2 Array of nouns for noun 2, which must have at least as many nouns as nouns1.
+	 * @return Function matchAllDifferent.
+	 */
+	public Function<Mark, Integer> getMatchAllDifferent(final Rule rule, final List<Noun> nouns1, final List<Noun> nouns2) {
+		rule.descriptor = new Descriptor(Kind.MatchAllDifferent, null, nouns1, nouns2, null, null, null, null);
+		final ThreadLocal<AllDifferent> allDifferents = ThreadLocal.withInitial(() -> new AllDifferent(rule, nouns1, nouns2));
+		return mark -> allDifferents.get().propagate(getSolver(), mark);
+	}
+	
+	/**
+	 * Returns the allDifferent law for every pair of noun types, where each noun of one type is with a different noun of the other type.<br>
+	 * The puzzle must have all of its noun types before this is called. The rule is used as the reference of the marks.
+	 * The function is for the solver that calls this, so it must only be invoked on one thread at a time.
+	 * @param rule Rule.
+	 * @return Function allDifferent.
+	 */
+	public Function<Mark, Integer> getAllDifferentLaw(final Rule rule) {
+		final List<AllDifferent> list = new ArrayList<>();
+		for (int t1 = 0; t1 < puzzle.nounTypes.size(); t1++) {
+			for (int t2 = t1 + 1; t2 < puzzle.nounTypes.size(); t2++) {
+				list.add(new AllDifferent(rule, puzzle.nounTypes.get(t1).nouns, puzzle.nounTypes.get(t2).nouns));
+			}
+		}
+		return mark -> {
+			final ISolver solver = getSolver();
+			int rs = 0;
+			for (AllDifferent allDifferent : list) {
+				rs = allDifferent.propagate(solver, mark);
+				if (rs != 0) return rs;
+			}
 			return rs;
 		};
 	}
@@ -374,33 +783,67 @@ public final class SmartRule extends Base {
 	 * Returns true if there is coverage (or nothing to do), otherwise false for no coverage.<br>
 	 * Coverage means there is at least one unique noun from list1 that can be with a noun from list2.
 	 * Called by SmartRule.getMatchOneList.
+	 * @param solver Solver.
 	 * @param nouns1 Array of nouns for noun 1.
 	 * @param nouns2 Array of nouns for noun 2.
 	 * @return boolean.
 	 */
-	private boolean hasCoverage(final List<Noun> nouns1, final List<Noun> nouns2) {
+	private boolean hasCoverage(final ISolver solver, final List<Noun> nouns1, final List<Noun> nouns2) {
 		boolean rs = true;
 		int n = nouns1.size();
 
-		// Find unique nouns in nouns2 that can be with the nouns in nouns1.
-		List<Noun> nouns = new ArrayList<>();
+		// Find unique nouns in nouns2 that can be with the nouns in nouns1, as a bit mask of one or more words per noun type.
+		int words = (puzzle.maxNouns + 63) >>> 6;
+		long[] nouns = new long[puzzle.maxNounTypes * words];
 		int nbad = 0;
 		for (Noun noun1 : nouns1) {
 			int cnt = 0;
 			for (Noun noun2 : nouns2) {
 				Verb verb = solver.getGridVerb(noun1, noun2);
-				if (verb == Puzzle.Is) return rs;
-				if (verb == Puzzle.IsNot) continue;
+				if (verb == puzzle.Is) return rs;
+				if (verb == puzzle.IsNot) continue;
 				++cnt;
-				if (!nouns.contains(noun2)) nouns.add(noun2);
+				nouns[(noun2.type.num - 1) * words + ((noun2.num - 1) >>> 6)] |= 1L << (noun2.num - 1);
 			}
 			if (cnt == 0) ++nbad;
 		}
 
-		rs = (nouns.isEmpty() || nbad == n) || (nouns.size() >= n && nbad == 0);
+		int size = 0;
+		for (long word : nouns) size += Long.bitCount(word);
+		rs = (size == 0 || nbad == n) || (size >= n && nbad == 0);
 		return rs;
 	}
 
+	/**
+	 * Returns true if a list of array2 has a noun that can be with each noun in nouns1, otherwise false.<br>
+	 * This does not depend on the order of the marks, so a complete grid where the nouns are not with one list is a violation.
+	 * Called by SmartRule.getMatchOneList.
+	 * @param solver Solver.
+	 * @param nouns1 Array of nouns for noun 1.
+	 * @param array2 2D-array of nouns.
+	 * @return boolean.
+	 */
+	private boolean hasCandidateList(final ISolver solver, final List<Noun> nouns1, final List<List<Noun>> array2) {
+		for (List<Noun> nouns2 : array2) {
+			boolean ok = true;
+			for (Noun noun1 : nouns1) {
+				boolean found = false;
+				for (Noun noun2 : nouns2) {
+					if (noun1.type != noun2.type && solver.getGridVerb(noun1, noun2) != puzzle.IsNot) {
+						found = true;
+						break;
+					}
+				}
+				if (!found) {
+					ok = false;
+					break;
+				}
+			}
+			if (ok) return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Returns the matchOneList function to enforce the rule where the nouns in nouns1 must be with one list of nouns in array2.<br>
 	 * See puzzles: Overdue, PlayingCards.
@@ -410,12 +853,20 @@ public final class SmartRule extends Base {
 	 * @return Function matchOneList.
 	 */
 	public Function<Mark, Integer> getMatchOneList(final Rule rule, final List<Noun> nouns1, final List<List<Noun>> array2) {
+		rule.descriptor = new Descriptor(Kind.MatchOneList, null, nouns1, null, array2, null, null, null);
+		final NounSet[] sets2 = new NounSet[array2.size()];
+		for (int i = 0; i < sets2.length; i++) sets2[i] = NounSet.of(puzzle, array2.get(i));
+		rule.traceable = false;
 		return mark -> {
+			final ISolver solver = getSolver();
 			int rs = 0;
 
+			// Violation if no list of array2 has a noun that can be with each noun in nouns1.
+			if (!hasCandidateList(solver, nouns1, array2)) return -1;
+
 			// Trigger if a noun1 is with a noun2 in one of the lists of array2, then the other nouns in nouns1 are not with any nouns in the other lists.
 			// Example: If Wicks is with a Wednesday, then Jones is not with a Thursday.
-			if (mark.verb == Puzzle.Is) {
+			if (mark.verb == puzzle.Is) {
 				Noun nounX1 = null;
 				Noun nounX2 = null;
 				int idx2 = -1;
@@ -423,12 +874,12 @@ public final class SmartRule extends Base {
 					if (mark.noun1 == noun) {
 						nounX1 = mark.noun1;
 						nounX2 = mark.noun2;
-						idx2 = SmartRule.getListIndex(nounX2, array2);
+						idx2 = SmartRule.getListIndex(nounX2, sets2);
 					}
 					else if (mark.noun2 == noun) {
 						nounX1 = mark.noun2;
 						nounX2 = mark.noun1;
-						idx2 = SmartRule.getListIndex(nounX2, array2);
+						idx2 = SmartRule.getListIndex(nounX2, sets2);
 					}
 					if (idx2 > -1) break;
 				}
@@ -443,8 +894,7 @@ public final class SmartRule extends Base {
 							if (noun2 == nounX2) continue;
 							for (Noun noun1 : nouns1) {
 								if (noun1 == nounX1) continue;
-								String msg = noun1.name + " is not with " + noun2.name + ".";
-								rs = solver.addMarkByRule(mark, rule, 'a', noun1, Puzzle.IsNot, noun2, msg);
+								rs = solver.addMarkByRule(mark, rule, 'a', noun1, puzzle.IsNot, noun2, () -> noun1.name + " is not with " + noun2.name + ".");
 								if (rs != 0) return rs;
 							}
 						}
@@ -454,11 +904,10 @@ public final class SmartRule extends Base {
 
 			// Trigger for each nouns2 in array2, if there are not enough nouns in nouns2 to cover nouns1, then the nouns in nouns2 are not with the nouns in nouns1.
 			for (List<Noun> nouns2 : array2) {
-				if (hasCoverage(nouns1, nouns2)) continue;
+				if (hasCoverage(solver, nouns1, nouns2)) continue;
 				for (Noun noun1 : nouns1) {
 					for (Noun noun2 : nouns2) {
-						String msg = noun1.name + " is not with " + noun2.name + ".";
-						rs = solver.addMarkByRule(mark, rule, 'a', noun1, Puzzle.IsNot, noun2, msg);
+						rs = solver.addMarkByRule(mark, rule, 'a', noun1, puzzle.IsNot, noun2, () -> noun1.name + " is not with " + noun2.name + ".");
 						if (rs != 0) return rs;
 					}
 				}
@@ -468,19 +917,15 @@ public final class SmartRule extends Base {
 	}
 	
 	/**
-	 * Returns the zero-based index of the list that the given noun is in, otherwise -1.
+	 * Returns the zero-based index of the set that the given noun is in, otherwise -1.
 	 * @param nounX Noun X.
-	 * @param lists 2D-array of nouns.
+	 * @param sets Array of noun sets.
 	 * @return Zero-based index.
 	 */
-	private static int getListIndex(final Noun nounX, final List<List<Noun>> lists) {
+	private static int getListIndex(final Noun nounX, final NounSet[] sets) {
 		int rs = -1;
-		int idx = rs;
-		for (List<Noun> list : lists) {
-			++idx;
-			for (Noun noun : list) {
-				if (noun == nounX) return idx;
-			}
+		for (int idx = 0; idx < sets.length; idx++) {
+			if (sets[idx].contains(nounX)) return idx;
 		}
 		return rs;
 	}
@@ -500,14 +945,16 @@ public final class SmartRule extends Base {
 	 * @return Function isNotBetween.
 	 */
 	public Function<Mark, Integer> getIsNotBetween(final Rule rule, final NounType nounType, final Noun noun1, final Noun noun2, final Noun noun3) {
+		rule.descriptor = new Descriptor(Kind.IsNotBetween, noun1, null, Arrays.asList(noun2, noun3), null, null, nounType, null);
 		return mark -> {
+			final ISolver solver = getSolver();
 			//print("isNotBetween mark=" + mark.num + " nounType=" + nounType.num + " noun1=" + Q + noun1 + Q + " noun2=" + Q + noun2 + Q + " noun3=" + Q + noun3 + Q);
 			int rs = 0;
 
 			// Use one-based numbers for each slot.
-			int slotA = (noun1.type == nounType) ? noun1.num : Mark.getPairNounNum(noun1, nounType);
-			int slotB = (noun2.type == nounType) ? noun2.num : Mark.getPairNounNum(noun2, nounType);
-			int slotC = (noun3.type == nounType) ? noun3.num : Mark.getPairNounNum(noun3, nounType);
+			int slotA = (noun1.type == nounType) ? noun1.num : solver.getPairNounNum(noun1, nounType);
+			int slotB = (noun2.type == nounType) ? noun2.num : solver.getPairNounNum(noun2, nounType);
+			int slotC = (noun3.type == nounType) ? noun3.num : solver.getPairNounNum(noun3, nounType);
 
 			// Violation if nounA is between nounB and nounC.
 			if (slotA > 0 && slotB > 0 && slotC > 0) {
@@ -548,12 +995,12 @@ public final class SmartRule extends Base {
 				ch = 'f'; noun = noun1; i1 = slotC; i2 = slotB - 1;
 			}
 
-			String msg = noun1.name + " is not between " + noun2.name + " and " + noun3.name + ".";
+			Supplier<String> msg = () -> noun1.name + " is not between " + noun2.name + " and " + noun3.name + ".";
 			for (int i = i1; i < i2; i++) {
 				Noun slot = nounType.nouns.get(i);
-				if (solver.getGridVerb(noun, slot) == Puzzle.IsNot) continue;
+				if (solver.getGridVerb(noun, slot) == puzzle.IsNot) continue;
 				//print(noun.name + " is not with " + slot.name);
-				rs = solver.addMarkByRule(mark, rule, ch, noun, Puzzle.IsNot, slot, msg);
+				rs = solver.addMarkByRule(mark, rule, ch, noun, puzzle.IsNot, slot, msg);
 				if (rs != 0) return rs;
 			}
 
@@ -575,11 +1022,13 @@ public final class SmartRule extends Base {
 	 * @return Function isRelated.
 	 */
 	public Function<Mark, Integer> getIsRelated(final Rule rule, final Noun noun1, final Link link, final List<Noun> nouns2) {
+		rule.descriptor = new Descriptor(Kind.IsRelated, noun1, null, nouns2, null, link, null, null);
 		return mark -> {
+			final ISolver solver = getSolver();
 			//print("isRelated rule=" + Q + rule.num + Q + " noun1=" + Q + noun1 + Q + " link=" + Q + link + Q + " nouns2=" + Q + nouns2 + Q);
 			int rs = 0;
 			NounType slots = link.nounType;
-			Noun slot1 = (noun1.type == slots) ? noun1 : Mark.getPairNoun(noun1, slots);
+			Noun slot1 = (noun1.type == slots) ? noun1 : solver.getPairNoun(noun1, slots);
 
 			if (slot1 != null) {
 				Noun nounB, slotB;
@@ -588,19 +1037,19 @@ public final class SmartRule extends Base {
 				// Violation if all nouns are slotted and noun1 is not related to any noun in nouns2.
 				ok = false;
 				for (Noun noun2 : nouns2) {
-					Noun slot = (noun2.type == slots) ? noun2 : Mark.getPairNoun(noun2, slots);
-					if (slot == null || link.f.apply(slot1, slot) == Puzzle.Is) { ok = true; break; }
+					Noun slot = (noun2.type == slots) ? noun2 : solver.getPairNoun(noun2, slots);
+					if (slot == null || link.isRelated(slot1, slot)) { ok = true; break; }
 				}
 				if (!ok) return -1;
 
 				// Violation if all slots related to noun1 are full, and no slot contains a noun in the list.
 				// Example: For AllTiredOut, rule 2 is "Grace stood next to at least one man in line (clue 7)."
 				// If Grace is 1st and a woman is 2nd, then this is a violation.
+				List<Noun> related = link.getRelatedSlots(slot1);
 				ok = false;
-				for (Noun slot : slots.nouns) {
-					if (link.f.apply(slot1, slot) != Puzzle.Is) continue;
+				for (Noun slot : related) {
 					for (Noun noun : nouns2) {
-						nounB = Mark.getPairNoun(slot, noun.type);
+						nounB = solver.getPairNoun(slot, noun.type);
 						if (nounB == null || nounB == noun) { ok = true; break; }
 					}
 					if (ok) break;
@@ -609,10 +1058,9 @@ public final class SmartRule extends Base {
 
 				// Violation if all slots related to noun1 cannot have any noun in nouns2.
 				ok = false;
-				for (Noun slot : slots.nouns) {
-					if (link.f.apply(slot1, slot) != Puzzle.Is) continue;
+				for (Noun slot : related) {
 					for (Noun noun : nouns2) {
-						if (solver.getGridVerb(slot, noun) != Puzzle.IsNot) { ok = true; break; }
+						if (solver.getGridVerb(slot, noun) != puzzle.IsNot) { ok = true; break; }
 					}
 					if (ok) break;
 				}
@@ -622,10 +1070,9 @@ public final class SmartRule extends Base {
 				// Example: If I manually place Grace first and Ethan fifth, then Jeff must be second!
 				nounB = null; slotB = null;
 				int cnt = 0;
-				for (Noun slot : slots.nouns) {
-					if (link.f.apply(slot1, slot) != Puzzle.Is) continue;
+				for (Noun slot : related) {
 					for (Noun noun : nouns2) {
-						Noun slotX = Mark.getPairNoun(noun, slots);
+						Noun slotX = solver.getPairNoun(noun, slots);
 						if (slotX == slot) {
 							//print(noun.name + " is already in " + slot.name);
 							cnt = 2;
@@ -633,7 +1080,7 @@ public final class SmartRule extends Base {
 						}
 						if (slotX != null) continue;
 
-						if (solver.getGridVerb(noun, slot) == Puzzle.Maybe) {
+						if (solver.getGridVerb(noun, slot) == puzzle.Maybe) {
 							//print(noun.name + " may be in " + slot.name);
 							if (++cnt > 1) break;
 							nounB = noun; slotB = slot;
@@ -643,9 +1090,10 @@ public final class SmartRule extends Base {
 				}
 				//print("cnt=" + cnt);
 				if (cnt == 1) {
-					String msg = nounB.name + " must be with " + slotB.name + ".";
-					//print("Rule " + rule.num + " " + msg);
-					rs = solver.addMarkByRule(mark, rule, 'a', nounB, Puzzle.Is, slotB, msg);
+					final Noun nounX = nounB, slotX = slotB;
+					Supplier<String> msg = () -> nounX.name + " must be with " + slotX.name + ".";
+					//print("Rule " + rule.num + " " + msg.get());
+					rs = solver.addMarkByRule(mark, rule, 'a', nounB, puzzle.Is, slotB, msg);
 					if (rs != 0) return rs;
 				}
 			}
@@ -653,13 +1101,12 @@ public final class SmartRule extends Base {
 			// Trigger if noun1 can be in slotX, but no noun in list can be related to slotX, then noun1 cannot be in slotX.
 			if (slot1 == null) {
 				for (Noun slotX : slots.nouns) {
-					if (solver.getGridVerb(noun1, slotX) != Puzzle.Maybe) continue;
+					if (solver.getGridVerb(noun1, slotX) != puzzle.Maybe) continue;
 					boolean ok = false;
-					String msg = noun1.name + " is not with " + slotX.name + ".";
-					for (Noun slot2 : slots.nouns) {
-						if (link.f.apply(slotX, slot2) != Puzzle.Is) continue;
+					Supplier<String> msg = () -> noun1.name + " is not with " + slotX.name + ".";
+					for (Noun slot2 : link.getRelatedSlots(slotX)) {
 						for (Noun noun2 : nouns2) {
-							if (solver.getGridVerb(noun2, slot2) != Puzzle.IsNot) {
+							if (solver.getGridVerb(noun2, slot2) != puzzle.IsNot) {
 								ok = true;
 								break;
 							}
@@ -667,8 +1114,8 @@ public final class SmartRule extends Base {
 						if (ok) break;
 					}
 					if (!ok) {
-						//print("SmartRule.isRelated Rule " + rule.num + " on mark " + mark.num + ". " + msg);
-						rs = solver.addMarkByRule(mark, rule, 'b', noun1, Puzzle.IsNot, slotX, msg);
+						//print("SmartRule.isRelated Rule " + rule.num + " on mark " + mark.num + ". " + msg.get());
+						rs = solver.addMarkByRule(mark, rule, 'b', noun1, puzzle.IsNot, slotX, msg);
 						if (rs != 0) return rs;
 					}
 				}
@@ -695,11 +1142,13 @@ public final class SmartRule extends Base {
 	 * @return Function inOppositeGroup.
 	 */
 	public Function<Mark, Integer> getInOppositeGroup(final Rule rule, final Noun noun1, final Noun noun2, final NounType nounType, final int[] map, final String groupName, final String[] groupNames) {
+		rule.descriptor = new Descriptor(Kind.InOppositeGroup, noun1, null, Arrays.asList(noun2), null, null, nounType, map);
 		return mark -> {
+			final ISolver solver = getSolver();
 			int rs = 0;
 
-			Noun nounA = (noun1.type == nounType) ? noun1 : Mark.getPairNoun(noun1, nounType);
-			Noun nounB = (noun2.type == nounType) ? noun2 : Mark.getPairNoun(noun2, nounType);
+			Noun nounA = (noun1.type == nounType) ? noun1 : solver.getPairNoun(noun1, nounType);
+			Noun nounB = (noun2.type == nounType) ? noun2 : solver.getPairNoun(noun2, nounType);
 			if (nounA == null && nounB == null) return rs;
 
 			int g1 = (nounA == null) ? -1 : map[nounA.num - 1];
@@ -712,18 +1161,18 @@ public final class SmartRule extends Base {
 			}
 
 			// Triggers.
-			String msg = noun1.name + " and " + noun2.name + " have the opposite " + groupName + ".";
+			Supplier<String> msg = () -> noun1.name + " and " + noun2.name + " have the opposite " + groupName + ".";
 			for (Noun noun : nounType.nouns) {
 				// If noun1's group is known, then noun2 is not with a noun of that group.
 				if (nounA != null && map[noun.num - 1] == g1) {
-					//print(msg);
-					rs = solver.addMarkByRule(mark, rule, 'a', noun2, Puzzle.IsNot, noun, msg);
+					//print(msg.get());
+					rs = solver.addMarkByRule(mark, rule, 'a', noun2, puzzle.IsNot, noun, msg);
 					if (rs != 0) return rs;
 				}
 				// If noun2's group is known, then noun1 is not with a noun of that group.
 				if (nounB != null && map[noun.num - 1] == g2) {
-					//print(msg);
-					rs = solver.addMarkByRule(mark, rule, 'b', noun1, Puzzle.IsNot, noun, msg);
+					//print(msg.get());
+					rs = solver.addMarkByRule(mark, rule, 'b', noun1, puzzle.IsNot, noun, msg);
 					if (rs != 0) return rs;
 				}
 			}
@@ -737,11 +1186,13 @@ public final class SmartRule extends Base {
 	// <editor-fold defaultstate="collapsed" desc="inSameGroup">
 	
 	public Function<Mark, Integer> getInSameGroup(final Rule rule, final Noun noun1, final Noun noun2, final NounType nounType, final int[] map, final String groupName, final String[] groupNames) {
+		rule.descriptor = new Descriptor(Kind.InSameGroup, noun1, null, Arrays.asList(noun2), null, null, nounType, map);
 		return mark -> {
+			final ISolver solver = getSolver();
 			int rs = 0;
 
-			Noun nounA = (noun1.type == nounType) ? noun1 : Mark.getPairNoun(noun1, nounType);
-			Noun nounB = (noun2.type == nounType) ? noun2 : Mark.getPairNoun(noun2, nounType);
+			Noun nounA = (noun1.type == nounType) ? noun1 : solver.getPairNoun(noun1, nounType);
+			Noun nounB = (noun2.type == nounType) ? noun2 : solver.getPairNoun(noun2, nounType);
 
 			int g1 = (nounA == null) ? -1 : map[nounA.num - 1];
 			int g2 = (nounB == null) ? -1 : map[nounB.num - 1];
@@ -753,13 +1204,13 @@ public final class SmartRule extends Base {
 			}
 
 			// Triggers.
-			String msg = noun1.name + " and " + noun2.name + " have the same " + groupName + ".";
+			Supplier<String> msg = () -> noun1.name + " and " + noun2.name + " have the same " + groupName + ".";
 			// If noun1's group is known, then noun2 is not with a noun of another group.
 			if (nounA != null && nounB == null) {
 				for (Noun noun : nounType.nouns) {
 					if (map[noun.num - 1] == g1) continue;
-					//print(msg);
-					rs = solver.addMarkByRule(mark, rule, 'a', noun2, Puzzle.IsNot, noun, msg);
+					//print(msg.get());
+					rs = solver.addMarkByRule(mark, rule, 'a', noun2, puzzle.IsNot, noun, msg);
 					if (rs != 0) return rs;
 				}
 			}
@@ -768,8 +1219,8 @@ public final class SmartRule extends Base {
 			if (nounA == null && nounB != null) {
 				for (Noun noun : nounType.nouns) {
 					if (map[noun.num - 1] == g2) continue;
-					//print(msg);
-					rs = solver.addMarkByRule(mark, rule, 'b', noun1, Puzzle.IsNot, noun, msg);
+					//print(msg.get());
+					rs = solver.addMarkByRule(mark, rule, 'b', noun1, puzzle.IsNot, noun, msg);
 					if (rs != 0) return rs;
 				}
 			}
@@ -789,14 +1240,14 @@ public final class SmartRule extends Base {
 			for (Noun noun : nounType.nouns) {
 				int i = noun.num - 1;
 				Verb verb1 = solver.getGridVerb(noun, noun1);
-				if (verb1 == Puzzle.Maybe) {
+				if (verb1 == puzzle.Maybe) {
 					if (map[i] == 0) group1Noun1.add(noun); else group2Noun1.add(noun);
 				}
 				Verb verb2 = solver.getGridVerb(noun, noun2);
-				if (verb2 == Puzzle.Maybe) {
+				if (verb2 == puzzle.Maybe) {
 					if (map[i] == 0) group1Noun2.add(noun); else group2Noun2.add(noun);
 				}
-				if (verb1 == Puzzle.Maybe || verb2 == Puzzle.Maybe) {
+				if (verb1 == puzzle.Maybe || verb2 == puzzle.Maybe) {
 					if (map[i] == 0) group1.add(noun); else group2.add(noun);
 				}
 			}
@@ -804,14 +1255,12 @@ public final class SmartRule extends Base {
 			//print(mark.num + " Group 1: " + group1.size() + ","  + group1Noun1.size() + "," + group1Noun2.size() + " Group 2: " + group2.size() + "," + group2Noun1.size() + "," + group2Noun2.size());
 
 			if ((group1.size() < 2 || group1Noun1.size() < 1 || group1Noun2.size() < 1) && group1.size() > 0) {
-				msg = "There are not enough " + groupNames[0] + " for " + noun1.name + " and " + noun2.name + ".";
-				rs = doListEliminator2(rule, mark, noun1, noun2, group1Noun1, group1Noun2, msg);
+				rs = doListEliminator2(solver, rule, mark, noun1, noun2, group1Noun1, group1Noun2, () -> "There are not enough " + groupNames[0] + " for " + noun1.name + " and " + noun2.name + ".");
 				if (rs != 0) return rs;
 			}
 
 			if ((group2.size() < 2 || group2Noun1.size() < 1 || group2Noun2.size() < 1) && group2.size() > 0) {
-				msg = "There are not enough " + groupNames[1] + " for " + noun1.name + " and " + noun2.name + ".";
-				rs = doListEliminator2(rule, mark, noun1, noun2, group2Noun1, group2Noun2, msg);
+				rs = doListEliminator2(solver, rule, mark, noun1, noun2, group2Noun1, group2Noun2, () -> "There are not enough " + groupNames[1] + " for " + noun1.name + " and " + noun2.name + ".");
 				if (rs != 0) return rs;
 			}
 			return rs;
@@ -822,27 +1271,126 @@ public final class SmartRule extends Base {
 	 * Triggers marks for the given rule where<br>
 	 * (a) The nouns in list 1 are not with noun 1, and<br>
 	 * (b) The nouns in list 2 are not with noun 2.
+	 * @param solver Solver.
 	 * @param rule Rule.
 	 * @param mark Mark.
 	 * @param noun1 Noun 1.
 	 * @param noun2 Noun 2.
 	 * @param list1 Nouns that are not with noun 1.
 	 * @param list2 Nouns that are not with noun 2.
-	 * @param msg Message.
+	 * @param msg Supplier of the message.
 	 * @return Zero for success, nonzero for failure.
 	 */
-	private int doListEliminator2(final Rule rule, final Mark mark, final Noun noun1, final Noun noun2, final ArrayList<Noun> list1, final ArrayList<Noun> list2, final String msg) {
+	private int doListEliminator2(final ISolver solver, final Rule rule, final Mark mark, final Noun noun1, final Noun noun2, final ArrayList<Noun> list1, final ArrayList<Noun> list2, final Supplier<String> msg) {
 		int rs = 0;
 		for (Noun noun : list1) {
-			rs = solver.addMarkByRule(mark, rule, 'a', noun1, Puzzle.IsNot, noun, msg);
+			rs = solver.addMarkByRule(mark, rule, 'a', noun1, puzzle.IsNot, noun, msg);
 			if (rs != 0) return rs;
 		}
 		for (Noun noun : list2) {
-			rs = solver.addMarkByRule(mark, rule, 'b', noun2, Puzzle.IsNot, noun, msg);
+			rs = solver.addMarkByRule(mark, rule, 'b', noun2, puzzle.IsNot, noun, msg);
 			if (rs != 0) return rs;
 		}
 		return rs;
 	}
 	
 	// </editor-fold>
+	
+	// <editor-fold defaultstate="collapsed" desc="ordering">
+	
+	/**
+	 * Returns the ordering function that propagates the slot bounds of every noun through the ordering facts of the noun type.<br>
+	 * The ordering engine is built from the facts the first time the function is invoked on each thread, since the puzzle must be validated.
+	 * The engine only relaxes the facts that are enabled when it is invoked.<br>
+	 * See puzzles built with addFactsInSequence and the isLessThan, isMoreThan, isLessBy, or isMoreBy links.
+	 * @param rule Rule.
+	 * @param nounType Noun type of the slots.
+	 * @return Function ordering.
+	 */
+	public Function<Mark, Integer> getOrdering(final Rule rule, final NounType nounType) {
+		rule.descriptor = new Descriptor(Kind.Ordering, null, null, null, null, null, nounType, null);
+		final ThreadLocal<OrderingEngine> engines = new ThreadLocal<>();
+		return mark -> {
+			OrderingEngine engine = engines.get();
+			if (engine == null) engines.set(engine = new OrderingEngine(puzzle, nounType));
+			return engine.propagate(getSolver(), mark, rule);
+		};
+	}
+	
+	// </editor-fold>
+	
+	// <editor-fold defaultstate="collapsed" desc="Noun Sets">
+	
+	// Convenience overloads that pass the nouns of the sets to the list functions above, which do the work.
+	
+	/**
+	 * Returns the matchAtLeastOne function where the nouns are given by a noun set.
+	 * @param rule Rule.
+	 * @param noun1 Noun 1.
+	 * @param nouns2 Set of nouns for noun 2.
+	 * @return Function matchAtLeastOne.
+	 */
+	public Function<Mark, Integer> getMatchAtLeastOne(final Rule rule, final Noun noun1, final NounSet nouns2) {
+		return getMatchAtLeastOne(rule, noun1, nouns2.asList());
+	}
+	
+	/**
+	 * Returns the matchOneToExactlyOne function where the nouns are given by noun sets.
+	 * @param rule Rule.
+	 * @param nouns1 Set of nouns for noun 1.
+	 * @param nouns2 Set of nouns for noun 2.
+	 * @return Function matchOneToExactlyOne.
+	 */
+	public Function<Mark, Integer> getMatchOneToExactlyOne(final Rule rule, final NounSet nouns1, final NounSet nouns2) {
+		return getMatchOneToExactlyOne(rule, nouns1.asList(), nouns2.asList());
+	}
+	
+	/**
+	 * Returns the matchOneToOne function where the nouns are given by noun sets.
+	 * @param rule Rule.
+	 * @param nouns1 Set of nouns for noun 1.
+	 * @param nouns2 Set of nouns for noun 2.
+	 * @return Function matchOneToOne.
+	 */
+	public Function<Mark, Integer> getMatchOneToOne(final Rule rule, final NounSet nouns1, final NounSet nouns2) {
+		return getMatchOneToOne(rule, nouns1.asList(), nouns2.asList());
+	}
+	
+	/**
+	 * Returns the matchAllDifferent function where the nouns are given by noun sets.
+	 * @param rule Rule.
+	 * @param nouns1 Set of nouns for noun 1.
+	 * @param nouns2 Set of nouns for noun 2.
+	 * @return Function matchAllDifferent.
+	 */
+	public Function<Mark, Integer> getMatchAllDifferent(final Rule rule, final NounSet nouns1, final NounSet nouns2) {
+		return getMatchAllDifferent(rule, nouns1.asList(), nouns2.asList());
+	}
+	
+	/**
+	 * Returns the matchOneList function where the nouns are given by noun sets.
+	 * @param rule Rule.
+	 * @param nouns1 Set of nouns for noun 1.
+	 * @param array2 List of noun sets.
+	 * @return Function matchOneList.
+	 */
+	public Function<Mark, Integer> getMatchOneList(final Rule rule, final NounSet nouns1, final List<NounSet> array2) {
+		List<List<Noun>> lists = new ArrayList<>(array2.size());
+		for (NounSet nouns2 : array2) lists.add(nouns2.asList());
+		return getMatchOneList(rule, nouns1.asList(), lists);
+	}
+	
+	/**
+	 * Returns the isRelated function where the nouns are given by a noun set.
+	 * @param rule Rule.
+	 * @param noun1 Noun 1.
+	 * @param link Link.
+	 * @param nouns2 Set of nouns for noun 2.
+	 * @return Function isRelated.
+	 */
+	public Function<Mark, Integer> getIsRelated(final Rule rule, final Noun noun1, final Link link, final NounSet nouns2) {
+		return getIsRelated(rule, noun1, link, nouns2.asList());
+	}
+	
+	// </editor-fold>
 }
@@ -0,0 +1,561 @@
+package com.mysterymaster.puzzle;
+
+import java.util.Arrays;
+
+/**
+ * The Solve State class holds the mutable data of one solving session of a compiled puzzle.<br>
+ * This is the grid, the pairs, the candidate domains, the enabled flags and hits of the facts and rules, and the names of the placers.<br>
+ * Every change is recorded on the trail, so the state can be undone to any earlier size of the trail.<br>
+ * A snapshot of the state shares structure with the state, so taking one before a guess and restoring it afterwards are both O(1).<br>
+ * @version 2026-10-16
+ */
+public final class SolveState extends Base {
+	/** Trail entry for a cell of the grid. */
+	private static final int CELL = 0;
+
+	/** Trail entry for the enabled flag of a fact. */
+	private static final int FACT = 1;
+
+	/** Trail entry for the enabled flag of a rule. */
+	private static final int RULE = 2;
+
+	/** Trail entry for the name of a placer. */
+	private static final int PLACER = 3;
+
+	/** Trail entry for a word of the candidate domains. */
+	private static final int DOMAIN = 4;
+
+	/** Immutable snapshot of a state. Several threads may create states from the same snapshot at once. */
+	public static final class Snapshot {
+		private final CompiledPuzzle puzzle;
+		private final PersistentWords.Snapshot grid;
+		private final PersistentWords.Snapshot pairs;
+		private final PersistentWords.Snapshot domains;
+		private final PersistentWords.Snapshot facts;
+		private final PersistentWords.Snapshot rules;
+		private final String[] names;
+
+		Snapshot(final SolveState state) {
+			this.puzzle = state.puzzle;
+			this.grid = state.grid.snapshot();
+			this.pairs = state.pairs.snapshot();
+			this.domains = state.domains.snapshot();
+			this.facts = state.factEnabled.snapshot();
+			this.rules = state.ruleEnabled.snapshot();
+			this.names = state.names;
+			state.namesShared = true;
+		}
+	}
+
+	/** Compiled puzzle shared by every state. */
+	public final CompiledPuzzle puzzle;
+
+	/** Grid of verbs. */
+	public final VerbGrid grid;
+
+	/** One plus the id of the noun of type t2 that is with each noun as pairs[id * maxNounTypes + t2], or zero. */
+	private final PersistentWords pairs;
+
+	/** Number of words of each candidate domain. */
+	private final int domainWords;
+
+	/**
+	 * Candidate domain of each noun for each noun type t2, as a bit mask of the nouns of type t2 the noun can still be with.<br>
+	 * A noun can be with a noun of another type if their cell is positive, or if it is possible and neither noun has a pair of the other's type.
+	 * The domain of a noun for its own type is the noun itself.
+	 */
+	private final PersistentWords domains;
+
+	/** Enabled flag of each fact (zero-based) as one bit per fact. */
+	private final PersistentWords factEnabled;
+
+	/** Number of times each fact was referenced. */
+	public final int[] factHits;
+
+	/** Enabled flag of each rule (zero-based) as one bit per rule. */
+	private final PersistentWords ruleEnabled;
+
+	/** Number of times each rule was referenced. */
+	public final int[] ruleHits;
+
+	/** Current name of each noun that is a placer, or null if the noun has its original name. */
+	private String[] names;
+
+	/** True if the names array is shared with a snapshot, so it must be copied before it is written. */
+	private boolean namesShared = false;
+
+	/** Trail of changes as (kind, a, b) triples. */
+	private int[] trail;
+
+	/** Old name of the placer for each PLACER entry, indexed by the entry number. */
+	private String[] trailNames;
+
+	/** Old word of the domains for each DOMAIN entry, indexed by the entry number. */
+	private long[] trailWords;
+
+	/** Number of entries on the trail. */
+	private int trailSize = 0;
+
+	@Override
+	public String toString() { return "SolveState"; }
+
+	@Override
+	public String asString() {
+		return "puzzle=" + Q + puzzle + Q + " trailSize=" + Q + trailSize + Q;
+	}
+
+	/**
+	 * Constructor.
+	 * @param puzzle Compiled puzzle.
+	 */
+	public SolveState(final CompiledPuzzle puzzle) {
+		this.puzzle = puzzle;
+		this.grid = new VerbGrid(puzzle.verbs, puzzle.maxNounTypes, puzzle.maxNouns);
+		this.pairs = new PersistentWords(puzzle.maxIds * puzzle.maxNounTypes);
+		this.domainWords = (puzzle.maxNouns + 63) >>> 6;
+		this.domains = new PersistentWords(puzzle.maxIds * puzzle.maxNounTypes * domainWords);
+		this.factEnabled = new PersistentWords((puzzle.maxFacts + 63) >>> 6);
+		this.factHits = new int[puzzle.maxFacts];
+		this.ruleEnabled = new PersistentWords((puzzle.maxRules + 63) >>> 6);
+		this.ruleHits = new int[puzzle.maxRules];
+		this.names = new String[puzzle.maxIds];
+		this.trail = new int[3 * 64];
+		this.trailNames = new String[64];
+		this.trailWords = new long[64];
+		reset();
+	}
+
+	/**
+	 * Constructor that copies the given state in O(1). The copy starts with an empty trail.
+	 * @param state Solve state.
+	 */
+	public SolveState(final SolveState state) {
+		this(state.snapshot());
+	}
+
+	/**
+	 * Constructor for the state of the snapshot, which is O(1). The state starts with an empty trail, and no hits.
+	 * @param snapshot Snapshot.
+	 */
+	public SolveState(final Snapshot snapshot) {
+		CompiledPuzzle p = snapshot.puzzle;
+		this.puzzle = p;
+		this.grid = new VerbGrid(p.verbs, p.maxNounTypes, p.maxNouns, snapshot.grid);
+		this.pairs = new PersistentWords(p.maxIds * p.maxNounTypes, snapshot.pairs);
+		this.domainWords = (p.maxNouns + 63) >>> 6;
+		this.domains = new PersistentWords(p.maxIds * p.maxNounTypes * domainWords, snapshot.domains);
+		this.factEnabled = new PersistentWords((p.maxFacts + 63) >>> 6, snapshot.facts);
+		this.factHits = new int[p.maxFacts];
+		this.ruleEnabled = new PersistentWords((p.maxRules + 63) >>> 6, snapshot.rules);
+		this.ruleHits = new int[p.maxRules];
+		this.names = snapshot.names;
+		this.namesShared = true;
+		this.trail = new int[3 * 64];
+		this.trailNames = new String[64];
+		this.trailWords = new long[64];
+	}
+
+	/** Resets the state to the initial values of the compiled puzzle, and clears the trail. */
+	public void reset() {
+		grid.reset();
+		pairs.fill(0L);
+		resetDomains();
+		factEnabled.fill(0L);
+		for (int f = 0; f < factHits.length; f++) setBit(factEnabled, f, puzzle.isFactEnabled(f));
+		Arrays.fill(factHits, 0);
+		ruleEnabled.fill(0L);
+		for (int r = 0; r < ruleHits.length; r++) setBit(ruleEnabled, r, puzzle.isRuleEnabled(r));
+		Arrays.fill(ruleHits, 0);
+		names = new String[puzzle.maxIds];
+		namesShared = false;
+		Arrays.fill(trailNames, null);
+		trailSize = 0;
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="Snapshots">
+
+	/**
+	 * Returns a snapshot of the state in O(1). Later changes to the state do not change the snapshot.
+	 * The hits are not part of the snapshot.
+	 * @return Snapshot.
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	/**
+	 * Restores the state of the snapshot in O(1), and clears the trail, so undo cannot go back past the snapshot.
+	 * @param snapshot Snapshot of a state of the same compiled puzzle.
+	 */
+	public void restore(final Snapshot snapshot) {
+		grid.restore(snapshot.grid);
+		pairs.restore(snapshot.pairs);
+		domains.restore(snapshot.domains);
+		factEnabled.restore(snapshot.facts);
+		ruleEnabled.restore(snapshot.rules);
+		names = snapshot.names;
+		namesShared = true;
+		Arrays.fill(trailNames, 0, Math.min(trailSize, trailNames.length), null);
+		trailSize = 0;
+	}
+
+	/**
+	 * Returns the bit at the given index of the words.
+	 * @param words Words.
+	 * @param i Index of the bit.
+	 * @return boolean.
+	 */
+	private static boolean getBit(final PersistentWords words, final int i) {
+		return (words.get(i >>> 6) & (1L << i)) != 0;
+	}
+
+	/**
+	 * Sets the bit at the given index of the words.
+	 * @param words Words.
+	 * @param i Index of the bit.
+	 * @param flag Value of the bit.
+	 */
+	private static void setBit(final PersistentWords words, final int i, final boolean flag) {
+		long word = words.get(i >>> 6);
+		words.set(i >>> 6, flag ? word | (1L << i) : word & ~(1L << i));
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Trail">
+
+	/**
+	 * Appends the entry to the trail.
+	 * @param kind Kind of entry.
+	 * @param a First value.
+	 * @param b Second value.
+	 * @return Zero-based number of the entry.
+	 */
+	private int push(final int kind, final int a, final int b) {
+		int i = 3 * trailSize;
+		if (i == trail.length) trail = Arrays.copyOf(trail, 2 * trail.length);
+		trail[i] = kind;
+		trail[i + 1] = a;
+		trail[i + 2] = b;
+		return trailSize++;
+	}
+
+	/**
+	 * Returns the number of entries on the trail. Pass this to undo to return to the current state.
+	 * @return Size of the trail.
+	 */
+	public int getTrailSize() { return trailSize; }
+
+	/**
+	 * Undoes every change after the trail had the given size.
+	 * @param size Size of the trail.
+	 */
+	public void undo(final int size) {
+		while (trailSize > size) {
+			int e = --trailSize;
+			int i = 3 * e;
+			int a = trail[i + 1];
+			int b = trail[i + 2];
+			switch (trail[i]) {
+				case CELL:
+					undoCell(a, b);
+					break;
+				case FACT:
+					setBit(factEnabled, a, b != 0);
+					break;
+				case RULE:
+					setBit(ruleEnabled, a, b != 0);
+					break;
+				case PLACER:
+					writeNames()[a] = trailNames[e];
+					trailNames[e] = null;
+					break;
+				case DOMAIN:
+					domains.set(a, trailWords[e]);
+					break;
+			}
+		}
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Grid">
+
+	/**
+	 * Returns the VerbGrid code of the cell given by the two noun ids.
+	 * @param id1 Zero-based id of noun 1.
+	 * @param id2 Zero-based id of noun 2.
+	 * @return Code.
+	 */
+	public int getCode(final int id1, final int id2) {
+		int n = puzzle.maxNouns;
+		return grid.get(id1 / n, id1 % n, id2 / n, id2 % n);
+	}
+
+	/**
+	 * Returns the id of the noun of the given noun type that is with the noun, or -1.
+	 * @param id Zero-based id of the noun.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @return Zero-based id, or -1.
+	 */
+	public int getPair(final int id, final int t2) {
+		return (int) pairs.get(id * puzzle.maxNounTypes + t2) - 1;
+	}
+
+	/**
+	 * Enters the code for the cell given by the two noun ids.<br>
+	 * Entering the positive code also pairs the two nouns.
+	 * @param id1 Zero-based id of noun 1.
+	 * @param id2 Zero-based id of noun 2.
+	 * @param code VerbGrid code of the negative or positive verb.
+	 * @return 1 if the cell was entered, 0 if the cell already had the code, or -1 if this is a contradiction.
+	 */
+	public int enter(final int id1, final int id2, final int code) {
+		int n = puzzle.maxNouns;
+		int t1 = id1 / n, t2 = id2 / n;
+		int old = grid.get(t1, id1 % n, t2, id2 % n);
+		if (old == code) return 0;
+		if (old != VerbGrid.MAYBE || t1 == t2) return -1;
+		if (code == VerbGrid.IS) {
+			if (getPair(id1, t2) >= 0 || getPair(id2, t1) >= 0) return -1;
+			pairs.set(id1 * puzzle.maxNounTypes + t2, id2 + 1);
+			pairs.set(id2 * puzzle.maxNounTypes + t1, id1 + 1);
+		}
+		grid.set(t1, id1 % n, t2, id2 % n, code);
+		push(CELL, id1, id2);
+		if (code == VerbGrid.IS)
+			pairDomains(id1, id2);
+		else
+			removeCandidate(id1, id2);
+		return 1;
+	}
+
+	/**
+	 * Resets the cell given by the two noun ids to the possible code, along with the pairs.
+	 * @param id1 Zero-based id of noun 1.
+	 * @param id2 Zero-based id of noun 2.
+	 */
+	private void undoCell(final int id1, final int id2) {
+		int n = puzzle.maxNouns;
+		int t1 = id1 / n, t2 = id2 / n;
+		int old = grid.set(t1, id1 % n, t2, id2 % n, VerbGrid.MAYBE);
+		if (old == VerbGrid.IS) {
+			pairs.set(id1 * puzzle.maxNounTypes + t2, 0L);
+			pairs.set(id2 * puzzle.maxNounTypes + t1, 0L);
+		}
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Candidate Domains">
+
+	/**
+	 * Returns the index of the first word of the domain of the noun for the noun type.
+	 * @param id Zero-based id of the noun.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @return Index.
+	 */
+	private int getDomainIndex(final int id, final int t2) {
+		return (id * puzzle.maxNounTypes + t2) * domainWords;
+	}
+
+	/** Sets every domain to the nouns of the other type, or to the noun itself for its own type. Called by reset. */
+	private void resetDomains() {
+		int n = puzzle.maxNouns;
+		domains.fill(0L);
+		for (int id = 0; id < puzzle.maxIds; id++) {
+			for (int t2 = 0; t2 < puzzle.maxNounTypes; t2++) {
+				int i = getDomainIndex(id, t2);
+				if (t2 == id / n) {
+					domains.set(i + ((id % n) >>> 6), 1L << (id % n));
+					continue;
+				}
+				for (int w = 0; w < domainWords; w++) {
+					int bits = Math.min(64, n - 64 * w);
+					domains.set(i + w, bits == 64 ? -1L : (1L << bits) - 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the word of the domains, and records the old word on the trail.
+	 * @param i Index of the word.
+	 * @param word New word.
+	 */
+	private void setDomainWord(final int i, final long word) {
+		long old = domains.get(i);
+		if (old == word) return;
+		int e = push(DOMAIN, i, 0);
+		if (e >= trailWords.length) trailWords = Arrays.copyOf(trailWords, Math.max(2 * trailWords.length, e + 1));
+		trailWords[e] = old;
+		domains.set(i, word);
+	}
+
+	/**
+	 * Removes noun 2 from the domain of noun 1, and noun 1 from the domain of noun 2.
+	 * @param id1 Zero-based id of noun 1.
+	 * @param id2 Zero-based id of noun 2.
+	 */
+	private void removeCandidate(final int id1, final int id2) {
+		int n = puzzle.maxNouns;
+		int i = getDomainIndex(id1, id2 / n) + ((id2 % n) >>> 6);
+		setDomainWord(i, domains.get(i) & ~(1L << (id2 % n)));
+		i = getDomainIndex(id2, id1 / n) + ((id1 % n) >>> 6);
+		setDomainWord(i, domains.get(i) & ~(1L << (id1 % n)));
+	}
+
+	/**
+	 * Reduces the domains after noun 1 is with noun 2. The domain of each noun for the other's type is the other noun,
+	 * and the other nouns of each noun's type can no longer be with the other noun.
+	 * @param id1 Zero-based id of noun 1.
+	 * @param id2 Zero-based id of noun 2.
+	 */
+	private void pairDomains(final int id1, final int id2) {
+		int n = puzzle.maxNouns;
+		int t1 = id1 / n, t2 = id2 / n;
+		for (int k = 0; k < n; k++) {
+			int x1 = t1 * n + k;
+			if (x1 != id1) removeCandidate(x1, id2);
+			int x2 = t2 * n + k;
+			if (x2 != id2) removeCandidate(id1, x2);
+		}
+	}
+
+	/**
+	 * Returns the given word of the domain of the noun for the noun type, where bit b of word w is for noun 64 * w + b of type t2.
+	 * @param id Zero-based id of the noun.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @param w Zero-based number of the word, which is zero if there are at most 64 nouns per noun type.
+	 * @return Word.
+	 */
+	public long getDomain(final int id, final int t2, final int w) {
+		return domains.get(getDomainIndex(id, t2) + w);
+	}
+
+	/**
+	 * Returns the domain of the noun for the noun type when there are at most 64 nouns per noun type.
+	 * @param id Zero-based id of the noun.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @return Bit mask where bit b is for noun b of type t2.
+	 */
+	public long getDomain(final int id, final int t2) {
+		return domains.get(getDomainIndex(id, t2));
+	}
+
+	/**
+	 * Returns the number of nouns of the noun type that the noun can still be with.
+	 * @param id Zero-based id of the noun.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @return Number of candidates.
+	 */
+	public int getDomainSize(final int id, final int t2) {
+		int i = getDomainIndex(id, t2);
+		int cnt = 0;
+		for (int w = 0; w < domainWords; w++) cnt += Long.bitCount(domains.get(i + w));
+		return cnt;
+	}
+
+	/**
+	 * Returns the id of the first noun of the noun type that the noun can still be with, otherwise -1.
+	 * @param id Zero-based id of the noun.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @return Zero-based id, or -1.
+	 */
+	public int getDomainFirst(final int id, final int t2) {
+		int i = getDomainIndex(id, t2);
+		for (int w = 0; w < domainWords; w++) {
+			long word = domains.get(i + w);
+			if (word != 0) return t2 * puzzle.maxNouns + 64 * w + Long.numberOfTrailingZeros(word);
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the id of the only noun of the noun type that the noun can be with when the noun has no pair of that type yet,
+	 * otherwise -1. This is a loner that can be entered as the positive verb.
+	 * @param id Zero-based id of the noun.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @return Zero-based id, or -1.
+	 */
+	public int getLoner(final int id, final int t2) {
+		if (getPair(id, t2) >= 0 || getDomainSize(id, t2) != 1) return -1;
+		return getDomainFirst(id, t2);
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Facts, Rules, and Placers">
+
+	/**
+	 * Returns true if the fact is enabled, otherwise false.
+	 * @param f Zero-based number of the fact.
+	 * @return boolean.
+	 */
+	public boolean isFactEnabled(final int f) { return getBit(factEnabled, f); }
+
+	/**
+	 * Sets the enabled flag of the fact.
+	 * @param f Zero-based number of the fact.
+	 * @param enabled Enabled flag.
+	 */
+	public void setFactEnabled(final int f, final boolean enabled) {
+		if (getBit(factEnabled, f) == enabled) return;
+		push(FACT, f, enabled ? 0 : 1);
+		setBit(factEnabled, f, enabled);
+	}
+
+	/**
+	 * Returns true if the rule is enabled, otherwise false.
+	 * @param r Zero-based number of the rule.
+	 * @return boolean.
+	 */
+	public boolean isRuleEnabled(final int r) { return getBit(ruleEnabled, r); }
+
+	/**
+	 * Sets the enabled flag of the rule.
+	 * @param r Zero-based number of the rule.
+	 * @param enabled Enabled flag.
+	 */
+	public void setRuleEnabled(final int r, final boolean enabled) {
+		if (getBit(ruleEnabled, r) == enabled) return;
+		push(RULE, r, enabled ? 0 : 1);
+		setBit(ruleEnabled, r, enabled);
+	}
+
+	/**
+	 * Returns the current name of the noun, which differs from the original name if the noun is a placer.
+	 * @param id Zero-based id of the noun.
+	 * @return Name.
+	 */
+	public String getName(final int id) {
+		String name = names[id];
+		return name == null ? puzzle.getNoun(id).getOriginalName() : name;
+	}
+
+	/**
+	 * Updates the name of the noun if it is a placer.
+	 * @param id Zero-based id of the noun.
+	 * @param name Name.
+	 */
+	public void setPlacer(final int id, final String name) {
+		int e = push(PLACER, id, 0);
+		if (e >= trailNames.length) trailNames = Arrays.copyOf(trailNames, Math.max(2 * trailNames.length, e + 1));
+		trailNames[e] = names[id];
+		writeNames()[id] = name;
+	}
+
+	/**
+	 * Returns the names array so it can be written, after copying it if it is shared with a snapshot.
+	 * @return Array of names.
+	 */
+	private String[] writeNames() {
+		if (namesShared) {
+			names = names.clone();
+			namesShared = false;
+		}
+		return names;
+	}
+
+	// </editor-fold>
+}
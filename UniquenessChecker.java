@@ -0,0 +1,278 @@
+package com.mysterymaster.puzzle;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The Uniqueness Checker class proves that the facts and rules of a puzzle have exactly one solution, or returns two solutions as counterexamples.<br>
+ * The root deduces the marks of levels 1 to 3 with a ReferenceSolver. Each open branch then branches on the noun with the fewest candidates,
+ * where each child assumes one candidate and deduces the marks of levels 1 and 2. The branches are explored by a ParallelSearch,
+ * which stops as soon as two solutions are found. Since the children of a branch assume different nouns, the two solutions differ.<br>
+ * The puzzle is validated once, and every worker has a ReferenceSolver of the same compiled puzzle, which only reads the puzzle.
+ * Each worker starts from the cells of the root, so the assumptions of level 3 are only made once.
+ * A branch is the list of its assumptions, which a worker replays from its root, keeping the assumptions it shares with its last branch.<br>
+ * @version 2026-10-16
+ */
+public final class UniquenessChecker extends Base {
+	/** Status of the result of one puzzle. */
+	public enum Status {
+		Unique("Unique"),
+		Multiple("Multiple"),
+		None("None");
+
+		public final String name;
+
+		Status(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() { return name; }
+	}
+
+	/** Result of one puzzle. */
+	public static final class Result extends Base {
+		/** Puzzle. */
+		public final Puzzle puzzle;
+
+		/** Status. */
+		public final Status status;
+
+		/** Solutions in the same layout as Puzzle.answer. This has one solution if unique, two if multiple, and none otherwise. */
+		public final List<int[][]> solutions;
+
+		/** Number of branches explored. */
+		public final long branches;
+
+		/** Wall-clock time in nanoseconds. */
+		public final long nanos;
+
+		@Override
+		public String toString() { return puzzle + " " + status; }
+
+		@Override
+		public String asString() {
+			return "puzzle=" + Q + puzzle + Q + " status=" + Q + status + Q + " solutions=" + Q + solutions.size() + Q + " branches=" + Q + branches + Q + " nanos=" + Q + nanos + Q;
+		}
+
+		/**
+		 * Constructor.
+		 * @param puzzle Puzzle.
+		 * @param solutions Solutions.
+		 * @param branches Number of branches explored.
+		 * @param nanos Wall-clock time in nanoseconds.
+		 */
+		Result(final Puzzle puzzle, final List<int[][]> solutions, final long branches, final long nanos) {
+			this.puzzle = puzzle;
+			this.status = solutions.isEmpty() ? Status.None : solutions.size() == 1 ? Status.Unique : Status.Multiple;
+			this.solutions = solutions;
+			this.branches = branches;
+			this.nanos = nanos;
+		}
+	}
+
+	/** Parallel search of the branches. */
+	private final ParallelSearch search;
+
+	@Override
+	public String toString() { return "UniquenessChecker"; }
+
+	@Override
+	public String asString() {
+		return search.asString();
+	}
+
+	/** Constructor that uses every processor. */
+	public UniquenessChecker() {
+		this.search = new ParallelSearch();
+	}
+
+	/**
+	 * Constructor.
+	 * @param parallelism Number of workers.
+	 */
+	public UniquenessChecker(final int parallelism) {
+		this.search = new ParallelSearch(parallelism);
+	}
+
+	/** Shuts down the workers. */
+	public void shutdown() {
+		search.shutdown();
+	}
+
+	/**
+	 * Checks if the puzzle has exactly one solution. The puzzle is validated by the calling thread, then only read by the workers.
+	 * @param puzzle Puzzle.
+	 * @return Result.
+	 */
+	public Result check(final Puzzle puzzle) {
+		long t0 = System.nanoTime();
+		ReferenceSolver solver = new ReferenceSolver();
+		puzzle.validate(solver);
+		Check check = new Check(puzzle.compile());
+		check.workers.put(Thread.currentThread(), new Worker(check, solver));
+		Node root = new Node(check, new int[0]);
+		ParallelSearch.Result result = search.run(root, 2);
+		return new Result(puzzle, result.solutions, result.branches, System.nanoTime() - t0);
+	}
+
+	/** Shared data of one check. */
+	private static final class Check {
+		/** Compiled puzzle shared by the workers. */
+		final CompiledPuzzle compiled;
+
+		/** Worker of each thread. */
+		final ConcurrentHashMap<Thread, Worker> workers = new ConcurrentHashMap<>();
+
+		/** Cells of the root, which are set by the first worker. */
+		volatile int[] cells = null;
+
+		/**
+		 * Constructor.
+		 * @param compiled Compiled puzzle.
+		 */
+		Check(final CompiledPuzzle compiled) {
+			this.compiled = compiled;
+		}
+
+		/**
+		 * Returns the worker of the current thread, which is created the first time.
+		 * The worker deduces its root outside the map, since only the current thread adds its own worker.
+		 * @return Worker.
+		 */
+		Worker getWorker() {
+			Thread thread = Thread.currentThread();
+			Worker worker = workers.get(thread);
+			if (worker == null) {
+				worker = new Worker(this, new ReferenceSolver());
+				workers.putIfAbsent(thread, worker);
+			}
+			return worker;
+		}
+	}
+
+	/** Solver of one thread. */
+	private static final class Worker {
+		/** Solver. */
+		final ReferenceSolver solver;
+
+		/** Status of the root, which is zero or CONTRADICTION. */
+		final int rootStatus;
+
+		/** Assumptions in effect as pairs of noun ids. */
+		int[] path = new int[0];
+
+		/** Number of marks before each assumption in effect. */
+		int[] counts = new int[0];
+
+		/** Number of assumptions in effect that succeeded. */
+		int depth = 0;
+
+		/**
+		 * Constructor that deduces the marks of the root. The first worker deduces the marks of levels 1 to 3,
+		 * and every other worker starts from its cells.
+		 * @param check Check.
+		 * @param solver Solver.
+		 */
+		Worker(final Check check, final ReferenceSolver solver) {
+			this.solver = solver;
+			int[] cells = check.cells;
+			if (cells == null) {
+				rootStatus = solver.start(check.compiled, null);
+				check.cells = solver.getCells();
+			}
+			else {
+				rootStatus = solver.startFrom(check.compiled, cells);
+			}
+		}
+
+		/**
+		 * Enters the assumptions of the branch, after undoing the assumptions in effect that are not shared with it.
+		 * @param assumptions Assumptions as pairs of noun ids.
+		 * @return Zero for success, nonzero for a contradiction.
+		 */
+		int enter(final int[] assumptions) {
+			if (rootStatus != 0) return rootStatus;
+			int n = assumptions.length / 2, common = 0;
+			while (common < depth && common < n && path[2 * common] == assumptions[2 * common] && path[2 * common + 1] == assumptions[2 * common + 1]) ++common;
+			if (common < depth) solver.undo(counts[common]);
+			if (counts.length < n) counts = Arrays.copyOf(counts, n);
+			path = assumptions;
+			depth = common;
+			for (int i = common; i < n; i++) {
+				counts[i] = solver.getMarkCount();
+				int rs = solver.assume(assumptions[2 * i], assumptions[2 * i + 1]);
+				if (rs != 0) {
+					solver.undo(counts[i]);
+					return rs;
+				}
+				depth = i + 1;
+			}
+			return 0;
+		}
+	}
+
+	/** Branch given by its assumptions, whose status, guesses, and solution are found by the worker that creates it. */
+	private static final class Node implements ParallelSearch.Branch {
+		/** Check. */
+		private final Check check;
+
+		/** Assumptions as pairs of noun ids. */
+		private final int[] assumptions;
+
+		/** Status. */
+		private final int status;
+
+		/** Guesses of an open branch, otherwise null. */
+		private final int[] guesses;
+
+		/** Solution of a solved branch, otherwise null. */
+		private final int[][] solution;
+
+		/**
+		 * Constructor that enters the assumptions with the worker of the current thread.
+		 * @param check Check.
+		 * @param assumptions Assumptions as pairs of noun ids.
+		 */
+		Node(final Check check, final int[] assumptions) {
+			this.check = check;
+			this.assumptions = assumptions;
+			Worker worker = check.getWorker();
+			ReferenceSolver solver = worker.solver;
+			if (worker.enter(assumptions) != 0) {
+				status = ParallelSearch.CONTRADICTION;
+				guesses = null;
+				solution = null;
+			}
+			else if (solver.isSolved()) {
+				status = ParallelSearch.SOLVED;
+				guesses = null;
+				solution = solver.getSolution();
+			}
+			else {
+				guesses = solver.getGuesses();
+				status = guesses == null ? ParallelSearch.CONTRADICTION : ParallelSearch.OPEN;
+				solution = null;
+			}
+		}
+
+		@Override
+		public int getStatus() { return status; }
+
+		@Override
+		public int[] getGuesses() { return guesses; }
+
+		@Override
+		public ParallelSearch.Branch fork(final int id1, final int id2) {
+			int n = assumptions.length;
+			int[] child = Arrays.copyOf(assumptions, n + 2);
+			child[n] = id1;
+			child[n + 1] = id2;
+			return new Node(check, child);
+		}
+
+		@Override
+		public int[][] getSolution() { return solution; }
+	}
+}
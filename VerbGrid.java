@@ -0,0 +1,443 @@
+package com.mysterymaster.puzzle;
+
+import java.util.Arrays;
+
+/**
+ * The Verb Grid class stores the verb of every cell of the noun-type by noun-type grids as packed 2-bit codes.<br>
+ * A row holds the codes between one noun and every noun of another noun type, so a column is the row of the other noun.<br>
+ * The rows are indexed by (type 1, noun 1, type 2), and each row is one or more long words of 32 cells each.<br>
+ * @version 2026-10-16
+ */
+public final class VerbGrid extends Base {
+	/** Code for the possible verb. This is zero so a new grid is all possible verbs. */
+	public static final int MAYBE = 0;
+
+	/** Code for the negative verb. */
+	public static final int IS_NOT = 1;
+
+	/** Code for the positive verb. */
+	public static final int IS = 2;
+
+	/** Number of cells per word. */
+	private static final int CELLS = 32;
+
+	/** Mask of the low bit of every cell in a word. */
+	private static final long LO = 0x5555555555555555L;
+
+	/** Verbs of the puzzle indexed by code. */
+	private final Verb[] verbs;
+
+	/** Number of noun types. */
+	public final int maxNounTypes;
+
+	/** Number of nouns per noun type. */
+	public final int maxNouns;
+
+	/** Number of words per row. */
+	private final int wordsPerRow;
+
+	/** Mask of the low bit of the cells used by the last word of a row. */
+	private final long lastLo;
+
+	/** Packed 2-bit codes for every row. Snapshots of the words share structure with the grid. */
+	private final PersistentWords words;
+
+	@Override
+	public String toString() { return "VerbGrid"; }
+
+	@Override
+	public String asString() {
+		return "maxNounTypes=" + Q + maxNounTypes + Q + " maxNouns=" + Q + maxNouns + Q + " wordsPerRow=" + Q + wordsPerRow + Q + " words.length=" + Q + words.length + Q;
+	}
+
+	/**
+	 * Constructor. The puzzle must be validated so the number of noun types and nouns are known.
+	 * @param puzzle Puzzle.
+	 */
+	public VerbGrid(final Puzzle puzzle) {
+		this(puzzle.verbs, puzzle.maxNounTypes, puzzle.maxNouns);
+	}
+
+	/**
+	 * Constructor.
+	 * @param verbs Array of verbs indexed by the number of the verb.
+	 * @param maxNounTypes Number of noun types.
+	 * @param maxNouns Number of nouns per noun type.
+	 */
+	public VerbGrid(final Verb[] verbs, final int maxNounTypes, final int maxNouns) {
+		this(verbs, maxNounTypes, maxNouns, null);
+	}
+
+	/**
+	 * Constructor for the cells of the snapshot, which is O(1). Several threads may use the same snapshot at once.
+	 * @param verbs Array of verbs indexed by the number of the verb.
+	 * @param maxNounTypes Number of noun types.
+	 * @param maxNouns Number of nouns per noun type.
+	 * @param snapshot Snapshot of a grid of the same size, or null for a new grid.
+	 */
+	public VerbGrid(final Verb[] verbs, final int maxNounTypes, final int maxNouns, final PersistentWords.Snapshot snapshot) {
+		this.verbs = new Verb[3];
+		this.verbs[MAYBE] = verbs[2];
+		this.verbs[IS_NOT] = verbs[0];
+		this.verbs[IS] = verbs[1];
+		this.maxNounTypes = maxNounTypes;
+		this.maxNouns = maxNouns;
+		this.wordsPerRow = (maxNouns + CELLS - 1) / CELLS;
+		int used = maxNouns - (wordsPerRow - 1) * CELLS;
+		this.lastLo = used == CELLS ? LO : LO & ((1L << (2 * used)) - 1);
+		int length = maxNounTypes * maxNouns * maxNounTypes * wordsPerRow;
+		this.words = snapshot == null ? new PersistentWords(length) : new PersistentWords(length, snapshot);
+	}
+
+	/**
+	 * Constructor that copies the given grid. This is O(1), since the copy shares structure with the grid.
+	 * @param grid Verb grid.
+	 */
+	public VerbGrid(final VerbGrid grid) {
+		this.verbs = grid.verbs;
+		this.maxNounTypes = grid.maxNounTypes;
+		this.maxNouns = grid.maxNouns;
+		this.wordsPerRow = grid.wordsPerRow;
+		this.lastLo = grid.lastLo;
+		this.words = new PersistentWords(grid.words.length, grid.snapshot());
+	}
+
+	/** Resets every cell to the possible verb. */
+	public void reset() {
+		words.fill(0L);
+	}
+
+	/**
+	 * Copies the cells of the given grid, which must have the same size, into this grid.
+	 * @param grid Verb grid.
+	 */
+	public void copyFrom(final VerbGrid grid) {
+		words.restore(grid.words.snapshot());
+	}
+
+	/**
+	 * Copies the cells of the given grid, which must have the same size, word by word into this grid.
+	 * Unlike copyFrom, this is O(cells), but once this grid owns its words, neither the copy nor later sets allocate.
+	 * @param grid Verb grid.
+	 */
+	public void copyWordsFrom(final VerbGrid grid) {
+		words.copyFrom(grid.words);
+	}
+
+	/**
+	 * Returns a snapshot of the cells in O(1). Later changes to the grid do not change the snapshot.
+	 * @return Snapshot.
+	 */
+	public PersistentWords.Snapshot snapshot() {
+		return words.snapshot();
+	}
+
+	/**
+	 * Restores the cells of the snapshot in O(1).
+	 * @param snapshot Snapshot taken by a grid of the same size.
+	 */
+	public void restore(final PersistentWords.Snapshot snapshot) {
+		words.restore(snapshot);
+	}
+
+	/**
+	 * Returns the code of the given verb.
+	 * @param verb Verb.
+	 * @return Code.
+	 */
+	public static int getCode(final Verb verb) {
+		switch (verb.num) {
+			case 0: return IS_NOT;
+			case 1: return IS;
+			default: return MAYBE;
+		}
+	}
+
+	/**
+	 * Returns the verb of the given code.
+	 * @param code Code.
+	 * @return Verb.
+	 */
+	public Verb getVerb(final int code) {
+		return verbs[code];
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="Cells">
+
+	/**
+	 * Returns the index of the first word of the row.
+	 * @param t1 Zero-based number of noun type 1.
+	 * @param n1 Zero-based number of noun 1.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @return Index.
+	 */
+	private int getRow(final int t1, final int n1, final int t2) {
+		return ((t1 * maxNouns + n1) * maxNounTypes + t2) * wordsPerRow;
+	}
+
+	/**
+	 * Returns the code of the cell given by zero-based numbers.
+	 * @param t1 Zero-based number of noun type 1.
+	 * @param n1 Zero-based number of noun 1.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @param n2 Zero-based number of noun 2.
+	 * @return Code.
+	 */
+	public int get(final int t1, final int n1, final int t2, final int n2) {
+		long word = words.get(getRow(t1, n1, t2) + n2 / CELLS);
+		return (int) (word >>> (2 * (n2 % CELLS))) & 3;
+	}
+
+	/**
+	 * Returns the code of the cell given by the two nouns.
+	 * @param noun1 Noun 1.
+	 * @param noun2 Noun 2.
+	 * @return Code.
+	 */
+	public int get(final Noun noun1, final Noun noun2) {
+		return get(noun1.type.num - 1, noun1.num - 1, noun2.type.num - 1, noun2.num - 1);
+	}
+
+	/**
+	 * Returns the verb of the cell given by the two nouns.
+	 * @param noun1 Noun 1.
+	 * @param noun2 Noun 2.
+	 * @return Verb.
+	 */
+	public Verb getVerb(final Noun noun1, final Noun noun2) {
+		return verbs[get(noun1, noun2)];
+	}
+
+	/**
+	 * Sets the code of one cell in one row.
+	 * @param row Index of the first word of the row.
+	 * @param n Zero-based number of the noun in the row.
+	 * @param code Code.
+	 */
+	private void put(final int row, final int n, final int code) {
+		int i = row + n / CELLS;
+		int shift = 2 * (n % CELLS);
+		words.set(i, (words.get(i) & ~(3L << shift)) | ((long) code << shift));
+	}
+
+	/**
+	 * Sets the code of the cell given by zero-based numbers, along with its mirror cell.
+	 * @param t1 Zero-based number of noun type 1.
+	 * @param n1 Zero-based number of noun 1.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @param n2 Zero-based number of noun 2.
+	 * @param code Code.
+	 * @return Old code of the cell.
+	 */
+	public int set(final int t1, final int n1, final int t2, final int n2, final int code) {
+		int old = get(t1, n1, t2, n2);
+		put(getRow(t1, n1, t2), n2, code);
+		put(getRow(t2, n2, t1), n1, code);
+		return old;
+	}
+
+	/**
+	 * Sets the verb of the cell given by the two nouns, along with its mirror cell.
+	 * @param noun1 Noun 1.
+	 * @param noun2 Noun 2.
+	 * @param verb Verb.
+	 * @return Old verb of the cell.
+	 */
+	public Verb set(final Noun noun1, final Noun noun2, final Verb verb) {
+		return verbs[set(noun1.type.num - 1, noun1.num - 1, noun2.type.num - 1, noun2.num - 1, getCode(verb))];
+	}
+
+	/**
+	 * Returns true if noun 1 can be with noun 2, otherwise false.<br>
+	 * This is true if the cell is positive, or the cell is possible and neither its row nor its column has a positive cell.
+	 * @param noun1 Noun 1.
+	 * @param noun2 Noun 2.
+	 * @return boolean.
+	 */
+	public boolean canBeWith(final Noun noun1, final Noun noun2) {
+		int t1 = noun1.type.num - 1, n1 = noun1.num - 1;
+		int t2 = noun2.type.num - 1, n2 = noun2.num - 1;
+		int code = get(t1, n1, t2, n2);
+		if (code != MAYBE) return code == IS;
+		return first(t1, n1, t2, IS) < 0 && first(t2, n2, t1, IS) < 0;
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Rows and Columns">
+
+	/**
+	 * Returns the word with the low bit of each cell set if the cell has the given code.
+	 * @param word Word of packed codes.
+	 * @param lo Mask of the low bit of the cells used by this word.
+	 * @param code Code.
+	 * @return Word with one bit per matching cell.
+	 */
+	private static long match(final long word, final long lo, final int code) {
+		long a = word & LO;
+		long b = (word >>> 1) & LO;
+		switch (code) {
+			case IS_NOT: return a & ~b & lo;
+			case IS: return b & ~a & lo;
+			default: return ~(a | b) & lo;
+		}
+	}
+
+	/**
+	 * Returns the low bit of each cell packed into the low 32 bits.
+	 * @param x Word with at most the low bit of each cell set.
+	 * @return Compressed word.
+	 */
+	private static long compress(long x) {
+		x = (x | (x >>> 1)) & 0x3333333333333333L;
+		x = (x | (x >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+		x = (x | (x >>> 4)) & 0x00FF00FF00FF00FFL;
+		x = (x | (x >>> 8)) & 0x0000FFFF0000FFFFL;
+		x = (x | (x >>> 16)) & 0x00000000FFFFFFFFL;
+		return x;
+	}
+
+	/**
+	 * Returns the number of cells in the row with the given code.
+	 * @param t1 Zero-based number of noun type 1.
+	 * @param n1 Zero-based number of noun 1.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @param code Code.
+	 * @return Number of cells.
+	 */
+	public int count(final int t1, final int n1, final int t2, final int code) {
+		int row = getRow(t1, n1, t2);
+		int cnt = 0;
+		for (int w = 0; w < wordsPerRow; w++) {
+			cnt += Long.bitCount(match(words.get(row + w), w == wordsPerRow - 1 ? lastLo : LO, code));
+		}
+		return cnt;
+	}
+
+	/**
+	 * Returns the number of cells in the column with the given code.
+	 * @param t1 Zero-based number of noun type 1 (the rows).
+	 * @param t2 Zero-based number of noun type 2.
+	 * @param n2 Zero-based number of noun 2 (the column).
+	 * @param code Code.
+	 * @return Number of cells.
+	 */
+	public int countColumn(final int t1, final int t2, final int n2, final int code) {
+		return count(t2, n2, t1, code);
+	}
+
+	/**
+	 * Returns the zero-based number of the first cell in the row with the given code, or -1.
+	 * @param t1 Zero-based number of noun type 1.
+	 * @param n1 Zero-based number of noun 1.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @param code Code.
+	 * @return Zero-based number of noun 2, or -1.
+	 */
+	public int first(final int t1, final int n1, final int t2, final int code) {
+		int row = getRow(t1, n1, t2);
+		for (int w = 0; w < wordsPerRow; w++) {
+			long bits = match(words.get(row + w), w == wordsPerRow - 1 ? lastLo : LO, code);
+			if (bits != 0) return w * CELLS + Long.numberOfTrailingZeros(bits) / 2;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the zero-based number of the first cell in the column with the given code, or -1.
+	 * @param t1 Zero-based number of noun type 1 (the rows).
+	 * @param t2 Zero-based number of noun type 2.
+	 * @param n2 Zero-based number of noun 2 (the column).
+	 * @param code Code.
+	 * @return Zero-based number of noun 1, or -1.
+	 */
+	public int firstInColumn(final int t1, final int t2, final int n2, final int code) {
+		return first(t2, n2, t1, code);
+	}
+
+	/**
+	 * Returns the cells in the row with the given code as one bit per noun. Use getRowMask with an array if there are more than 64 nouns.
+	 * @param t1 Zero-based number of noun type 1.
+	 * @param n1 Zero-based number of noun 1.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @param code Code.
+	 * @return Bit mask where bit i is for the noun with zero-based number i.
+	 */
+	public long getRowMask(final int t1, final int n1, final int t2, final int code) {
+		if (wordsPerRow > 2) throw new Error("The row has more than 64 nouns!");
+		int row = getRow(t1, n1, t2);
+		long mask = compress(match(words.get(row), wordsPerRow == 1 ? lastLo : LO, code));
+		if (wordsPerRow == 2) mask |= compress(match(words.get(row + 1), lastLo, code)) << CELLS;
+		return mask;
+	}
+
+	/**
+	 * Puts the cells in the row with the given code as one bit per noun into the array.
+	 * @param t1 Zero-based number of noun type 1.
+	 * @param n1 Zero-based number of noun 1.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @param code Code.
+	 * @param mask Array of at least (maxNouns + 63) / 64 words.
+	 */
+	public void getRowMask(final int t1, final int n1, final int t2, final int code, final long[] mask) {
+		int row = getRow(t1, n1, t2);
+		Arrays.fill(mask, 0, (maxNouns + 63) / 64, 0L);
+		for (int w = 0; w < wordsPerRow; w++) {
+			long bits = compress(match(words.get(row + w), w == wordsPerRow - 1 ? lastLo : LO, code));
+			mask[w / 2] |= bits << (CELLS * (w % 2));
+		}
+	}
+
+	/**
+	 * Returns the cells in the column with the given code as one bit per noun.
+	 * @param t1 Zero-based number of noun type 1 (the rows).
+	 * @param t2 Zero-based number of noun type 2.
+	 * @param n2 Zero-based number of noun 2 (the column).
+	 * @param code Code.
+	 * @return Bit mask where bit i is for the noun of type 1 with zero-based number i.
+	 */
+	public long getColumnMask(final int t1, final int t2, final int n2, final int code) {
+		return getRowMask(t2, n2, t1, code);
+	}
+
+	/**
+	 * Sets every possible cell in the row to the given code, along with the mirror cells.<br>
+	 * Example: Once a row has a positive cell, the other cells in the row are set to the negative code.
+	 * @param t1 Zero-based number of noun type 1.
+	 * @param n1 Zero-based number of noun 1.
+	 * @param t2 Zero-based number of noun type 2.
+	 * @param code Code.
+	 * @return Number of cells that were updated.
+	 */
+	public int fillRow(final int t1, final int n1, final int t2, final int code) {
+		int row = getRow(t1, n1, t2);
+		int cnt = 0;
+		for (int w = 0; w < wordsPerRow; w++) {
+			long word = words.get(row + w);
+			long bits = match(word, w == wordsPerRow - 1 ? lastLo : LO, MAYBE);
+			if (bits == 0) continue;
+			words.set(row + w, word | bits * code);
+			while (bits != 0) {
+				int n2 = w * CELLS + Long.numberOfTrailingZeros(bits) / 2;
+				put(getRow(t2, n2, t1), n1, code);
+				bits &= bits - 1;
+				++cnt;
+			}
+		}
+		return cnt;
+	}
+
+	/**
+	 * Sets every possible cell in the column to the given code, along with the mirror cells.
+	 * @param t1 Zero-based number of noun type 1 (the rows).
+	 * @param t2 Zero-based number of noun type 2.
+	 * @param n2 Zero-based number of noun 2 (the column).
+	 * @param code Code.
+	 * @return Number of cells that were updated.
+	 */
+	public int fillColumn(final int t1, final int t2, final int n2, final int code) {
+		return fillRow(t2, n2, t1, code);
+	}
+
+	// </editor-fold>
+}
@@ -0,0 +1,29 @@
+package com.mysterymaster.puzzle.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The Benchmark Main class runs the JMH benchmarks with the gc profiler, so every result has its allocation rate per operation.<br>
+ * The arguments are the JMH command line options, such as RuleBenchmark -p size=10,20 to run some benchmarks and sizes.<br>
+ * Usage: java -jar benchmarks/target/benchmarks.jar [JMH options]
+ * @version 2026-10-16
+ */
+public final class BenchmarkMain {
+	private BenchmarkMain() {}
+
+	/**
+	 * Runs the benchmarks.
+	 * @param args JMH command line options.
+	 * @throws CommandLineOptionException if the options are not valid.
+	 * @throws RunnerException if a benchmark fails.
+	 */
+	public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+		CommandLineOptions options = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+	}
+}
@@ -0,0 +1,82 @@
+package com.mysterymaster.puzzle.benchmarks;
+
+import com.mysterymaster.puzzle.Link;
+import com.mysterymaster.puzzle.Mark;
+import com.mysterymaster.puzzle.Noun;
+import com.mysterymaster.puzzle.NounType;
+import com.mysterymaster.puzzle.Puzzle;
+import com.mysterymaster.puzzle.PuzzleGenerator;
+import com.mysterymaster.puzzle.SmartLink;
+import java.util.Random;
+
+/**
+ * The Benchmark Puzzles class builds the puzzles and marks of the benchmarks from a fixed seed, so every fork sees the same work.
+ * @version 2026-10-16
+ */
+final class BenchmarkPuzzles {
+	/** Name of the combinator link added to each puzzle. */
+	static final String COMBINATOR = "two or three apart";
+
+	/** Name of the custom link added to each puzzle. */
+	static final String CUSTOM = "same parity";
+
+	private BenchmarkPuzzles() {}
+
+	/**
+	 * Returns a validated puzzle from the PuzzleGenerator with four noun types of the given size and one rule of each kind of the benchmark.
+	 * A combinator link and a custom link are added, so Link.update is measured for each kind of link function.
+	 * @param size Number of nouns per noun type.
+	 * @param seed Seed of the puzzle.
+	 * @return Puzzle.
+	 */
+	static Puzzle getPuzzle(final int size, final long seed) {
+		PuzzleGenerator generator = new PuzzleGenerator(4, size);
+		generator.linkKinds.clear();
+		generator.linkKinds.add(SmartLink.Kind.IsLessThan);
+		generator.factDensity = 0.02;
+		generator.setRuleCount(PuzzleGenerator.RuleKind.MatchOneToOne, 1)
+			.setRuleCount(PuzzleGenerator.RuleKind.IsRelated, 1)
+			.setRuleCount(PuzzleGenerator.RuleKind.InSameGroup, 1)
+			.setRuleCount(PuzzleGenerator.RuleKind.MatchAllDifferent, 1)
+			.setRuleCount(PuzzleGenerator.RuleKind.Ordering, 1);
+		Puzzle puzzle = generator.generate(seed);
+
+		NounType slots = puzzle.nounTypes.get(0);
+		Link apart = puzzle.addLink(COMBINATOR, slots);
+		apart.f = SmartLink.getOr(SmartLink.getIsOffsetBy(2), SmartLink.getIsOffsetBy(3));
+		Link custom = puzzle.addLink(CUSTOM, slots);
+		custom.f = (noun1, noun2) -> (noun1.num % 2 == noun2.num % 2) ? noun1.type.puzzle.Is : noun1.type.puzzle.IsNot;
+		puzzle.validate(null);
+		return puzzle;
+	}
+
+	/**
+	 * Enters the marks of the benchmark in the grid of the solver: a quarter of the nouns are with their slots of the answer,
+	 * and a third of the other cells that disagree with the answer are not with each other.
+	 * @param puzzle Puzzle.
+	 * @param solver Solver.
+	 * @param random Random numbers.
+	 */
+	static void addMarks(final Puzzle puzzle, final GridSolver solver, final Random random) {
+		NounType slots = puzzle.nounTypes.get(0);
+		int num = 0;
+		for (NounType nounType : puzzle.nounTypes) {
+			if (nounType == slots) continue;
+			int[] row = puzzle.answer[nounType.num - 2];
+			for (Noun noun : slots.nouns) {
+				Noun noun2 = nounType.nouns.get(row[noun.num - 1]);
+				if (random.nextInt(4) == 0) {
+					Mark mark = new Mark(num++);
+					mark.update("" + num, 0, ' ', Mark.Type.Rule, 0, ' ', noun, puzzle.Is, noun2, null, -1, null);
+					noun.pairs[nounType.num - 1] = mark;
+					noun2.pairs[slots.num - 1] = mark;
+					for (Noun other : nounType.nouns) solver.grid.set(noun, other, other == noun2 ? puzzle.Is : puzzle.IsNot);
+					for (Noun other : slots.nouns) solver.grid.set(other, noun2, other == noun ? puzzle.Is : puzzle.IsNot);
+				}
+				for (Noun other : nounType.nouns) {
+					if (other != noun2 && solver.grid.getVerb(noun, other) == puzzle.Maybe && random.nextInt(3) == 0) solver.grid.set(noun, other, puzzle.IsNot);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.mysterymaster.puzzle.benchmarks;
+
+import com.mysterymaster.puzzle.ISolver;
+import com.mysterymaster.puzzle.Link;
+import com.mysterymaster.puzzle.Mark;
+import com.mysterymaster.puzzle.Noun;
+import com.mysterymaster.puzzle.NounType;
+import com.mysterymaster.puzzle.Puzzle;
+import com.mysterymaster.puzzle.Rule;
+import com.mysterymaster.puzzle.Verb;
+import com.mysterymaster.puzzle.VerbGrid;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The Grid Solver class is a stub ISolver that answers every query from a VerbGrid and enters each mark in the grid.<br>
+ * The messages of the marks are never built, as in a solver that only builds them when a mark is displayed.
+ * @version 2026-10-16
+ */
+public final class GridSolver implements ISolver {
+	/** Puzzle. */
+	public final Puzzle puzzle;
+
+	/** Grid of the marks. */
+	public final VerbGrid grid;
+
+	/** Number of marks entered. */
+	public int marks = 0;
+
+	/**
+	 * Constructor. The puzzle must be validated.
+	 * @param puzzle Puzzle.
+	 */
+	public GridSolver(final Puzzle puzzle) {
+		this.puzzle = puzzle;
+		this.grid = new VerbGrid(puzzle);
+	}
+
+	@Override
+	public void jot(final String msg) {}
+
+	@Override
+	public int getMaxMarks() { return puzzle.maxNounTypes * (puzzle.maxNounTypes - 1) / 2 * puzzle.maxNouns * puzzle.maxNouns; }
+
+	@Override
+	public boolean maybeRelated(final Noun noun1, final Link link, final Noun noun2) {
+		NounType slots = link.nounType;
+		for (Noun slot1 : slots.nouns) {
+			if (noun1.type != slots && !grid.canBeWith(noun1, slot1)) continue;
+			if (noun1.type == slots && slot1 != noun1) continue;
+			for (Noun slot2 : link.getRelatedSlots(slot1)) {
+				if (noun2.type == slots ? slot2 == noun2 : grid.canBeWith(noun2, slot2)) return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Noun getCommonNoun(final Noun noun1, final Noun noun2, final NounType nounType3) {
+		for (Noun noun3 : nounType3.nouns) {
+			if (grid.canBeWith(noun1, noun3) && grid.canBeWith(noun2, noun3)) return noun3;
+		}
+		return null;
+	}
+
+	@Override
+	public boolean canBeWith(final Noun noun1, final Noun noun2) {
+		return grid.canBeWith(noun1, noun2);
+	}
+
+	@Override
+	public boolean cannotBeWith(final List<Noun> nouns, final Noun noun2) {
+		for (Noun noun1 : nouns) {
+			if (grid.canBeWith(noun1, noun2)) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public Verb getGridVerb(final Noun noun1, final Noun noun2) {
+		return grid.getVerb(noun1, noun2);
+	}
+
+	@Override
+	public int addMarkByRule(final Mark mark, final Rule rule, final char refSub, final Noun noun1, final Verb verb, final Noun noun2, final String msg) {
+		Verb old = grid.getVerb(noun1, noun2);
+		if (old == verb) return 0;
+		if (old != puzzle.Maybe) return -1;
+		grid.set(noun1, noun2, verb);
+		++marks;
+		return 0;
+	}
+
+	@Override
+	public int addMarkByRule(final Mark mark, final Rule rule, final char refSub, final Noun noun1, final Verb verb, final Noun noun2, final Supplier<String> msg) {
+		return addMarkByRule(mark, rule, refSub, noun1, verb, noun2, (String) null);
+	}
+}
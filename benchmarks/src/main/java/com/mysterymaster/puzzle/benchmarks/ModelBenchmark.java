@@ -0,0 +1,116 @@
+package com.mysterymaster.puzzle.benchmarks;
+
+import com.mysterymaster.puzzle.Helper;
+import com.mysterymaster.puzzle.Link;
+import com.mysterymaster.puzzle.Noun;
+import com.mysterymaster.puzzle.NounType;
+import com.mysterymaster.puzzle.Puzzle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Model Benchmark class measures Link.update for a smart, a combinator, and a custom link function,
+ * and Puzzle.addFact and Helper.getChartAsText.
+ * @version 2026-10-16
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(2)
+@State(Scope.Thread)
+public class ModelBenchmark {
+	/** Number of nouns per noun type. */
+	@Param({ "5", "10", "20", "40" })
+	public int size;
+
+	/** Seed of the puzzle. */
+	@Param({ "1" })
+	public long seed;
+
+	/** Puzzle. */
+	private Puzzle puzzle;
+
+	/** Link of the PuzzleGenerator, whose function is from SmartLink. */
+	private Link smartLink;
+
+	/** Link whose function combines two SmartLink functions. */
+	private Link combinatorLink;
+
+	/** Link whose function is a lambda. */
+	private Link customLink;
+
+	/** Builds the puzzle and finds its links. */
+	@Setup(Level.Trial)
+	public void setup() {
+		puzzle = BenchmarkPuzzles.getPuzzle(size, seed * 31 + size);
+		for (Link link : puzzle.links) {
+			if (link.num < 1) continue;
+			if (link.name.equals(BenchmarkPuzzles.COMBINATOR))
+				combinatorLink = link;
+			else if (link.name.equals(BenchmarkPuzzles.CUSTOM))
+				customLink = link;
+			else if (smartLink == null)
+				smartLink = link;
+		}
+	}
+
+	/**
+	 * Updates the link, and returns the number of slots related to the first slot.
+	 * @param link Link.
+	 * @return Number of slots.
+	 */
+	private static int update(final Link link) {
+		link.update();
+		return link.getRelatedSlots(link.nounType.nouns.get(0)).size();
+	}
+
+	@Benchmark
+	public int updateSmartLink() { return update(smartLink); }
+
+	@Benchmark
+	public int updateCombinatorLink() { return update(combinatorLink); }
+
+	@Benchmark
+	public int updateCustomLink() { return update(customLink); }
+
+	/**
+	 * Builds a puzzle of two noun types of the given size, with a fact for each pair of nouns that are not with each other.
+	 * @return Number of facts.
+	 */
+	@Benchmark
+	public int addFact() {
+		Puzzle puzzle2 = new Puzzle();
+		NounType typeA = puzzle2.addNounType("A"), typeB = puzzle2.addNounType("B");
+		for (int i = 1; i <= size; i++) {
+			typeA.addNoun("A" + i);
+			typeB.addNoun("B" + i);
+		}
+		for (Noun noun1 : typeA.nouns) {
+			for (Noun noun2 : typeB.nouns) {
+				if (noun1.num != noun2.num) puzzle2.addFact("1", noun1, puzzle2.IsNot, puzzle2.With, noun2);
+			}
+		}
+		return puzzle2.facts.size();
+	}
+
+	/**
+	 * Returns the chart of the puzzle as text.
+	 * @return Chart.
+	 */
+	@Benchmark
+	public String getChartAsText() {
+		return Helper.getChartAsText(puzzle, 0, false);
+	}
+}
@@ -0,0 +1,91 @@
+package com.mysterymaster.puzzle.benchmarks;
+
+import com.mysterymaster.puzzle.Mark;
+import com.mysterymaster.puzzle.Puzzle;
+import com.mysterymaster.puzzle.PuzzleGenerator;
+import com.mysterymaster.puzzle.Rule;
+import com.mysterymaster.puzzle.VerbGrid;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Rule Benchmark class measures the SmartRule function of each rule kind against the marks of a GridSolver.<br>
+ * Each operation first copies the marks into the grid of the solver word by word, so every operation sees the same marks.
+ * The copy allocates nothing once the grid owns its words, so the allocation rate of the gc profiler is the rule's own.
+ * The reset benchmark measures the copy alone, to be subtracted from the time of each rule kind.
+ * @version 2026-10-16
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(2)
+@State(Scope.Thread)
+public class RuleBenchmark {
+	/** Number of nouns per noun type. */
+	@Param({ "5", "10", "20", "40" })
+	public int size;
+
+	/** Kind of the rule. */
+	@Param({ "MatchOneToOne", "IsRelated", "InSameGroup", "MatchAllDifferent", "Ordering" })
+	public PuzzleGenerator.RuleKind kind;
+
+	/** Seed of the puzzle and marks. */
+	@Param({ "1" })
+	public long seed;
+
+	/** Rule of the kind. */
+	private Rule rule;
+
+	/** Solver whose grid the rule reads and writes. */
+	private GridSolver solver;
+
+	/** Marks that are copied into the grid of the solver before each operation. */
+	private VerbGrid marks;
+
+	/** Mark that triggers the rule. */
+	private final Mark mark = new Mark(0);
+
+	/** Builds the puzzle, the marks, and the rule of the kind. */
+	@Setup(Level.Trial)
+	public void setup() {
+		Puzzle puzzle = BenchmarkPuzzles.getPuzzle(size, seed * 31 + size);
+		solver = new GridSolver(puzzle);
+		puzzle.validate(solver);
+		BenchmarkPuzzles.addMarks(puzzle, solver, new Random(seed * 31 + size));
+		marks = new VerbGrid(solver.grid);
+		for (Rule rule2 : puzzle.rules) {
+			if (rule2.name.equals(kind.name + " 1")) rule = rule2;
+		}
+		if (rule == null) throw new Error("The puzzle has no rule of kind " + kind.name + "!");
+		reset();
+	}
+
+	/** Copies the marks into the grid of the solver. */
+	@Benchmark
+	public void reset() {
+		solver.grid.copyWordsFrom(marks);
+	}
+
+	/**
+	 * Copies the marks into the grid of the solver, and applies the rule.
+	 * @return Status of the rule.
+	 */
+	@Benchmark
+	public int apply() {
+		solver.grid.copyWordsFrom(marks);
+		return rule.f.apply(mark);
+	}
+}
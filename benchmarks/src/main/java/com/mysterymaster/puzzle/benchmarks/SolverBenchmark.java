@@ -0,0 +1,63 @@
+package com.mysterymaster.puzzle.benchmarks;
+
+import com.mysterymaster.puzzle.Puzzle;
+import com.mysterymaster.puzzle.PuzzleGenerator;
+import com.mysterymaster.puzzle.ReferenceSolver;
+import com.mysterymaster.puzzle.SatSolver;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Solver Benchmark class measures the ReferenceSolver and the SatSolver on a puzzle with enough facts to need few guesses.
+ * @version 2026-10-16
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(2)
+@State(Scope.Thread)
+public class SolverBenchmark {
+	/** Number of nouns per noun type. */
+	@Param({ "5", "10", "20", "40" })
+	public int size;
+
+	/** Seed of the puzzle. */
+	@Param({ "1" })
+	public long seed;
+
+	/** Puzzle. */
+	private Puzzle puzzle;
+
+	/** Reference solver. */
+	private final ReferenceSolver referenceSolver = new ReferenceSolver();
+
+	/** SAT solver. */
+	private final SatSolver satSolver = new SatSolver();
+
+	/** Generates the puzzle. */
+	@Setup(Level.Trial)
+	public void setup() {
+		PuzzleGenerator generator = new PuzzleGenerator(4, size);
+		generator.factDensity = 0.2;
+		generator.setRuleCount(PuzzleGenerator.RuleKind.MatchOneToOne, 1).setRuleCount(PuzzleGenerator.RuleKind.Ordering, 1);
+		puzzle = generator.generate(seed * 31 + size);
+	}
+
+	@Benchmark
+	public int referenceSolver() { return referenceSolver.solve(puzzle); }
+
+	@Benchmark
+	public int satSolver() { return satSolver.solve(puzzle); }
+}
@@ -0,0 +1,117 @@
+package com.mysterymaster.puzzle;
+
+import java.lang.reflect.Proxy;
+import java.util.function.Supplier;
+
+/**
+ * The Rule Tracer Test class checks that the solver returned by RuleTracer.wrap forwards the message supplier of a mark
+ * without invoking it, so a message is only built if the wrapped solver needs it.<br>
+ * It also checks that the trail of the tracer is empty while no assumption is in effect, and stays within four entries per mark
+ * plus one save of each rule per open undo point while the ReferenceSolver solves puzzles with every kind of rule.<br>
+ * Usage: java com.mysterymaster.puzzle.RuleTracerTest. An Error is thrown if a check fails.<br>
+ * @version 2026-10-16
+ */
+public final class RuleTracerTest {
+	/** Number of times the message supplier was invoked. */
+	private static int gets = 0;
+
+	/** Constructor. */
+	private RuleTracerTest() {
+	}
+
+	/**
+	 * Returns a solver that only accepts marks, and invokes the message supplier of each mark if it needs the message.
+	 * The String overload of addMarkByRule is not expected, so it fails.
+	 * @param needsMessage True if the solver needs the message of each mark.
+	 * @return Solver.
+	 */
+	private static ISolver getSolver(final boolean needsMessage) {
+		return (ISolver) Proxy.newProxyInstance(ISolver.class.getClassLoader(), new Class<?>[] {ISolver.class}, (proxy, method, args) -> {
+			if (!method.getName().equals("addMarkByRule")) throw new Error("Unexpected call of " + method.getName() + "!");
+			Object msg = args[args.length - 1];
+			if (!(msg instanceof Supplier)) throw new Error("The message supplier was not forwarded!");
+			if (needsMessage) ((Supplier<?>) msg).get();
+			return 0;
+		});
+	}
+
+	/**
+	 * Returns a validated puzzle with two noun types of four nouns each and one fact.
+	 * @return Puzzle.
+	 */
+	private static Puzzle getPuzzle() {
+		Puzzle puzzle = new Puzzle();
+		puzzle.myName = "RuleTracerTest";
+		puzzle.myTitle = "Rule Tracer Test";
+		NounType typeA = puzzle.addNounType("A"), typeB = puzzle.addNounType("B");
+		for (int i = 1; i <= 4; i++) {
+			typeA.addNoun("A" + i);
+			typeB.addNoun("B" + i);
+		}
+		puzzle.addFact("1", typeA.nouns.get(0), puzzle.IsNot, puzzle.With, typeB.nouns.get(1));
+		puzzle.validate(null);
+		return puzzle;
+	}
+
+	/**
+	 * Enters one mark through the wrapped solver, and returns the number of times its message supplier was invoked.
+	 * @param puzzle Puzzle.
+	 * @param needsMessage True if the wrapped solver needs the message.
+	 * @return Number of invocations.
+	 */
+	private static int countGets(final Puzzle puzzle, final boolean needsMessage) {
+		ISolver solver = new RuleTracer(puzzle).wrap(getSolver(needsMessage));
+		Noun noun1 = puzzle.nounTypes.get(0).nouns.get(0);
+		Noun noun2 = puzzle.nounTypes.get(1).nouns.get(0);
+		gets = 0;
+		int rs = solver.addMarkByRule(new Mark(0), null, ' ', noun1, puzzle.IsNot, noun2, () -> {
+			++gets;
+			return noun1.name + " is not with " + noun2.name + ".";
+		});
+		if (rs != 0) throw new Error("The mark was not entered!");
+		return gets;
+	}
+
+	/**
+	 * Checks the size of the trail of the tracer of the ReferenceSolver after the root, and after the solve of a generated puzzle,
+	 * which is stopped after two seconds.
+	 * @param maxNounTypes Number of noun types.
+	 * @param maxNouns Number of nouns per noun type.
+	 * @param seed Seed of the puzzle.
+	 */
+	private static void checkTrail(final int maxNounTypes, final int maxNouns, final long seed) {
+		PuzzleGenerator generator = new PuzzleGenerator(maxNounTypes, maxNouns);
+		for (PuzzleGenerator.RuleKind kind : PuzzleGenerator.RuleKind.values()) generator.setRuleCount(kind, 1);
+		ReferenceSolver solver = new ReferenceSolver();
+		Puzzle puzzle = generator.generate(seed);
+		puzzle.validate(solver);
+		solver.start(puzzle.compile(), null);
+		int size = solver.getTracer().getTrailSize();
+		if (size != 0) throw new Error("The trail has " + size + " entries while no assumption is in effect!");
+
+		solver.solve(generator.generate(seed), new BatchSolver.Budget(2000, 0));
+		RuleTracer tracer = solver.getTracer();
+		size = tracer.getTrailSize();
+		int limit = tracer.getTrailLimit(solver.getMarkCount());
+		if (size > limit) throw new Error("The trail has " + size + " entries for " + solver.getMarkCount() + " marks, which is over " + limit + "!");
+	}
+
+	/**
+	 * Runs the checks.
+	 * @param args Not used.
+	 */
+	public static void main(final String[] args) {
+		Puzzle puzzle = getPuzzle();
+
+		int n = countGets(puzzle, false);
+		if (n != 0) throw new Error("The wrapped solver built an unused message " + n + " times!");
+		n = countGets(puzzle, true);
+		if (n != 1) throw new Error("The wrapped solver built a needed message " + n + " times!");
+
+		for (long seed = 1; seed <= 3; seed++) {
+			checkTrail(4, 6, seed);
+			checkTrail(6, 15, seed);
+		}
+		System.out.println("RuleTracerTest passed.");
+	}
+}
@@ -0,0 +1,411 @@
+package com.mysterymaster.puzzle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The Solver Cross Check Test class checks the ReferenceSolver, the SatSolver, and the UniquenessChecker against an enumeration
+ * of every solution of small generated puzzles, with each kind of rule on its own and with every kind at once, and for puzzles
+ * that have no solution. A solution is a grid that agrees with every enabled fact, and where no enabled rule is violated or enters a mark.<br>
+ * It also solves a large generated puzzle with a time budget, and checks that the trail of the tracer stays within its limit.<br>
+ * Usage: java com.mysterymaster.puzzle.SolverCrossCheckTest. An Error is thrown if a check fails.<br>
+ * @version 2026-10-16
+ */
+public final class SolverCrossCheckTest {
+	/** Sizes of the small puzzles as {maxNounTypes, maxNouns}. */
+	private static final int[][] SIZES = { {3, 4}, {4, 4}, {3, 5} };
+
+	/** Fact densities of the small puzzles. */
+	private static final double[] DENSITIES = { 0.05, 0.15, 0.3 };
+
+	/** Seeds of the small puzzles are from one to this number. */
+	private static final long MAX_SEED = 10;
+
+	/** Number of puzzles checked. */
+	private static int checked = 0;
+
+	/** Constructor. */
+	private SolverCrossCheckTest() {
+	}
+
+	/**
+	 * The Grid Checker class is the ISolver of a puzzle while one complete solution is checked.<br>
+	 * The pairs are read from the rows of the solution, so the nouns of the puzzle are not written.
+	 */
+	private static final class GridChecker implements ISolver {
+		/** Puzzle. */
+		private final Puzzle puzzle;
+
+		/** Grid of the solution. */
+		private final VerbGrid grid;
+
+		/** Zero-based number of the noun of type t in row r as rows[t][r], where row r is noun r of the first type. */
+		private final int[][] rows;
+
+		/** Row of the noun n of type t as rowOf[t][n]. */
+		private final int[][] rowOf;
+
+		/** Marks of the pairs of the solution, which are given to the rules that read the mark. */
+		private final List<Mark> pairs = new ArrayList<>();
+
+		/** Mark given to the rules. */
+		private final Mark blankMark = new Mark(0);
+
+		/** True if a rule entered a mark that disagrees with the grid. */
+		private boolean violated = false;
+
+		/**
+		 * Constructor. Validates the puzzle with this checker.
+		 * @param puzzle Puzzle.
+		 */
+		GridChecker(final Puzzle puzzle) {
+			this.puzzle = puzzle;
+			puzzle.validate(this);
+			this.grid = new VerbGrid(puzzle);
+			this.rows = new int[puzzle.maxNounTypes][puzzle.maxNouns];
+			this.rowOf = new int[puzzle.maxNounTypes][puzzle.maxNouns];
+		}
+
+		/**
+		 * Returns true if the solution agrees with every enabled fact, and no enabled rule is violated, otherwise false.
+		 * @param solution Solution in the same layout as Puzzle.answer.
+		 * @return Boolean.
+		 */
+		boolean isSolution(final int[][] solution) {
+			for (int r = 0; r < puzzle.maxNouns; r++) rows[0][r] = r;
+			for (int t = 1; t < puzzle.maxNounTypes; t++) {
+				for (int r = 0; r < puzzle.maxNouns; r++) {
+					if (solution[t - 1][r] < 0) return false;
+					rows[t][r] = solution[t - 1][r];
+				}
+			}
+			for (int t = 0; t < puzzle.maxNounTypes; t++) {
+				for (int r = 0; r < puzzle.maxNouns; r++) rowOf[t][rows[t][r]] = r;
+			}
+
+			for (Fact fact : puzzle.facts) {
+				if (!fact.enabled) continue;
+				boolean related;
+				if (fact.link == puzzle.With)
+					related = getRow(fact.noun1) == getRow(fact.noun2);
+				else
+					related = fact.link.isRelated(getSlot(fact.noun1, fact.link.nounType), getSlot(fact.noun2, fact.link.nounType));
+				if (related != (fact.verb == puzzle.Is)) return false;
+			}
+
+			List<NounType> nounTypes = puzzle.nounTypes;
+			int num = 0;
+			pairs.clear();
+			for (int t1 = 0; t1 < nounTypes.size(); t1++) {
+				for (int t2 = t1 + 1; t2 < nounTypes.size(); t2++) {
+					for (int r = 0; r < puzzle.maxNouns; r++) {
+						for (int n2 = 0; n2 < puzzle.maxNouns; n2++) grid.set(t1, rows[t1][r], t2, n2, n2 == rows[t2][r] ? VerbGrid.IS : VerbGrid.IS_NOT);
+						Noun noun1 = nounTypes.get(t1).nouns.get(rows[t1][r]);
+						Noun noun2 = nounTypes.get(t2).nouns.get(rows[t2][r]);
+						Mark pair = new Mark(++num);
+						pair.update("", ISolver.MAX_LEVELS, ' ', Mark.Type.Level, 0, ' ', noun1, puzzle.Is, noun2, null, -1, null);
+						pairs.add(pair);
+					}
+				}
+			}
+			for (Rule rule : puzzle.rules) {
+				if (!rule.enabled) continue;
+				violated = false;
+				if (rule.f.apply(blankMark) != 0 || violated) return false;
+				for (Mark pair : pairs) {
+					if (rule.f.apply(pair) != 0 || violated) return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Returns the row of the noun in the solution.
+		 * @param noun Noun.
+		 * @return Zero-based row.
+		 */
+		private int getRow(final Noun noun) {
+			return rowOf[noun.type.num - 1][noun.num - 1];
+		}
+
+		/**
+		 * Returns the slot of the noun in the solution.
+		 * @param noun Noun.
+		 * @param slots Noun type of the slots.
+		 * @return Slot.
+		 */
+		private Noun getSlot(final Noun noun, final NounType slots) {
+			return noun.type == slots ? noun : slots.nouns.get(rows[slots.num - 1][getRow(noun)]);
+		}
+
+		@Override
+		public void jot(final String msg) {}
+
+		@Override
+		public int getMaxMarks() { return puzzle.maxNounTypes * (puzzle.maxNounTypes - 1) / 2 * puzzle.maxNouns * puzzle.maxNouns; }
+
+		@Override
+		public boolean maybeRelated(final Noun noun1, final Link link, final Noun noun2) {
+			return link.isRelated(getSlot(noun1, link.nounType), getSlot(noun2, link.nounType));
+		}
+
+		@Override
+		public Noun getCommonNoun(final Noun noun1, final Noun noun2, final NounType nounType3) {
+			for (Noun noun3 : nounType3.nouns) {
+				if (grid.canBeWith(noun1, noun3) && grid.canBeWith(noun2, noun3)) return noun3;
+			}
+			return null;
+		}
+
+		@Override
+		public boolean canBeWith(final Noun noun1, final Noun noun2) {
+			return grid.canBeWith(noun1, noun2);
+		}
+
+		@Override
+		public boolean cannotBeWith(final List<Noun> nouns, final Noun noun2) {
+			for (Noun noun1 : nouns) {
+				if (grid.canBeWith(noun1, noun2)) return false;
+			}
+			return true;
+		}
+
+		@Override
+		public Verb getGridVerb(final Noun noun1, final Noun noun2) {
+			return grid.getVerb(noun1, noun2);
+		}
+
+		@Override
+		public Noun getPairNoun(final Noun noun1, final NounType nounType2) {
+			if (noun1.type == nounType2) return null;
+			return nounType2.nouns.get(rows[nounType2.num - 1][getRow(noun1)]);
+		}
+
+		@Override
+		public int getPairNounNum(final Noun noun1, final NounType nounType2) {
+			Noun noun2 = getPairNoun(noun1, nounType2);
+			return noun2 == null ? 0 : noun2.num;
+		}
+
+		@Override
+		public int addMarkByRule(final Mark mark, final Rule rule, final char refSub, final Noun noun1, final Verb verb, final Noun noun2, final String msg) {
+			if (grid.getVerb(noun1, noun2) == verb) return 0;
+			violated = true;
+			return -1;
+		}
+
+		@Override
+		public int addMarkByRule(final Mark mark, final Rule rule, final char refSub, final Noun noun1, final Verb verb, final Noun noun2, final Supplier<String> msg) {
+			return addMarkByRule(mark, rule, refSub, noun1, verb, noun2, (String) null);
+		}
+	}
+
+	/**
+	 * Returns up to two solutions of the puzzle found by enumerating every permutation of each noun type but the first.
+	 * @param puzzle Puzzle.
+	 * @return Solutions.
+	 */
+	private static List<int[][]> enumerate(final Puzzle puzzle) {
+		GridChecker checker = new GridChecker(puzzle);
+		List<int[]> perms = new ArrayList<>();
+		addPermutations(new int[puzzle.maxNouns], new boolean[puzzle.maxNouns], 0, perms);
+		List<int[][]> solutions = new ArrayList<>();
+		int[][] solution = new int[puzzle.maxNounTypes - 1][];
+		int[] index = new int[solution.length];
+		while (solutions.size() < 2) {
+			for (int t = 0; t < solution.length; t++) solution[t] = perms.get(index[t]);
+			if (checker.isSolution(solution)) solutions.add(copy(solution));
+			int t = 0;
+			while (t < index.length && ++index[t] == perms.size()) index[t++] = 0;
+			if (t == index.length) break;
+		}
+		return solutions;
+	}
+
+	/**
+	 * Adds every permutation of the numbers from zero to the length of the array minus one.
+	 * @param perm Permutation being built.
+	 * @param used True for each number in the permutation.
+	 * @param i Number of entries of the permutation that are set.
+	 * @param perms Permutations.
+	 */
+	private static void addPermutations(final int[] perm, final boolean[] used, final int i, final List<int[]> perms) {
+		if (i == perm.length) {
+			perms.add(perm.clone());
+			return;
+		}
+		for (int v = 0; v < perm.length; v++) {
+			if (used[v]) continue;
+			used[v] = true;
+			perm[i] = v;
+			addPermutations(perm, used, i + 1, perms);
+			used[v] = false;
+		}
+	}
+
+	/**
+	 * Returns a copy of the solution.
+	 * @param solution Solution.
+	 * @return Copy.
+	 */
+	private static int[][] copy(final int[][] solution) {
+		int[][] a = new int[solution.length][];
+		for (int i = 0; i < a.length; i++) a[i] = solution[i].clone();
+		return a;
+	}
+
+	/**
+	 * Returns true if the solution is a solution of the puzzle, using a new checker of the puzzle.
+	 * @param puzzles Supplier of a new copy of the puzzle.
+	 * @param solution Solution.
+	 * @return Boolean.
+	 */
+	private static boolean isSolution(final Supplier<Puzzle> puzzles, final int[][] solution) {
+		return new GridChecker(puzzles.get()).isSolution(solution);
+	}
+
+	/**
+	 * Checks that the solvers agree with the enumeration of the puzzle. Each solver is given a new copy of the puzzle.
+	 * @param name Name of the puzzle for the messages.
+	 * @param puzzles Supplier of a new copy of the puzzle.
+	 * @param checker Uniqueness checker.
+	 */
+	private static void crossCheck(final String name, final Supplier<Puzzle> puzzles, final UniquenessChecker checker) {
+		++checked;
+		List<int[][]> solutions = enumerate(puzzles.get());
+		int count = solutions.size();
+
+		// The ReferenceSolver finds a solution, and it is the answer if it returns zero.
+		Puzzle puzzle = puzzles.get();
+		ReferenceSolver reference = new ReferenceSolver();
+		int rs = reference.solve(puzzle);
+		if (count == 0) {
+			if (rs != ReferenceSolver.CONTRADICTION) throw new Error(name + ": The ReferenceSolver returned " + rs + " for a puzzle with no solution!");
+		}
+		else {
+			if (rs != 0 && rs != ReferenceSolver.WRONG_ANSWER) throw new Error(name + ": The ReferenceSolver returned " + rs + " for a puzzle with a solution!");
+			int[][] solution = reference.getSolution();
+			if (!isSolution(puzzles, solution)) throw new Error(name + ": The ReferenceSolver returned a grid that is not a solution!");
+			if ((rs == 0) != Arrays.deepEquals(solution, puzzle.answer)) throw new Error(name + ": The ReferenceSolver returned " + rs + " for the answer " + Arrays.deepEquals(solution, puzzle.answer) + "!");
+			if (count == 1 && !Arrays.deepEquals(solution, solutions.get(0))) throw new Error(name + ": The ReferenceSolver did not return the only solution!");
+		}
+
+		// The SatSolver finds a solution, and it is the answer if it returns zero.
+		puzzle = puzzles.get();
+		SatSolver sat = new SatSolver();
+		rs = sat.solve(puzzle);
+		if (count == 0) {
+			if (rs != SatSolver.UNSATISFIABLE) throw new Error(name + ": The SatSolver returned " + rs + " for a puzzle with no solution!");
+		}
+		else {
+			if (rs != 0 && rs != SatSolver.WRONG_ANSWER) throw new Error(name + ": The SatSolver returned " + rs + " for a puzzle with a solution!");
+			if (!isSolution(puzzles, sat.solution)) throw new Error(name + ": The SatSolver returned a grid that is not a solution!");
+			if ((rs == 0) != Arrays.deepEquals(sat.solution, puzzle.answer)) throw new Error(name + ": The SatSolver returned " + rs + " for the answer " + Arrays.deepEquals(sat.solution, puzzle.answer) + "!");
+			if (count == 1 && !Arrays.deepEquals(sat.solution, solutions.get(0))) throw new Error(name + ": The SatSolver did not return the only solution!");
+		}
+
+		// The UniquenessChecker finds as many solutions as the enumeration, up to two, and they are different solutions.
+		UniquenessChecker.Result result = checker.check(puzzles.get());
+		if (result.solutions.size() != count) throw new Error(name + ": The UniquenessChecker found " + result.solutions.size() + " solutions instead of " + count + "!");
+		for (int[][] solution : result.solutions) {
+			if (!isSolution(puzzles, solution)) throw new Error(name + ": The UniquenessChecker returned a grid that is not a solution!");
+		}
+		if (count == 1 && !Arrays.deepEquals(result.solutions.get(0), solutions.get(0))) throw new Error(name + ": The UniquenessChecker did not return the only solution!");
+		if (count == 2 && Arrays.deepEquals(result.solutions.get(0), result.solutions.get(1))) throw new Error(name + ": The UniquenessChecker returned the same solution twice!");
+	}
+
+	/**
+	 * Returns a generator of puzzles with every kind of link, and the given number of rules of one kind, or of every kind if the kind is null.
+	 * @param maxNounTypes Number of noun types.
+	 * @param maxNouns Number of nouns per noun type.
+	 * @param density Fact density.
+	 * @param kind Kind of the rules, or null.
+	 * @param count Number of rules of each kind.
+	 * @return Puzzle generator.
+	 */
+	private static PuzzleGenerator getGenerator(final int maxNounTypes, final int maxNouns, final double density, final PuzzleGenerator.RuleKind kind, final int count) {
+		PuzzleGenerator generator = new PuzzleGenerator(maxNounTypes, maxNouns);
+		generator.linkKinds.clear();
+		generator.linkKinds.addAll(Arrays.asList(SmartLink.Kind.values()));
+		generator.factDensity = density;
+		for (PuzzleGenerator.RuleKind k : PuzzleGenerator.RuleKind.values()) {
+			if (kind == null || k == kind) generator.setRuleCount(k, count);
+		}
+		return generator;
+	}
+
+	/**
+	 * Returns a supplier of a generated puzzle that has no solution. Variant 0 states that the first noun is not with any noun of the second type,
+	 * and variant 1 states that the first two nouns are with the same noun of the second type.
+	 * @param generator Puzzle generator.
+	 * @param seed Seed.
+	 * @param variant Variant, 0 or 1.
+	 * @return Supplier of a new copy of the puzzle.
+	 */
+	private static Supplier<Puzzle> getUnsolvable(final PuzzleGenerator generator, final long seed, final int variant) {
+		return () -> {
+			Puzzle puzzle = generator.generate(seed);
+			List<Noun> nouns1 = puzzle.nounTypes.get(0).nouns, nouns2 = puzzle.nounTypes.get(1).nouns;
+			if (variant == 0) {
+				for (Noun noun2 : nouns2) puzzle.addFact("X", nouns1.get(0), puzzle.IsNot, puzzle.With, noun2);
+			}
+			else {
+				puzzle.addFact("X", nouns1.get(0), puzzle.Is, puzzle.With, nouns2.get(0));
+				puzzle.addFact("X", nouns1.get(1), puzzle.Is, puzzle.With, nouns2.get(0));
+			}
+			return puzzle;
+		};
+	}
+
+	/**
+	 * Solves a large generated puzzle with every kind of rule within the time budget, and checks the size of the trail of the tracer
+	 * and the solution, if any. Without the undo points of the tracer, its trail grows with the work done and exceeds the limit.
+	 * @param maxNounTypes Number of noun types.
+	 * @param maxNouns Number of nouns per noun type.
+	 * @param timeout Time budget in milliseconds.
+	 */
+	private static void checkLarge(final int maxNounTypes, final int maxNouns, final long timeout) {
+		String name = "Large " + maxNounTypes + "x" + maxNouns;
+		PuzzleGenerator generator = getGenerator(maxNounTypes, maxNouns, new PuzzleGenerator(maxNounTypes, maxNouns).factDensity, null, 1);
+		ReferenceSolver solver = new ReferenceSolver();
+		int rs = solver.solve(generator.generate(1), new BatchSolver.Budget(timeout, 0));
+		RuleTracer tracer = solver.getTracer();
+		int size = tracer.getTrailSize();
+		int limit = tracer.getTrailLimit(solver.getMarkCount());
+		if (size > limit) throw new Error(name + ": The trail has " + size + " entries for " + solver.getMarkCount() + " marks, which is over " + limit + "!");
+		if (rs == ReferenceSolver.CONTRADICTION) throw new Error(name + ": The ReferenceSolver found no solution!");
+		if (rs != ReferenceSolver.STOPPED && !isSolution(() -> generator.generate(1), solver.getSolution())) throw new Error(name + ": The ReferenceSolver returned a grid that is not a solution!");
+	}
+
+	/**
+	 * Runs the checks.
+	 * @param args Not used.
+	 */
+	public static void main(final String[] args) {
+		UniquenessChecker checker = new UniquenessChecker(4);
+		try {
+			for (int[] size : SIZES) {
+				for (double density : DENSITIES) {
+					for (long seed = 1; seed <= MAX_SEED; seed++) {
+						final long s = seed;
+						for (PuzzleGenerator.RuleKind kind : PuzzleGenerator.RuleKind.values()) {
+							PuzzleGenerator generator = getGenerator(size[0], size[1], density, kind, 2);
+							crossCheck(size[0] + "x" + size[1] + " " + kind + " d=" + density + " seed=" + seed, () -> generator.generate(s), checker);
+						}
+						PuzzleGenerator generator = getGenerator(size[0], size[1], density, null, 1);
+						crossCheck(size[0] + "x" + size[1] + " all d=" + density + " seed=" + seed, () -> generator.generate(s), checker);
+						crossCheck(size[0] + "x" + size[1] + " unsolvable 0 d=" + density + " seed=" + seed, getUnsolvable(generator, seed, 0), checker);
+						crossCheck(size[0] + "x" + size[1] + " unsolvable 1 d=" + density + " seed=" + seed, getUnsolvable(generator, seed, 1), checker);
+					}
+				}
+			}
+		}
+		finally {
+			checker.shutdown();
+		}
+		checkLarge(10, 50, 5000);
+		System.out.println("SolverCrossCheckTest passed for " + checked + " puzzles.");
+	}
+}